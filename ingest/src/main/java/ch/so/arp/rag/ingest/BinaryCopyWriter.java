@@ -0,0 +1,123 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Writes rows in the binary {@code COPY} format of PostgreSQL (header, length
+ * prefixed tuples, trailer) and hands them to the server in blocks of about
+ * 1 MB, without building the whole document in memory.
+ */
+final class BinaryCopyWriter {
+
+    private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+    private static final int TEXT_OID = 25;
+    private static final int FLUSH_BYTES = 1 << 20;
+
+    private final CopyIn copyIn;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(FLUSH_BYTES + 64 * 1024);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+
+    BinaryCopyWriter(CopyIn copyIn) throws IOException {
+        this.copyIn = copyIn;
+        out.write(SIGNATURE);
+        out.writeInt(0); // flags
+        out.writeInt(0); // header extension
+    }
+
+    void startRow(int fields) throws IOException {
+        flushIfFull();
+        out.writeShort(fields);
+    }
+
+    void writeNull() throws IOException {
+        out.writeInt(-1);
+    }
+
+    void writeUuid(UUID value) throws IOException {
+        out.writeInt(16);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    void writeLong(Long value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(8);
+        out.writeLong(value);
+    }
+
+    void writeInt(int value) throws IOException {
+        out.writeInt(4);
+        out.writeInt(value);
+    }
+
+    void writeText(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    void writeHalfVector(HalfVector value) throws IOException {
+        byte[] bytes = new byte[value.lengthInBytes()];
+        value.toBytes(bytes, 0);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    void writeTextArray(List<String> values) throws IOException {
+        byte[][] elements = new byte[values.size()][];
+        int size = values.isEmpty() ? 12 : 20;
+        for (int i = 0; i < values.size(); i++) {
+            elements[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+            size += 4 + elements[i].length;
+        }
+        out.writeInt(size);
+        out.writeInt(values.isEmpty() ? 0 : 1); // dimensions
+        out.writeInt(0);                        // no NULL elements
+        out.writeInt(TEXT_OID);
+        if (!values.isEmpty()) {
+            out.writeInt(values.size());
+            out.writeInt(1);                    // lower bound
+        }
+        for (byte[] element : elements) {
+            out.writeInt(element.length);
+            out.write(element);
+        }
+    }
+
+    void finish() throws IOException, SQLException {
+        out.writeShort(-1);
+        flush();
+        copyIn.endCopy();
+    }
+
+    private void flushIfFull() throws IOException {
+        if (buffer.size() >= FLUSH_BYTES) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        try {
+            out.flush();
+            copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+            buffer.reset();
+        } catch (SQLException ex) {
+            throw new IOException("COPY failed", ex);
+        }
+    }
+}
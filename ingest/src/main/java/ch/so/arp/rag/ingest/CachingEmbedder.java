@@ -0,0 +1,56 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link Embedder} decorator backed by an {@link EmbeddingCache}. Only texts
+ * without a cached vector are sent to the delegate, in a single call, and
+ * their vectors are stored afterwards.
+ */
+public final class CachingEmbedder implements Embedder {
+
+    private final Embedder delegate;
+    private final EmbeddingCache cache;
+
+    public CachingEmbedder(Embedder delegate, EmbeddingCache cache) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.cache = Objects.requireNonNull(cache, "cache");
+        if (delegate.dimensions() != cache.dimensions()) {
+            throw new IllegalArgumentException("The cache holds " + cache.dimensions()
+                    + " dimensions but the embedder returns " + delegate.dimensions());
+        }
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) throws IOException, InterruptedException {
+        float[][] vectors = new float[texts.size()][];
+        List<Integer> uncached = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            vectors[i] = cache.get(texts.get(i));
+            if (vectors[i] == null) {
+                uncached.add(i);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            List<float[]> fresh = delegate.embed(uncached.stream().map(texts::get).toList());
+            for (int j = 0; j < uncached.size(); j++) {
+                vectors[uncached.get(j)] = fresh.get(j);
+                cache.put(texts.get(uncached.get(j)), fresh.get(j));
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingCache cache() {
+        return cache;
+    }
+}
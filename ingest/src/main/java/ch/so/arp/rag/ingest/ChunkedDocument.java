@@ -0,0 +1,24 @@
+package ch.so.arp.rag.ingest;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A document split into sections and chunks, ready to be embedded.
+ *
+ * @param pdf the file as given on the command line
+ * @param source state of the file
+ * @param meta municipality and plan type
+ * @param title first line of text, if any
+ * @param pages number of pages
+ * @param sobau SOBAU numbers found anywhere in the document
+ * @param sections the sections in document order, without their text
+ * @param chunks the chunks of each section, parallel to {@code sections}; they hold the only copy of the text
+ */
+public record ChunkedDocument(Path pdf, SourceFile source, DocumentMeta meta, String title, int pages,
+        List<Integer> sobau, List<Section> sections, List<List<DocumentChunk>> chunks) {
+
+    public List<DocumentChunk> allChunks() {
+        return chunks.stream().flatMap(List::stream).toList();
+    }
+}
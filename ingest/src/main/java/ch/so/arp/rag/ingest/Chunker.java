@@ -0,0 +1,14 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.List;
+
+/**
+ * Cuts the text of a section into chunks that are embedded one by one.
+ */
+public interface Chunker {
+
+    /**
+     * Cut {@code text} into chunks, in order. Chunks may overlap.
+     */
+    List<TextChunk> chunk(String text);
+}
@@ -0,0 +1,20 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.List;
+
+/**
+ * Chunk of a document as it is stored in {@code arp_rag_vp.chunks}.
+ *
+ * @param pageFrom first page of the section the chunk belongs to
+ * @param pageTo last page of the section the chunk belongs to
+ * @param text the chunk text
+ * @param start offset of the first character in the section text
+ * @param end offset after the last character in the section text
+ * @param tokens number of tokens
+ * @param digest content address of the chunk, unique in the database
+ * @param topics topics recognised in the text
+ * @param sobauCodes SOBAU numbers mentioned in the text
+ */
+public record DocumentChunk(int pageFrom, int pageTo, String text, int start, int end, int tokens, String digest,
+        List<String> topics, List<String> sobauCodes) {
+}
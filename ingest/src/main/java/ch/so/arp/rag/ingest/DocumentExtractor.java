@@ -0,0 +1,201 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns a report into a {@link ChunkedDocument}: the {@link DocumentParser}
+ * feeds the pages to the {@link Sectioner}, and every completed section is cut
+ * by the {@link Chunker} right away. Along the way the SOBAU numbers and the
+ * title are taken from the page text, and each chunk gets its topics and
+ * content address.
+ */
+public final class DocumentExtractor {
+
+    static final Pattern SOBAU_PATTERN = Pattern.compile(
+            "(?:SOBAU|Dossier)\\s*(?:Nr\\.\\s*)?#\\s*(\\d{2,3}['\\u2019\\s]?\\d{3})");
+
+    private static final int MAX_TITLE_LENGTH = 200;
+
+    private final DocumentParser parser;
+    private final Sectioner sectioner;
+    private final Chunker chunker;
+
+    public DocumentExtractor(DocumentParser parser, Sectioner sectioner, Chunker chunker) {
+        this.parser = Objects.requireNonNull(parser, "parser");
+        this.sectioner = Objects.requireNonNull(sectioner, "sectioner");
+        this.chunker = Objects.requireNonNull(chunker, "chunker");
+    }
+
+    /**
+     * Extractor for the PDF reports with the default chunk size.
+     */
+    public static DocumentExtractor pdf() {
+        return new DocumentExtractor(new PdfBoxParser(), new HeadingSectioner(), new TokenChunker());
+    }
+
+    /**
+     * Parse, section and chunk {@code pdf}.
+     *
+     * @param pdf the file
+     * @param source the state of the file, see {@link #contentHash(Path)}
+     * @throws IOException if the file cannot be read
+     */
+    public ChunkedDocument extract(Path pdf, SourceFile source) throws IOException {
+        String filename = pdf.getFileName().toString();
+        DocumentMeta meta = DocumentMeta.fromFilename(filename);
+        List<Section> sections = new ArrayList<>();
+        List<List<DocumentChunk>> chunks = new ArrayList<>();
+        // the digest must not depend on how the path was given on the command line
+        String location = pdf.toAbsolutePath().normalize().toString();
+        // the section text is only needed to cut the chunks, each of which keeps its own part
+        PageSink splitter = sectioner.open(filename, meta, section -> {
+            chunks.add(chunk(location, meta, section));
+            sections.add(section.withoutText());
+        });
+        PageScanner scanner = new PageScanner(splitter);
+        int pages = parser.parse(pdf, scanner);
+        scanner.finish();
+        return new ChunkedDocument(pdf, source, meta, scanner.title, pages, scanner.sobau, sections, chunks);
+    }
+
+    private List<DocumentChunk> chunk(String location, DocumentMeta meta, Section section) {
+        List<DocumentChunk> rows = new ArrayList<>();
+        for (TextChunk chunk : chunker.chunk(section.text())) {
+            String digest = sha256(meta.municipality() + "|" + meta.planType() + "|" + location + "|"
+                    + section.pageFrom() + "-" + section.pageTo() + "|"
+                    + (section.heading() == null ? "" : section.heading()) + "|" + chunk.text());
+
+            Set<String> sobauCodes = new LinkedHashSet<>();
+            Matcher matcher = SOBAU_PATTERN.matcher(chunk.text());
+            while (matcher.find()) {
+                sobauCodes.add(matcher.group(1));
+            }
+            rows.add(new DocumentChunk(section.pageFrom(), section.pageTo(), chunk.text(), chunk.start(), chunk.end(),
+                    chunk.tokens(), digest, topics(chunk.text()), List.copyOf(sobauCodes)));
+        }
+        return rows;
+    }
+
+    /**
+     * Hex encoded SHA-256 of a file, read as a stream.
+     */
+    public static String contentHash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    static List<String> topics(String chunk) {
+        String lc = chunk.toLowerCase(Locale.ROOT);
+        List<String> topics = new ArrayList<>();
+        if (lc.contains("hecke")) {
+            topics.add("Hecken");
+        }
+        if (lc.contains("fruchtfolgefläch") || lc.contains("fff")) {
+            topics.add("Fruchtfolgeflächen");
+        }
+        if (lc.contains("gewässerraum")) {
+            topics.add("Gewässerraum");
+        }
+        if (lc.contains("lärm")) {
+            topics.add("Lärm");
+        }
+        if (lc.contains("waldabstand")) {
+            topics.add("Waldabstand");
+        }
+        if (lc.contains("baulinie")) {
+            topics.add("Baulinien");
+        }
+        if (lc.contains("energiegründach")) {
+            topics.add("Energiegründach");
+        }
+        if (lc.contains("sichtzonen")) {
+            topics.add("Sichtzonen");
+        }
+        if (lc.contains("siedlungsränder")) {
+            topics.add("Siedlungsränder");
+        }
+        if (lc.contains("biber")) {
+            topics.add("Biber");
+        }
+        if (lc.contains("isos")) {
+            topics.add("ISOS");
+        }
+        if (lc.contains("bauverpflichtung")) {
+            topics.add("Bauverpflichtung");
+        }
+        return List.copyOf(topics);
+    }
+
+    static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    /** Collects SOBAU numbers and the title from the raw page text before passing it on. */
+    private static final class PageScanner implements PageSink {
+
+        private final PageSink delegate;
+        private final List<Integer> sobau = new ArrayList<>();
+        private String title;
+
+        PageScanner(PageSink delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void accept(int page, String text) {
+            // the page of a number is not kept, see sobau_refs.page
+            Matcher matcher = SOBAU_PATTERN.matcher(text);
+            while (matcher.find()) {
+                sobau.add(Integer.parseInt(matcher.group(1).replaceAll("['’\\s]", "")));
+            }
+            if (title == null) {
+                title = firstLine(text);
+            }
+            delegate.accept(page, text);
+        }
+
+        @Override
+        public void finish() {
+            delegate.finish();
+        }
+
+        private static String firstLine(String text) {
+            for (String line : text.split("\\R")) {
+                String trimmed = line.trim();
+                if (trimmed.length() > 3) {
+                    return trimmed.length() > MAX_TITLE_LENGTH ? trimmed.substring(0, MAX_TITLE_LENGTH) : trimmed;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Municipality and plan type of a report, taken from its file name, e.g.
+ * {@code VP_GP_Balsthal_Vorprüfung_….pdf}.
+ *
+ * @param municipality the municipality, {@code Unbekannt} if the name does not tell
+ * @param planType {@code ortsplanung} or {@code gestaltungsplan}
+ */
+public record DocumentMeta(String municipality, String planType) {
+
+    public static final String ORTSPLANUNG = "ortsplanung";
+    public static final String GESTALTUNGSPLAN = "gestaltungsplan";
+
+    private static final Pattern FILENAME_PATTERN = Pattern.compile(
+            "VP_(OP|GP)_([\\p{L}\\p{M}'\\-\\s]+?)(?:_|\\.)",
+            Pattern.UNICODE_CHARACTER_CLASS);
+
+    public static DocumentMeta fromFilename(String filename) {
+        Matcher matcher = FILENAME_PATTERN.matcher(filename);
+        if (!matcher.find()) {
+            return new DocumentMeta("Unbekannt", ORTSPLANUNG);
+        }
+        String planType = switch (matcher.group(1).toUpperCase(Locale.ROOT)) {
+            case "GP" -> GESTALTUNGSPLAN;
+            default -> ORTSPLANUNG;
+        };
+        return new DocumentMeta(matcher.group(2).replace('_', ' ').strip(), planType);
+    }
+}
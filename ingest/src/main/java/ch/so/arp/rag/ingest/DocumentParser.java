@@ -0,0 +1,19 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Extracts the text of a document.
+ */
+public interface DocumentParser {
+
+    /**
+     * Pass the text of each page of {@code file} to {@code pages}, in order.
+     * {@link PageSink#finish()} is left to the caller.
+     *
+     * @return the number of pages
+     * @throws IOException if the file cannot be read
+     */
+    int parse(Path file, PageSink pages) throws IOException;
+}
@@ -0,0 +1,48 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores embedded documents. Implementations must be safe for use by several
+ * threads; each {@link #write(EmbeddedDocument)} is atomic.
+ */
+public interface DocumentWriter extends AutoCloseable {
+
+    /**
+     * Last stored state of every file, keyed by {@link SourceFile#sourceUrl(java.nio.file.Path)}.
+     */
+    Map<String, KnownDocument> knownDocuments() throws SQLException;
+
+    /**
+     * The subset of {@code digests} whose chunks are stored already and need no embedding.
+     */
+    Set<String> storedDigests(Collection<String> digests) throws SQLException;
+
+    /**
+     * Store a document with its sections and new chunks. The vectors of the new
+     * chunks are taken from {@link EmbeddedDocument#vectors()} while they are
+     * written. Chunks that are stored already are attached to the new sections;
+     * chunks of an earlier version of the document that no longer occur are
+     * removed.
+     *
+     * @return the number of removed chunks
+     */
+    int write(EmbeddedDocument document) throws SQLException, IOException, InterruptedException;
+
+    /**
+     * Record the new modification time of files whose content did not change.
+     */
+    void touch(Collection<KnownDocument> documents) throws SQLException;
+
+    /**
+     * Remove all documents, sections and chunks.
+     */
+    void reset() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+}
@@ -0,0 +1,29 @@
+package ch.so.arp.rag.ingest;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * A chunked document whose new chunks are being embedded.
+ *
+ * @param document the chunked document
+ * @param stored digests of the chunks that are stored already and get no vector
+ * @param vectors the vectors of the other chunks in chunk order, as they are embedded
+ */
+public record EmbeddedDocument(ChunkedDocument document, Set<String> stored, VectorStream vectors) {
+
+    public Path pdf() {
+        return document.pdf();
+    }
+
+    /**
+     * Whether {@code chunk} is not stored yet and takes the next vector of {@link #vectors()}.
+     */
+    public boolean isNew(DocumentChunk chunk) {
+        return !stored.contains(chunk.digest());
+    }
+
+    public long newChunks() {
+        return document.allChunks().stream().filter(this::isNew).count();
+    }
+}
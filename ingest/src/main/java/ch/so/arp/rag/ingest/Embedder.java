@@ -0,0 +1,34 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Embedding model used for the chunks during ingest and for the questions in
+ * the chat application. Both sides must use the same implementation and
+ * settings, otherwise question and chunk vectors are not comparable.
+ */
+public interface Embedder {
+
+    /**
+     * Embed several texts at once.
+     *
+     * @param texts the texts to embed
+     * @return one vector per text, in the order of {@code texts}
+     * @throws IOException if the model cannot be reached or answers with an error
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    List<float[]> embed(List<String> texts) throws IOException, InterruptedException;
+
+    /**
+     * Number of dimensions of the returned vectors.
+     */
+    int dimensions();
+
+    /**
+     * Embed a single text.
+     */
+    default float[] embed(String text) throws IOException, InterruptedException {
+        return embed(List.of(text)).get(0);
+    }
+}
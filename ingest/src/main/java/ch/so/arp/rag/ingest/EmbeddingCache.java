@@ -0,0 +1,309 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content addressed embedding cache on disk, shared by the ingest and the chat
+ * application.
+ * Entries are keyed by the SHA-256 of the exact text. Model and dimensions are
+ * part of the file names, so a different model starts a separate cache.
+ * <p>
+ * Two files make up a cache: {@code <model>-<dims>.f16} holds the vectors as
+ * little endian half precision values in fixed size slots and is memory
+ * mapped in segments of 64 MB, {@code <model>-<dims>.idx} is an append only
+ * list of (digest, slot) records that is read into memory when the cache is
+ * opened. Both start with a 16 byte header (magic, dimensions). Writers of
+ * several processes are serialised by a lock on the index file; the vector is
+ * written before its index record, and records appended by another process
+ * are picked up on the next miss.
+ */
+public final class EmbeddingCache implements Closeable {
+
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 36;
+    private static final byte[] VECTOR_MAGIC = "ARPVEC01".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INDEX_MAGIC = "ARPIDX01".getBytes(StandardCharsets.US_ASCII);
+    private static final long SEGMENT_BYTES = 64L << 20;
+
+    private final int dimensions;
+    private final int slotBytes;
+    private final int slotsPerSegment;
+    private final FileChannel vectors;
+    private final FileChannel index;
+    private final Map<Key, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+    private long indexedBytes = HEADER_BYTES;
+    private int count;
+
+    private EmbeddingCache(FileChannel vectors, FileChannel index, int dimensions) {
+        this.vectors = vectors;
+        this.index = index;
+        this.dimensions = dimensions;
+        this.slotBytes = dimensions * Short.BYTES;
+        this.slotsPerSegment = (int) Math.max(1, SEGMENT_BYTES / slotBytes);
+    }
+
+    /**
+     * Open or create the cache for the given model in {@code directory}.
+     */
+    public static EmbeddingCache open(Path directory, String model, int dimensions) throws IOException {
+        Objects.requireNonNull(directory, "directory");
+        Objects.requireNonNull(model, "model");
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        Files.createDirectories(directory);
+        String base = model.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + dimensions;
+        FileChannel vectors = FileChannel.open(directory.resolve(base + ".f16"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel index;
+        try {
+            index = FileChannel.open(directory.resolve(base + ".idx"), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException ex) {
+            vectors.close();
+            throw ex;
+        }
+        EmbeddingCache cache = new EmbeddingCache(vectors, index, dimensions);
+        try (FileLock lock = index.lock()) {
+            cache.initHeader(vectors, VECTOR_MAGIC);
+            cache.initHeader(index, INDEX_MAGIC);
+            cache.refresh();
+        } catch (IOException | RuntimeException ex) {
+            cache.close();
+            throw ex;
+        }
+        return cache;
+    }
+
+    /**
+     * Return the cached embedding of {@code text} or {@code null}.
+     *
+     * @throws UncheckedIOException if the index cannot be read
+     */
+    public float[] get(String text) {
+        Key key = Key.of(text);
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            synchronized (this) {
+                refreshUnchecked();
+            }
+            slot = slots.get(key);
+        }
+        float[] vector = slot == null ? null : read(slot);
+        (vector == null ? misses : hits).incrementAndGet();
+        return vector;
+    }
+
+    /**
+     * Store the embedding of {@code text} unless it is cached already.
+     *
+     * @throws IllegalArgumentException if the vector has other dimensions than the cache
+     * @throws UncheckedIOException if the cache cannot be written
+     */
+    public void put(String text, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        Key key = Key.of(text);
+        if (slots.containsKey(key)) {
+            return;
+        }
+        synchronized (this) {
+            try (FileLock lock = index.lock()) {
+                refresh();
+                if (slots.containsKey(key)) {
+                    return;
+                }
+                int slot = count;
+                ByteBuffer segment = segment(slot);
+                int offset = (slot % slotsPerSegment) * slotBytes;
+                for (int i = 0; i < dimensions; i++) {
+                    segment.putShort(offset + i * Short.BYTES, Float.floatToFloat16(vector[i]));
+                }
+                ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                key.writeTo(record);
+                record.putInt(slot).flip();
+                long position = indexedBytes;
+                while (record.hasRemaining()) {
+                    position += index.write(record, position);
+                }
+                indexedBytes = position;
+                count++;
+                slots.put(key, slot);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not write embedding cache", ex);
+            }
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Number of {@link #get(String)} calls answered from the cache.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of {@link #get(String)} calls that found no embedding.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            index.close();
+        } finally {
+            vectors.close();
+        }
+    }
+
+    private float[] read(int slot) {
+        ByteBuffer segment;
+        try {
+            segment = segment(slot);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read embedding cache", ex);
+        }
+        int offset = (slot % slotsPerSegment) * slotBytes;
+        float[] vector = new float[dimensions];
+        boolean empty = true;
+        for (int i = 0; i < dimensions; i++) {
+            short half = segment.getShort(offset + i * Short.BYTES);
+            empty &= (half & 0x7fff) == 0;
+            vector[i] = Float.float16ToFloat(half);
+        }
+        // a slot whose vector never reached the disk reads as zeros, which no embedding model produces
+        return empty ? null : vector;
+    }
+
+    private ByteBuffer segment(int slot) throws IOException {
+        int number = slot / slotsPerSegment;
+        ByteBuffer[] mapped = segments;
+        if (number < mapped.length) {
+            return mapped[number];
+        }
+        synchronized (this) {
+            mapped = segments;
+            if (number >= mapped.length) {
+                int first = mapped.length;
+                mapped = Arrays.copyOf(mapped, number + 1);
+                for (int i = first; i <= number; i++) {
+                    long size = (long) slotsPerSegment * slotBytes;
+                    mapped[i] = vectors.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + i * size, size)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                }
+                segments = mapped;
+            }
+            return mapped[number];
+        }
+    }
+
+    private void initHeader(FileChannel channel, byte[] magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (channel.size() == 0) {
+            header.put(magic).putInt(dimensions).putInt(0).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            return;
+        }
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read the complete header
+        }
+        byte[] actual = new byte[magic.length];
+        header.flip();
+        if (header.remaining() < HEADER_BYTES) {
+            throw new IOException("Embedding cache file is truncated");
+        }
+        header.get(actual);
+        if (!Arrays.equals(actual, magic) || header.getInt() != dimensions) {
+            throw new IOException("Embedding cache file was not written for " + dimensions + " dimensions");
+        }
+    }
+
+    private void refreshUnchecked() {
+        try {
+            refresh();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read embedding cache index", ex);
+        }
+    }
+
+    /** Read index records appended since the last refresh. A partially written tail record is ignored. */
+    private void refresh() throws IOException {
+        long size = index.size();
+        long complete = HEADER_BYTES + (size - HEADER_BYTES) / RECORD_BYTES * RECORD_BYTES;
+        if (complete <= indexedBytes) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate((int) (complete - indexedBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        while (records.hasRemaining() && index.read(records, indexedBytes + records.position()) >= 0) {
+            // read all new records
+        }
+        records.flip();
+        while (records.remaining() >= RECORD_BYTES) {
+            Key key = Key.readFrom(records);
+            slots.put(key, records.getInt());
+            count++;
+        }
+        indexedBytes = complete;
+    }
+
+    private record Key(long a, long b, long c, long d) {
+
+        static Key of(String text) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+                return readFrom(ByteBuffer.wrap(digest));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        /** The digest is stored as its raw bytes, independent of the buffer's byte order. */
+        static Key readFrom(ByteBuffer buffer) {
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            Key key = new Key(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+            buffer.order(order);
+            return key;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.BIG_ENDIAN).putLong(a).putLong(b).putLong(c).putLong(d);
+            buffer.order(order);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for the response of {@code /v1/embeddings}. The body is read
+ * in blocks and the numbers are written straight into preallocated
+ * {@code float[]}s, parsed as decimals without intermediate strings. The order
+ * follows the {@code index} field of the elements of {@code data}, not their
+ * position. All other fields are skipped.
+ */
+final class EmbeddingResponseParser {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final InputStream in;
+    private final int dimensions;
+    private final byte[] buffer = new byte[16 * 1024];
+    private final StringBuilder scratch = new StringBuilder(32);
+    private int position;
+    private int limit;
+
+    EmbeddingResponseParser(InputStream in, int dimensions) {
+        this.in = in;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Parse the response of a request with {@code expected} inputs.
+     *
+     * @throws IOException if the body is malformed, a vector has other dimensions or an index is missing
+     */
+    float[][] parse(int expected) throws IOException {
+        float[][] vectors = new float[expected][];
+        expect('{');
+        if (skipWhitespaceAndPeek() == '}') {
+            position++;
+            return checkComplete(vectors);
+        }
+        do {
+            String key = readString();
+            expect(':');
+            if ("data".equals(key)) {
+                parseData(vectors);
+            } else {
+                skipValue();
+            }
+        } while (nextMemberOrEnd('}'));
+        return checkComplete(vectors);
+    }
+
+    private void parseData(float[][] vectors) throws IOException {
+        expect('[');
+        if (skipWhitespaceAndPeek() == ']') {
+            position++;
+            return;
+        }
+        do {
+            float[] vector = null;
+            int index = -1;
+            expect('{');
+            if (skipWhitespaceAndPeek() != '}') {
+                do {
+                    String key = readString();
+                    expect(':');
+                    switch (key) {
+                        case "embedding" -> vector = readFloatArray();
+                        case "index" -> index = (int) readNumber();
+                        default -> skipValue();
+                    }
+                } while (nextMemberOrEnd('}'));
+            } else {
+                position++;
+            }
+            if (vector == null || index < 0 || index >= vectors.length || vectors[index] != null) {
+                throw new IOException("Invalid element in 'data' (index=" + index + ")");
+            }
+            vectors[index] = vector;
+        } while (nextMemberOrEnd(']'));
+    }
+
+    private float[] readFloatArray() throws IOException {
+        float[] vector = new float[dimensions];
+        int count = 0;
+        expect('[');
+        if (skipWhitespaceAndPeek() == ']') {
+            position++;
+        } else {
+            do {
+                if (count == vector.length) {
+                    vector = Arrays.copyOf(vector, Math.max(1, vector.length * 2));
+                }
+                vector[count++] = (float) readNumber();
+            } while (nextMemberOrEnd(']'));
+        }
+        if (count != dimensions) {
+            throw new IOException("Embedding has " + count + " instead of " + dimensions + " dimensions");
+        }
+        return vector;
+    }
+
+    /** Decimal number without allocating a string; unusual formats fall back to Double.parseDouble. */
+    private double readNumber() throws IOException {
+        skipWhitespaceAndPeek();
+        scratch.setLength(0);
+        boolean negative = false;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int c = peek();
+        if (c == '-') {
+            negative = true;
+            c = consume(c);
+        }
+        while (c >= '0' && c <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+            } else {
+                scale--;
+            }
+            c = consume(c);
+        }
+        if (c == '.') {
+            c = consume(c);
+            while (c >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    scale++;
+                }
+                c = consume(c);
+            }
+        }
+        boolean fast = true;
+        if (c == 'e' || c == 'E') {
+            fast = false;
+            c = consume(c);
+            if (c == '+' || c == '-') {
+                c = consume(c);
+            }
+            while (c >= '0' && c <= '9') {
+                c = consume(c);
+            }
+        }
+        if (scratch.isEmpty() || (scratch.length() == 1 && negative)) {
+            throw new IOException("Number expected at position " + position);
+        }
+        if (fast && scale >= 0 && scale < POW10.length) {
+            double value = mantissa / POW10[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(scratch.toString());
+    }
+
+    /** Keep {@code c} for the slow path of {@link #readNumber()} and return the next character. */
+    private int consume(int c) throws IOException {
+        scratch.append((char) c);
+        position++;
+        return peek();
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        scratch.setLength(0);
+        ByteArrayOutputStream utf8 = null;
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                int escaped = read();
+                switch (escaped) {
+                    case 'n' -> scratch.append('\n');
+                    case 't' -> scratch.append('\t');
+                    case 'r' -> scratch.append('\r');
+                    case 'b' -> scratch.append('\b');
+                    case 'f' -> scratch.append('\f');
+                    case 'u' -> {
+                        int codePoint = 0;
+                        for (int i = 0; i < 4; i++) {
+                            codePoint = codePoint * 16 + Character.digit(read(), 16);
+                        }
+                        scratch.append((char) codePoint);
+                    }
+                    default -> scratch.append((char) escaped);
+                }
+            } else if (c < 0x80) {
+                scratch.append((char) c);
+            } else {
+                // multi-byte UTF-8: collect the bytes and decode them at the end (keys are ASCII here)
+                if (utf8 == null) {
+                    utf8 = new ByteArrayOutputStream();
+                }
+                utf8.write(scratch.toString().getBytes(StandardCharsets.UTF_8));
+                scratch.setLength(0);
+                utf8.write(c);
+                while ((c = peek()) != '"' && c != '\\') {
+                    utf8.write(read());
+                }
+                scratch.append(utf8.toString(StandardCharsets.UTF_8));
+                utf8.reset();
+            }
+        }
+        return scratch.toString();
+    }
+
+    private void skipValue() throws IOException {
+        int c = skipWhitespaceAndPeek();
+        switch (c) {
+            case '"' -> readString();
+            case '{' -> {
+                position++;
+                if (skipWhitespaceAndPeek() == '}') {
+                    position++;
+                    return;
+                }
+                do {
+                    readString();
+                    expect(':');
+                    skipValue();
+                } while (nextMemberOrEnd('}'));
+            }
+            case '[' -> {
+                position++;
+                if (skipWhitespaceAndPeek() == ']') {
+                    position++;
+                    return;
+                }
+                do {
+                    skipValue();
+                } while (nextMemberOrEnd(']'));
+            }
+            case 't', 'f', 'n' -> {
+                while (Character.isLetter(peek())) {
+                    position++;
+                }
+            }
+            default -> readNumber();
+        }
+    }
+
+    /** After a value: true for ',', false for the closing character. */
+    private boolean nextMemberOrEnd(char close) throws IOException {
+        int c = skipWhitespaceAndPeek();
+        position++;
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw new IOException("Expected ',' or '" + close + "' but found '" + (c < 0 ? "EOF" : (char) c) + "'");
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = skipWhitespaceAndPeek();
+        if (c != expected) {
+            throw new IOException("Expected '" + expected + "' but found '" + (c < 0 ? "EOF" : (char) c) + "'");
+        }
+        position++;
+    }
+
+    private int skipWhitespaceAndPeek() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            position++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position] & 0xff;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c < 0) {
+            throw new IOException("Unexpected end of the response");
+        }
+        position++;
+        return c;
+    }
+
+    private static float[][] checkComplete(float[][] vectors) throws IOException {
+        for (int i = 0; i < vectors.length; i++) {
+            if (vectors[i] == null) {
+                throw new IOException("Embedding count mismatch: index " + i + " is missing");
+            }
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,151 @@
+package ch.so.arp.rag.ingest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.postgresql.PGStatement;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.util.ByteConverter;
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+
+/**
+ * pgvector {@code halfvec} parameter. The vector is converted to IEEE 754 half
+ * precision once and sent in the binary wire format of pgvector (dimension,
+ * reserved field, big endian fp16 values), which is about a sixth of the size
+ * of the text literal and needs no parsing on the server.
+ * <p>
+ * The driver only sends it in binary if {@link #enableBinaryTransfer(Connection)}
+ * was called for the connection; otherwise {@link #getValue()} provides the
+ * text form. Likewise, columns are only read in binary after
+ * {@link #enableBinaryReceive(PreparedStatement)}.
+ */
+public final class HalfVector extends PGobject implements PGBinaryObject {
+
+    public static final String TYPE = "halfvec";
+
+    private static final long serialVersionUID = 1L;
+
+    private short[] half = new short[0];
+
+    public HalfVector() {
+        setType(TYPE);
+    }
+
+    public HalfVector(float[] vector) {
+        this();
+        this.half = VectorCodec.encode(vector);
+    }
+
+    /**
+     * Let the driver send {@code halfvec} parameters of this connection in
+     * binary. Connections of other drivers are left untouched.
+     *
+     * @param connection the connection the statement is executed on
+     * @throws SQLException if the type lookup fails
+     */
+    public static void enableBinaryTransfer(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(BaseConnection.class)) {
+            return;
+        }
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+        int oid = pgConnection.getTypeInfo().getPGType(TYPE);
+        if (oid != Oid.UNSPECIFIED && !pgConnection.binaryTransferSend(oid)) {
+            pgConnection.getQueryExecutor().addBinarySendOid(oid);
+        }
+    }
+
+    /**
+     * Let the driver return the {@code halfvec} columns of this statement in
+     * binary as {@link HalfVector}, so reading a vector needs no text parsing
+     * either. Statements of other drivers are left untouched.
+     *
+     * @param statement the statement that is about to be executed
+     * @throws SQLException if the type lookup fails
+     */
+    public static void enableBinaryReceive(PreparedStatement statement) throws SQLException {
+        Connection connection = statement.getConnection();
+        if (!connection.isWrapperFor(BaseConnection.class) || !statement.isWrapperFor(PGStatement.class)) {
+            return;
+        }
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+        int oid = pgConnection.getTypeInfo().getPGType(TYPE);
+        if (oid == Oid.UNSPECIFIED) {
+            return;
+        }
+        pgConnection.addDataType(TYPE, HalfVector.class);
+        pgConnection.getQueryExecutor().addBinaryReceiveOid(oid);
+        // result columns are only sent in binary by server prepared statements
+        statement.unwrap(PGStatement.class).setPrepareThreshold(-1);
+    }
+
+    public float[] toArray() {
+        return VectorCodec.decode(half);
+    }
+
+    public int dimensions() {
+        return half.length;
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return 4 + 2 * half.length;
+    }
+
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        ByteConverter.int2(bytes, offset, half.length);
+        ByteConverter.int2(bytes, offset + 2, 0);
+        int position = offset + 4;
+        for (short value : half) {
+            ByteConverter.int2(bytes, position, value);
+            position += 2;
+        }
+    }
+
+    @Override
+    public void setByteValue(byte[] bytes, int offset) {
+        int dimensions = ByteConverter.int2(bytes, offset);
+        short[] values = new short[dimensions];
+        int position = offset + 4;
+        for (int i = 0; i < dimensions; i++) {
+            values[i] = ByteConverter.int2(bytes, position);
+            position += 2;
+        }
+        this.half = values;
+    }
+
+    @Override
+    public String getValue() {
+        return VectorCodec.toLiteral(toArray());
+    }
+
+    @Override
+    public void setValue(String value) throws SQLException {
+        try {
+            this.half = VectorCodec.encode(VectorCodec.parseLiteral(value));
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException("Invalid halfvec literal: " + value, ex);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof HalfVector vector && Arrays.equals(half, vector.half);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(half);
+    }
+
+    @Override
+    public HalfVector clone() throws CloneNotSupportedException {
+        HalfVector copy = (HalfVector) super.clone();
+        copy.half = half.clone();
+        return copy;
+    }
+}
@@ -0,0 +1,134 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link Sectioner} for the preliminary examination reports. A section starts
+ * at a heading line: numbered headings ({@code 3.2 Verkehr}) in reports on
+ * local plans ({@code _OP_}), the fixed chapter titles in reports on design
+ * plans ({@code _GP_}), either kind if the file name does not tell. Only the
+ * text of the current section is held in memory.
+ */
+public final class HeadingSectioner implements Sectioner {
+
+    private static final Pattern NUMBERED_HEADING = Pattern.compile(
+            "^\\s*(\\d+(?:\\.\\d+)*)\\s+(.+)$",
+            Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern GP_HEADING = Pattern.compile(
+            "^(Ausgangslage|Beurteilung|Raumplanung(?:\\s+und\\s+Richtprojekt)?|"
+                    + "Baumasse(?:\\s*/\\s*Grenzabstände)?|Grenzabstände|Lärm|"
+                    + "Erschliessung(?:sprinzip)?|Umgebungsgestaltung|"
+                    + "Gewässer\\s*/\\s*Ufergestaltung|Wasserbauliche\\s+Massnahmen\\s+an\\s+öffentlichen\\s+Gewässern|"
+                    + "Geschossfläche|Sonderbauvorschriften|Anmerkungen\\s+zu\\s+den\\s+Unterlagen|"
+                    + "Verkehr|Umwelt|Wald|Flora|Fauna|Lebensräume|Wasserversorgung|Planungsmehrwert)\\b[^\\n]*$",
+            Pattern.MULTILINE | Pattern.UNICODE_CHARACTER_CLASS | Pattern.CASE_INSENSITIVE);
+    private static final Pattern HORIZONTAL_WHITESPACE = Pattern.compile("[ \\t\\x0B\\f\\r]+");
+
+    @Override
+    public PageSink open(String filename, DocumentMeta meta, Consumer<Section> sections) {
+        String upperName = filename.toUpperCase(Locale.ROOT);
+        boolean op = upperName.contains("_OP_");
+        boolean gp = upperName.contains("_GP_");
+        if (!op && !gp) {
+            op = DocumentMeta.ORTSPLANUNG.equalsIgnoreCase(meta.planType());
+            gp = DocumentMeta.GESTALTUNGSPLAN.equalsIgnoreCase(meta.planType());
+        }
+        HeadingKind kind = gp ? HeadingKind.GP : op ? HeadingKind.NUMBERED : HeadingKind.ANY;
+        return new Splitter(kind, Objects.requireNonNull(sections, "sections"));
+    }
+
+    static boolean isNumberedHeading(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 200) {
+            return false;
+        }
+        Matcher matcher = NUMBERED_HEADING.matcher(trimmed);
+        if (!matcher.matches()) {
+            return false;
+        }
+        String title = matcher.group(2).trim();
+        return !title.isEmpty() && title.length() <= 160 && title.codePoints().anyMatch(Character::isLetter);
+    }
+
+    static boolean isGpHeading(String line) {
+        String trimmed = line.trim();
+        return !trimmed.isEmpty() && GP_HEADING.matcher(trimmed).matches();
+    }
+
+    private enum HeadingKind {
+        NUMBERED, GP, ANY;
+
+        boolean matches(String line) {
+            return switch (this) {
+                case NUMBERED -> isNumberedHeading(line);
+                case GP -> isGpHeading(line);
+                case ANY -> isNumberedHeading(line) || isGpHeading(line);
+            };
+        }
+    }
+
+    private static final class Splitter implements PageSink {
+
+        private final HeadingKind kind;
+        private final Consumer<Section> sink;
+        private final StringBuilder current = new StringBuilder();
+        private String currentHeading;
+        private int sectionStartPage = -1;
+        private int lastPage;
+        private int firstPage = -1;
+        private boolean emitted;
+
+        Splitter(HeadingKind kind, Consumer<Section> sink) {
+            this.kind = kind;
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(int page, String text) {
+            if (firstPage < 0) {
+                firstPage = page;
+                sectionStartPage = page;
+                lastPage = page;
+            }
+            String normalized = HORIZONTAL_WHITESPACE.matcher(text.replace('\u00A0', ' ')).replaceAll(" ");
+            for (String raw : normalized.split("\\R", -1)) {
+                String line = raw.strip();
+                if (kind.matches(line)) {
+                    emitCurrent();
+                    currentHeading = line;
+                    sectionStartPage = page;
+                    current.append(line).append("\n\n");
+                } else if (!line.isEmpty()) {
+                    current.append(line).append('\n');
+                } else {
+                    current.append('\n');
+                }
+                lastPage = page;
+            }
+        }
+
+        @Override
+        public void finish() {
+            emitCurrent();
+            if (!emitted && firstPage >= 0) {
+                // no text in the whole document: a single empty section
+                sink.accept(new Section(firstPage, firstPage, null, ""));
+            }
+        }
+
+        private void emitCurrent() {
+            if (current.length() > 0) {
+                String text = current.toString().strip();
+                if (!text.isEmpty() || currentHeading != null) {
+                    sink.accept(new Section(sectionStartPage, lastPage, currentHeading, text));
+                    emitted = true;
+                }
+                current.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the used heap every 50 ms and keeps the maximum.
+ */
+final class HeapSampler {
+
+    private final AtomicLong peak = new AtomicLong();
+    private final Thread thread;
+
+    HeapSampler() {
+        thread = Thread.ofPlatform().name("heap-sampler").daemon().start(() -> {
+            Runtime rt = Runtime.getRuntime();
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(rt.totalMemory() - rt.freeMemory(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        });
+    }
+
+    void stop() throws InterruptedException {
+        thread.interrupt();
+        thread.join();
+    }
+
+    long peakBytes() {
+        return peak.get();
+    }
+}
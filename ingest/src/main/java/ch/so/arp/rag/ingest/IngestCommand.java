@@ -0,0 +1,421 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Command line of the ingest: {@code ingest [Optionen] <pdf-or-folder> …}.
+ * Messages are in German like the reports.
+ */
+public final class IngestCommand {
+
+    static final String DEFAULT_DB_URL = "jdbc:postgresql://localhost:54323/arp_rag";
+    static final String DEFAULT_EMBED_URL = "https://api.openai.com/v1/embeddings";
+    static final String DEFAULT_CACHE_DIR = System.getProperty("user.home") + "/.cache/arp-rag/embeddings";
+    static final String EMBEDDING_MODEL = "text-embedding-3-large";
+    // shared with the chat application, see application.properties
+    static final String DIMENSIONS_VARIABLE = "EMBEDDING_DIMENSIONS";
+    static final String SHORT_DIMENSIONS_VARIABLE = "EMBEDDING_SHORT_DIMENSIONS";
+    static final String PROBES_VARIABLE = "RETRIEVAL_PROBES";
+
+    private boolean noOpenAi;
+    private boolean reset;
+    private boolean dryRun;
+    private boolean copy;
+    private boolean force;
+    private boolean noCache;
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    private int embedThreads = 4;
+    private int dbThreads = 2;
+    private int queueSize = 4;
+    private int embedRequests = 4;
+    private int tokensPerMinute = 1_000_000;
+    private int requestsPerMinute = 3_000;
+    private int batchTokens = 50_000;
+    private String embedUrl = DEFAULT_EMBED_URL;
+    private String cacheDir = DEFAULT_CACHE_DIR;
+    private String dbUrl = DEFAULT_DB_URL;
+    private String dbUser = System.getenv().getOrDefault("PGUSER", "gretl");
+    private String dbPassword = System.getenv("PGPASSWORD");
+    private int dimensions = environmentInt(DIMENSIONS_VARIABLE, MockEmbedder.DEFAULT_DIMENSIONS);
+    private int shortDimensions = environmentInt(SHORT_DIMENSIONS_VARIABLE, 0);
+    private VectorIndexBuilder.Method reindex;
+    private String indexMemory = "1GB";
+    private int indexWorkers = 2;
+    private int probes = environmentInt(PROBES_VARIABLE, 10);
+    private double minRecall;
+    private final List<String> inputs = new ArrayList<>();
+
+    private IngestCommand() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        IngestCommand command = new IngestCommand();
+        if (!command.parse(args)) {
+            return;
+        }
+        System.exit(command.run());
+    }
+
+    private boolean parse(String[] args) {
+        for (String arg : args) {
+            switch (arg) {
+                case "--help", "-h" -> {
+                    printHelp();
+                    return false;
+                }
+                case "--no-openai" -> noOpenAi = true;
+                case "--reset" -> reset = true;
+                case "--run-dry" -> dryRun = true;
+                case "--copy" -> copy = true;
+                case "--force" -> force = true;
+                case "--no-cache" -> noCache = true;
+                default -> {
+                    if (arg.startsWith("--parse-threads=")) {
+                        parseThreads = intOption(arg);
+                    } else if (arg.startsWith("--embed-threads=")) {
+                        embedThreads = intOption(arg);
+                    } else if (arg.startsWith("--db-threads=")) {
+                        dbThreads = intOption(arg);
+                    } else if (arg.startsWith("--queue-size=")) {
+                        queueSize = intOption(arg);
+                    } else if (arg.startsWith("--embed-requests=")) {
+                        embedRequests = intOption(arg);
+                    } else if (arg.startsWith("--tpm=")) {
+                        tokensPerMinute = intOption(arg);
+                    } else if (arg.startsWith("--rpm=")) {
+                        requestsPerMinute = intOption(arg);
+                    } else if (arg.startsWith("--batch-tokens=")) {
+                        batchTokens = intOption(arg);
+                    } else if (arg.startsWith("--embed-url=")) {
+                        embedUrl = stringOption(arg);
+                    } else if (arg.startsWith("--cache-dir=")) {
+                        cacheDir = stringOption(arg);
+                    } else if (arg.startsWith("--db-url=")) {
+                        dbUrl = stringOption(arg);
+                    } else if (arg.startsWith("--db-user=")) {
+                        dbUser = stringOption(arg);
+                    } else if (arg.startsWith("--db-password=")) {
+                        dbPassword = stringOption(arg);
+                    } else if (arg.startsWith("--dimensions=")) {
+                        dimensions = intOption(arg);
+                    } else if (arg.startsWith("--short-dimensions=")) {
+                        shortDimensions = Integer.parseInt(stringOption(arg));
+                    } else if (arg.startsWith("--reindex=")) {
+                        reindex = VectorIndexBuilder.Method.valueOf(stringOption(arg).toUpperCase(Locale.ROOT));
+                    } else if (arg.startsWith("--index-memory=")) {
+                        indexMemory = stringOption(arg);
+                    } else if (arg.startsWith("--index-workers=")) {
+                        indexWorkers = intOption(arg);
+                    } else if (arg.startsWith("--probes=")) {
+                        probes = intOption(arg);
+                    } else if (arg.startsWith("--min-recall=")) {
+                        minRecall = Double.parseDouble(stringOption(arg));
+                    } else {
+                        inputs.add(arg);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private int run() throws Exception {
+        if (dryRun) {
+            noOpenAi = true;
+        }
+        String apiKey = System.getenv("OPENAI_API_KEY");
+        if (!noOpenAi && (apiKey == null || apiKey.isBlank())) {
+            System.err.println("Hinweis: Kein OPENAI_API_KEY gesetzt. Nutze --no-openai oder exportiere OPENAI_API_KEY.");
+            return 1;
+        }
+        if (dryRun && reset) {
+            System.err.println("--run-dry und --reset können nicht gemeinsam verwendet werden. Entferne eine der Optionen.");
+            return 1;
+        }
+        if (shortDimensions < 0 || shortDimensions >= dimensions) {
+            System.err.println("--short-dimensions muss zwischen 0 und " + (dimensions - 1) + " liegen.");
+            return 1;
+        }
+        if (dryRun && reindex != null) {
+            System.err.println("--run-dry und --reindex können nicht gemeinsam verwendet werden. Entferne eine der Optionen.");
+            return 1;
+        }
+        if (minRecall < 0 || minRecall > 1) {
+            System.err.println("--min-recall muss zwischen 0 und 1 liegen.");
+            return 1;
+        }
+        if (!reset && inputs.isEmpty() && reindex != null) {
+            return reindex();
+        }
+        if (!reset && inputs.isEmpty()) {
+            System.err.println("Keine Eingaben. Nutze: ingest [--no-openai] [--reset] <pdf-or-folder> …");
+            return 1;
+        }
+
+        List<Path> pdfs = collectPdfs();
+        IngestPipeline.Settings settings = new IngestPipeline.Settings(parseThreads, embedThreads, dbThreads,
+                queueSize, force);
+        if (dryRun) {
+            IngestPipeline pipeline = new IngestPipeline(DocumentExtractor.pdf(), null, null, settings,
+                    new ConsoleListener(true));
+            return report(pipeline.dryRun(pdfs), null);
+        }
+
+        try (PostgresDocumentWriter writer = PostgresDocumentWriter.open(dbUrl, dbUser, dbPassword, dbThreads,
+                copy, dimensions, shortDimensions)) {
+            if (reset) {
+                System.out.println(">> RESET: Schema arp_rag_vp wird geleert …");
+                writer.reset();
+                System.out.println(">> RESET: fertig.");
+                if (inputs.isEmpty()) {
+                    System.out.println("Reset ausgeführt. (Keine Dateien angegeben, Ende.)");
+                    return 0;
+                }
+                System.out.println("Reset ausgeführt. Fahre mit Ingest fort …");
+            }
+            EmbeddingCache cache = null;
+            try {
+                Embedder embedder;
+                if (noOpenAi) {
+                    embedder = new MockEmbedder(dimensions);
+                } else {
+                    embedder = OpenAiEmbedder.builder(URI.create(embedUrl), apiKey)
+                            .model(EMBEDDING_MODEL)
+                            .dimensions(dimensions)
+                            .maxInFlight(embedRequests)
+                            .tokensPerMinute(tokensPerMinute)
+                            .requestsPerMinute(requestsPerMinute)
+                            .batchTokens(batchTokens)
+                            .build();
+                    if (!noCache) {
+                        cache = EmbeddingCache.open(Paths.get(cacheDir), EMBEDDING_MODEL, embedder.dimensions());
+                        embedder = new CachingEmbedder(embedder, cache);
+                    }
+                }
+                IngestPipeline pipeline = new IngestPipeline(DocumentExtractor.pdf(), embedder, writer, settings,
+                        new ConsoleListener(false));
+                int status = report(pipeline.run(pdfs), cache);
+                if (reindex != null) {
+                    int indexed = reindex();
+                    return status != 0 ? status : indexed;
+                }
+                return status;
+            } finally {
+                if (cache != null) {
+                    cache.close();
+                }
+            }
+        }
+    }
+
+    private int reindex() throws SQLException {
+        System.out.println(">> INDEX: " + reindex.name().toLowerCase(Locale.ROOT)
+                + " auf arp_rag_vp.chunks.embedding wird neu aufgebaut (CONCURRENTLY) …");
+        try (Connection connection = PostgresDocumentWriter.connect(dbUrl, dbUser, dbPassword)) {
+            VectorIndexBuilder.Report report = new VectorIndexBuilder(connection).rebuild(
+                    new VectorIndexBuilder.Settings(reindex, indexMemory, indexWorkers, 100, 10, probes,
+                            VectorIndexBuilder.HNSW_EF_SEARCH, minRecall));
+            if (!report.accepted()) {
+                System.err.printf("Index verworfen: Recall@10 (%s) %.3f liegt unter --min-recall=%.3f."
+                        + " Der bisherige Index bleibt.%n", report.search(), report.recall(), minRecall);
+                return 3;
+            }
+            StringBuilder out = new StringBuilder(String.format("Index %s (%s%s) über %d Chunks in %.1f s gebaut",
+                    report.index(), report.method().name().toLowerCase(Locale.ROOT),
+                    report.lists() > 0 ? ", lists = " + report.lists() : "", report.rows(),
+                    report.buildTime().toMillis() / 1e3));
+            out.append(report.replaced().isEmpty() ? ".\n"
+                    : ", ersetzt: " + String.join(", ", report.replaced()) + ".\n");
+            if (!Double.isNaN(report.recall())) {
+                out.append(String.format("Recall@10 gegenüber exakter Suche (%s): %.3f%n", report.search(),
+                        report.recall()));
+                if (report.lists() > 0 && VectorIndexBuilder.probes(report.lists()) != probes) {
+                    out.append(String.format("pgvector empfiehlt für %d lists ivfflat.probes=%d"
+                            + " (rag.chat.retrieval.probes, $%s).%n", report.lists(),
+                            VectorIndexBuilder.probes(report.lists()), PROBES_VARIABLE));
+                }
+            }
+            System.out.print(out);
+        }
+        return 0;
+    }
+
+    private List<Path> collectPdfs() throws IOException {
+        List<Path> pdfs = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(IngestCommand::isPdf).sorted().forEach(pdfs::add);
+                }
+            } else if (Files.isRegularFile(path) && isPdf(path)) {
+                pdfs.add(path);
+            } else {
+                System.err.println("Übersprungen (kein PDF): " + path);
+            }
+        }
+        return pdfs;
+    }
+
+    private static boolean isPdf(Path path) {
+        return path.toString().toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    private int report(IngestPipeline.Result result, EmbeddingCache cache) {
+        double wall = result.elapsed().toNanos() / 1e9;
+        StringBuilder out = new StringBuilder(
+                "Stufen (Dokumente, Dokumente/s über die Laufzeit, Arbeitszeit, Allokation):\n");
+        for (IngestPipeline.StageReport stage : result.stages()) {
+            String allocation = stage.allocatedBytes() < 0 ? "n/a (virtuelle Threads)"
+                    : stage.items() == 0 ? "-"
+                    : String.format("%.1f MB/Dokument", stage.allocatedBytes() / 1e6 / stage.items());
+            out.append(String.format("  %-8s %5d  %7.2f/s  %8.1f s  %s%n", stage.name(), stage.items(),
+                    stage.items() / Math.max(wall, 1e-9), stage.busyNanos() / 1e9, allocation));
+        }
+        out.append(String.format("  Heap: max. %.0f MB belegt (von %.0f MB)%n", result.peakHeapBytes() / 1e6,
+                Runtime.getRuntime().maxMemory() / 1e6));
+        out.append(dryRun ? "Run-Dry abgeschlossen" : "Ingest abgeschlossen").append(": ")
+                .append(result.documents() - result.failed()).append(" von ").append(result.documents())
+                .append(" PDFs in ").append(result.elapsed().toSeconds()).append(" s.");
+        if (result.unchanged() > 0) {
+            out.append(" Davon unverändert: ").append(result.unchanged()).append('.');
+        }
+        out.append('\n');
+        if (cache != null) {
+            out.append("Embedding-Cache: ").append(cache.hits()).append(" Treffer, ").append(cache.misses())
+                    .append(" neu berechnet (").append(cacheDir).append(").\n");
+        }
+        System.out.print(out);
+        return result.failed() == 0 ? 0 : 2;
+    }
+
+    private static int intOption(String arg) {
+        int value = Integer.parseInt(stringOption(arg));
+        if (value < 1) {
+            throw new IllegalArgumentException("Wert muss grösser als 0 sein: " + arg);
+        }
+        return value;
+    }
+
+    private static int environmentInt(String name, int fallback) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? fallback : Integer.parseInt(value.strip());
+    }
+
+    private static String stringOption(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    private static void printHelp() {
+        System.out.println("""
+                Nutzung: ingest [Optionen] <pdf-or-folder> [mehrere …]
+
+                Optionen:
+                  --no-openai         : Dummy-Embeddings (deterministisch). Kein OPENAI_API_KEY nötig.
+                  --reset             : Leert Schema arp_rag_vp (TRUNCATE … CASCADE). Mit Pfaden: danach ingest.
+                  --run-dry           : Kein DB-Import, keine Embeddings. Zeigt erkannte Sektionen & Chunks.
+                  --parse-threads=N   : Parallele PDF-Extraktion inkl. Sektionierung/Chunking (Default: Anzahl Kerne).
+                  --embed-threads=N   : Dokumente, die gleichzeitig eingebettet werden (Default: 4).
+                  --embed-requests=N  : Embedding-Requests gleichzeitig unterwegs, über alle Dokumente (Default: 4).
+                  --tpm=N             : Budget Tokens pro Minute für Embeddings (Default: 1000000).
+                  --rpm=N             : Budget Requests pro Minute für Embeddings (Default: 3000).
+                  --batch-tokens=N    : Maximale Tokens pro Embedding-Request (Default: 50000).
+                  --embed-url=URL     : Embeddings-Endpunkt (Default: https://api.openai.com/v1/embeddings).
+                  --cache-dir=DIR     : Verzeichnis des Embedding-Caches (Default: ~/.cache/arp-rag/embeddings).
+                  --no-cache          : Embedding-Cache weder lesen noch schreiben.
+                  --db-url=URL        : JDBC-URL (Default: jdbc:postgresql://localhost:54323/arp_rag).
+                  --db-user=NAME      : DB-Benutzer (Default: $PGUSER, sonst gretl).
+                  --db-password=PW    : DB-Passwort (Default: $PGPASSWORD, sonst ~/.pgpass).
+                  --db-threads=N      : Gleichzeitige DB-Verbindungen (Default: 2).
+                  --dimensions=N      : Dimensionen der Embeddings (Default: $EMBEDDING_DIMENSIONS, sonst 3072).
+                  --short-dimensions=N: Zusätzlich die ersten N Dimensionen in embedding_short speichern, mit
+                                        HNSW-Index (Default: $EMBEDDING_SHORT_DIMENSIONS, sonst 0 = aus).
+                  --reindex=METHODE   : Nach dem Ingest (ohne Pfade: nur) den Vektorindex neu aufbauen, hnsw oder
+                                        ivfflat (lists aus der Anzahl Chunks), mit Recall-Schätzung.
+                  --index-memory=SIZE : maintenance_work_mem für den Indexaufbau (Default: 1GB).
+                  --index-workers=N   : max_parallel_maintenance_workers für den Indexaufbau (Default: 2).
+                  --probes=N          : ivfflat.probes der Recall-Schätzung, wie im Chat (Default: $RETRIEVAL_PROBES,
+                                        sonst 10). HNSW wird mit hnsw.ef_search=40 geschätzt.
+                  --min-recall=R      : Neuen Index verwerfen und den bisherigen behalten, wenn der geschätzte
+                                        Recall@10 unter R liegt (0 bis 1, Default: 0 = immer übernehmen).
+                  --queue-size=N      : Dokumente, die zwischen zwei Stufen warten dürfen (Default: 4).
+                  --copy              : Chunks per COPY … FROM STDIN (FORMAT binary) statt Batch-INSERT schreiben.
+                  --force             : Auch unveränderte PDFs neu verarbeiten (bestehende Chunks werden weiterhin nicht neu eingebettet).
+                  -h, --help          : Hilfe anzeigen.
+                """);
+    }
+
+    /** Progress on the console; in a dry run each document is printed with its sections and chunks. */
+    private static final class ConsoleListener implements IngestPipeline.Listener {
+
+        private final boolean dryRun;
+
+        ConsoleListener(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        @Override
+        public void extracted(ChunkedDocument doc) {
+            if (!dryRun) {
+                System.out.println(">> Ingest: " + doc.pdf());
+                return;
+            }
+            StringBuilder out = new StringBuilder();
+            out.append(">> Ingest: ").append(doc.pdf()).append('\n');
+            out.append("Dokument: ").append(doc.pdf().getFileName()).append(" (").append(doc.meta().planType())
+                    .append(", ").append(doc.meta().municipality()).append(", ").append(doc.pages())
+                    .append(" Seiten)\n");
+            for (int value : doc.sobau()) {
+                out.append("  SOBAU gefunden: ").append(value).append('\n');
+            }
+            out.append("Erkannte Sektionen: ").append(doc.sections().size()).append('\n');
+            for (int s = 0; s < doc.sections().size(); s++) {
+                Section section = doc.sections().get(s);
+                String heading = section.heading() == null || section.heading().isBlank()
+                        ? "[ohne Überschrift]"
+                        : section.heading();
+                out.append("== Abschnitt ").append(s + 1).append(": ").append(heading).append(" (Seiten ")
+                        .append(section.pageFrom()).append('-').append(section.pageTo()).append(")\n");
+                int chunkCounter = 0;
+                for (DocumentChunk chunk : doc.chunks().get(s)) {
+                    chunkCounter++;
+                    out.append(String.format("  Chunk %d.%d (Tokens=%d, Zeichen=%d)%n", s + 1, chunkCounter,
+                            chunk.tokens(), chunk.text().length()));
+                    out.append(chunk.text()).append('\n');
+                    out.append("  ----\n");
+                }
+            }
+            synchronized (System.out) {
+                System.out.print(out);
+            }
+        }
+
+        @Override
+        public void unchanged(Path pdf) {
+            System.out.println(">> Unverändert: " + pdf);
+        }
+
+        @Override
+        public void stored(EmbeddedDocument doc, int removedChunks) {
+            System.out.println(">> Gespeichert: " + doc.pdf() + " (" + doc.document().allChunks().size() + " Chunks, davon "
+                    + doc.newChunks() + " neu)"
+                    + (removedChunks > 0 ? "\n   Veraltete Chunks entfernt: " + removedChunks : ""));
+        }
+
+        @Override
+        public void failed(Path pdf, String stage, Exception ex) {
+            System.err.println("Fehler bei: " + pdf + " (" + stage + ") -> " + ex.getMessage());
+            ex.printStackTrace(System.err);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package ch.so.arp.rag.ingest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingests reports in three stages connected by bounded queues: parse (PDF
+ * page by page into sections and chunks, platform threads), embed (chunks not
+ * stored yet, virtual threads) and write (one connection per thread, virtual
+ * threads). A fast stage waits instead of piling up documents in memory, and a
+ * failure only affects its document.
+ * <p>
+ * The embed stage hands a document to the write stage before it embeds it and
+ * then streams the vectors in batches of {@link #EMBED_BATCH} chunks through a
+ * {@link VectorStream}, so the memory per document is bounded by its chunk
+ * texts and a few batches, not by all of its vectors.
+ *
+ * <p>Files whose modification time or content did not change since the last
+ * run are skipped unless {@link Settings#force()} is set.
+ */
+public final class IngestPipeline {
+
+    /** Chunks embedded with one call of the {@link Embedder}. */
+    static final int EMBED_BATCH = 256;
+
+    /** Batches of a document that may wait for the writer. */
+    static final int PENDING_BATCHES = 2;
+
+    private final DocumentExtractor extractor;
+    private final Embedder embedder;
+    private final DocumentWriter writer;
+    private final Settings settings;
+    private final Listener listener;
+
+    /**
+     * @param embedder the embedder, only used by {@link #run(List)}
+     * @param writer the store, only used by {@link #run(List)}
+     */
+    public IngestPipeline(DocumentExtractor extractor, Embedder embedder, DocumentWriter writer, Settings settings,
+            Listener listener) {
+        this.extractor = Objects.requireNonNull(extractor, "extractor");
+        this.embedder = embedder;
+        this.writer = writer;
+        this.settings = Objects.requireNonNull(settings, "settings");
+        this.listener = Objects.requireNonNull(listener, "listener");
+    }
+
+    /**
+     * Extract, embed and store {@code pdfs}.
+     */
+    public Result run(List<Path> pdfs) throws SQLException, InterruptedException {
+        Objects.requireNonNull(embedder, "embedder");
+        Objects.requireNonNull(writer, "writer");
+        Run run = new Run(writer.knownDocuments());
+        BlockingQueue<ChunkedDocument> chunked = new ArrayBlockingQueue<>(settings.queueSize());
+        BlockingQueue<EmbeddedDocument> embedded = new ArrayBlockingQueue<>(settings.queueSize());
+        Stage<Path, ChunkedDocument> parse = new Stage<>("parse", settings.parseThreads(), platformThreads(), null,
+                new LinkedBlockingQueue<>(pdfs), chunked, pdf -> {
+                    ChunkedDocument doc = run.extract(pdf);
+                    if (doc != null) {
+                        listener.extracted(doc);
+                    }
+                    return doc;
+                }, (pdf, ex) -> run.failed(pdf, "parse", ex));
+        Stage<ChunkedDocument, Void> embed = new Stage<>("embed", settings.embedThreads(),
+                virtualThreads(), parse, chunked, null, doc -> embed(doc, embedded),
+                (doc, ex) -> run.failed(doc.pdf(), "embed", ex));
+        Stage<EmbeddedDocument, Void> write = new Stage<>("write", settings.writeThreads(), virtualThreads(), embed,
+                embedded, null, doc -> {
+                    try {
+                        listener.stored(doc, writer.write(doc));
+                    } finally {
+                        doc.vectors().close();
+                    }
+                    return null;
+                }, (doc, ex) -> {
+                    // a failed embedding is reported by the embed stage
+                    if (!doc.vectors().failed()) {
+                        run.failed(doc.pdf(), "write", ex);
+                    }
+                });
+        Result result = run.execute(pdfs.size(), List.of(parse, embed, write));
+        if (!run.touched.isEmpty()) {
+            writer.touch(run.touched);
+        }
+        return result;
+    }
+
+    /**
+     * Only extract {@code pdfs}, each document is passed to
+     * {@link Listener#extracted(ChunkedDocument)}. Nothing is embedded or stored.
+     */
+    public Result dryRun(List<Path> pdfs) throws InterruptedException {
+        Run run = new Run(Map.of());
+        Stage<Path, Void> parse = new Stage<>("parse", settings.parseThreads(), platformThreads(), null,
+                new LinkedBlockingQueue<>(pdfs), null, pdf -> {
+                    ChunkedDocument doc = run.extract(pdf);
+                    if (doc != null) {
+                        listener.extracted(doc);
+                    }
+                    return null;
+                }, (pdf, ex) -> run.failed(pdf, "parse", ex));
+        return run.execute(pdfs.size(), List.of(parse));
+    }
+
+    /**
+     * Passes the document on to the write stage, then embeds the chunks whose
+     * digest is not stored yet batch by batch while the writer stores them.
+     */
+    private Void embed(ChunkedDocument doc, BlockingQueue<EmbeddedDocument> embedded) throws Exception {
+        List<DocumentChunk> chunks = doc.allChunks();
+        Set<String> stored = writer.storedDigests(chunks.stream().map(DocumentChunk::digest).toList());
+        List<String> texts = chunks.stream()
+                .filter(chunk -> !stored.contains(chunk.digest()))
+                .map(DocumentChunk::text)
+                .toList();
+        VectorStream vectors = new VectorStream(PENDING_BATCHES);
+        embedded.put(new EmbeddedDocument(doc, stored, vectors));
+        try {
+            for (int from = 0; from < texts.size(); from += EMBED_BATCH) {
+                if (!vectors.put(embedder.embed(texts.subList(from, Math.min(texts.size(), from + EMBED_BATCH))))) {
+                    return null; // the writer gave up and reports the document
+                }
+            }
+            vectors.finish();
+        } catch (Exception ex) {
+            vectors.fail(ex);
+            throw ex;
+        }
+        return null;
+    }
+
+    private static ThreadFactory platformThreads() {
+        return Thread.ofPlatform().name("ingest-cpu-", 0).daemon().factory();
+    }
+
+    private static ThreadFactory virtualThreads() {
+        return Thread.ofVirtual().name("ingest-io-", 0).factory();
+    }
+
+    /** State of one run. */
+    private final class Run {
+
+        private final Map<String, KnownDocument> known;
+        // unchanged content with a new modification time: only the time is updated
+        private final Queue<KnownDocument> touched = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger unchanged = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final Set<Path> failedPdfs = ConcurrentHashMap.newKeySet();
+
+        Run(Map<String, KnownDocument> known) {
+            this.known = known;
+        }
+
+        ChunkedDocument extract(Path pdf) throws Exception {
+            // same modification time: unchanged; otherwise the content hash decides
+            Instant mtime = Files.getLastModifiedTime(pdf).toInstant().truncatedTo(ChronoUnit.MICROS);
+            KnownDocument previous = known.get(SourceFile.sourceUrl(pdf));
+            if (previous != null && !settings.force() && mtime.equals(previous.mtime())) {
+                unchanged(pdf);
+                return null;
+            }
+            String contentHash = DocumentExtractor.contentHash(pdf);
+            if (previous != null && !settings.force() && contentHash.equals(previous.contentHash())) {
+                touched.add(new KnownDocument(previous.id(), contentHash, mtime));
+                unchanged(pdf);
+                return null;
+            }
+            SourceFile source = new SourceFile(contentHash, mtime,
+                    previous == null ? UUID.randomUUID() : previous.id(), previous != null);
+            return extractor.extract(pdf, source);
+        }
+
+        void unchanged(Path pdf) {
+            unchanged.incrementAndGet();
+            listener.unchanged(pdf);
+        }
+
+        /** Only the first failure of a document counts, e.g. embed and write may both give up. */
+        void failed(Path pdf, String stage, Exception ex) {
+            if (failedPdfs.add(pdf)) {
+                failed.incrementAndGet();
+                listener.failed(pdf, stage, ex);
+            }
+        }
+
+        Result execute(int documents, List<Stage<?, ?>> stages) throws InterruptedException {
+            HeapSampler heap = new HeapSampler();
+            long started = System.nanoTime();
+            stages.forEach(Stage::start);
+            try {
+                for (Stage<?, ?> stage : stages) {
+                    stage.join();
+                }
+            } catch (InterruptedException ex) {
+                stages.forEach(Stage::interrupt);
+                throw ex;
+            } finally {
+                heap.stop();
+            }
+            return new Result(documents, failed.get(), unchanged.get(),
+                    stages.stream().map(Stage::report).toList(), heap.peakBytes(),
+                    Duration.ofNanos(System.nanoTime() - started));
+        }
+    }
+
+    /**
+     * Parallelism of each stage and the number of documents that may wait between two stages.
+     */
+    public record Settings(int parseThreads, int embedThreads, int writeThreads, int queueSize, boolean force) {
+
+        public Settings {
+            if (parseThreads <= 0 || embedThreads <= 0 || writeThreads <= 0 || queueSize <= 0) {
+                throw new IllegalArgumentException("Threads and queue size must be positive");
+            }
+        }
+
+        /**
+         * One parse thread per core, 4 embed threads, 2 write threads and queues of 4 documents.
+         */
+        public static Settings defaults() {
+            return new Settings(Runtime.getRuntime().availableProcessors(), 4, 2, 4, false);
+        }
+    }
+
+    /**
+     * Progress of a run. Methods are called from the stage threads.
+     */
+    public interface Listener {
+
+        default void extracted(ChunkedDocument document) {
+        }
+
+        default void unchanged(Path pdf) {
+        }
+
+        /**
+         * @param removedChunks chunks of an earlier version that were removed
+         */
+        default void stored(EmbeddedDocument document, int removedChunks) {
+        }
+
+        default void failed(Path pdf, String stage, Exception exception) {
+        }
+    }
+
+    /**
+     * Work done by one stage.
+     *
+     * @param allocatedBytes heap allocated while processing, {@code -1} on virtual threads
+     */
+    public record StageReport(String name, long items, long busyNanos, long allocatedBytes) {
+    }
+
+    /**
+     * Outcome of a run.
+     *
+     * @param documents the number of files
+     * @param peakHeapBytes the highest sampled heap usage
+     */
+    public record Result(int documents, int failed, int unchanged, List<StageReport> stages, long peakHeapBytes,
+            Duration elapsed) {
+    }
+}
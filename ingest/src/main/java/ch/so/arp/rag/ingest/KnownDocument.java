@@ -0,0 +1,14 @@
+package ch.so.arp.rag.ingest;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Last stored state of a file, see {@link DocumentWriter#knownDocuments()}.
+ *
+ * @param id id in {@code arp_rag_vp.documents}
+ * @param contentHash hex encoded SHA-256 of the file, {@code null} for rows of older ingests
+ * @param mtime last modification of the file, {@code null} for rows of older ingests
+ */
+public record KnownDocument(UUID id, String contentHash, Instant mtime) {
+}
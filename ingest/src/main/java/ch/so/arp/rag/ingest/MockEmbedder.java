@@ -0,0 +1,71 @@
+package ch.so.arp.rag.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic {@link Embedder} for running without an API key. Identical
+ * texts yield identical unit vectors, so a database filled with dummy
+ * embeddings can still be queried locally with the same embedder.
+ */
+public final class MockEmbedder implements Embedder {
+
+    public static final int DEFAULT_DIMENSIONS = 3072;
+
+    private final int dimensions;
+
+    public MockEmbedder() {
+        this(DEFAULT_DIMENSIONS);
+    }
+
+    public MockEmbedder(int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        return texts.stream().map(this::embed).toList();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        Random random = new Random(seed(text));
+        float[] vector = new float[dimensions];
+        double norm = 0.0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (random.nextFloat() * 2f) - 1f;
+            norm += vector[i] * vector[i];
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] /= (float) norm;
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private static long seed(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            long seed = 0L;
+            for (int i = 0; i < 8; i++) {
+                seed = (seed << 8) | (digest[i] & 0xff);
+            }
+            return seed;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+}
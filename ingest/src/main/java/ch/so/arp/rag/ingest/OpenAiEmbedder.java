@@ -0,0 +1,381 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * {@link Embedder} calling the {@code /embeddings} endpoint of an OpenAI
+ * compatible API. The texts of one call are packed into batches by token
+ * count; across all callers at most {@code maxInFlight} requests are under
+ * way, and the token and request budgets per minute are reserved before a
+ * request is sent. 408, 429, 5xx and connection errors are retried with
+ * exponential backoff and full jitter. If the server sends
+ * {@code retry-after-ms} or {@code Retry-After}, that wait applies and all
+ * other requests pause as well.
+ * <p>
+ * Responses are parsed as a stream by {@link EmbeddingResponseParser}; a
+ * vector with other dimensions than configured fails the call. The
+ * dimensions are sent with every request.
+ */
+public final class OpenAiEmbedder implements Embedder {
+
+    static final int MAX_INPUTS = 2048;
+    static final long BASE_BACKOFF_MS = 500;
+    static final long MAX_BACKOFF_MS = 60_000;
+
+    private static final System.Logger LOGGER = System.getLogger(OpenAiEmbedder.class.getName());
+
+    private final HttpClient httpClient;
+    private final URI endpoint;
+    private final String apiKey;
+    private final String model;
+    private final int dimensions;
+    private final int batchTokens;
+    private final int maxRetries;
+    private final Duration requestTimeout;
+    private final Semaphore inFlight;
+    private final RateBudget tokens;
+    private final RateBudget requests;
+    private final RateBudget.Ticker ticker;
+    private final LongUnaryOperator jitter;
+    private final AtomicLong pausedUntil;
+
+    private OpenAiEmbedder(Builder builder) {
+        this.endpoint = builder.endpoint;
+        this.apiKey = builder.apiKey;
+        this.model = builder.model;
+        this.dimensions = builder.dimensions;
+        this.batchTokens = builder.batchTokens;
+        this.maxRetries = builder.maxRetries;
+        this.requestTimeout = builder.requestTimeout;
+        this.inFlight = new Semaphore(builder.maxInFlight, true);
+        this.ticker = builder.ticker;
+        this.jitter = builder.jitter;
+        this.tokens = new RateBudget(builder.tokensPerMinute, ticker);
+        this.requests = new RateBudget(builder.requestsPerMinute, ticker);
+        this.pausedUntil = new AtomicLong(ticker.nanoTime());
+        this.httpClient = HttpClient.newBuilder().connectTimeout(builder.connectTimeout).build();
+    }
+
+    /**
+     * Start building an embedder for {@code endpoint}, e.g.
+     * {@code https://api.openai.com/v1/embeddings}.
+     */
+    public static Builder builder(URI endpoint, String apiKey) {
+        return new Builder(endpoint, apiKey);
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) throws IOException, InterruptedException {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        int[] counts = texts.stream().mapToInt(Tokens::count).toArray();
+        List<int[]> batches = pack(counts, batchTokens);
+        if (batches.size() == 1) {
+            return send(texts, batches.get(0)[2]);
+        }
+        float[][] vectors = new float[texts.size()][];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<float[]>>> futures = new ArrayList<>(batches.size());
+            for (int[] batch : batches) {
+                futures.add(executor.submit(() -> send(texts.subList(batch[0], batch[1]), batch[2])));
+            }
+            for (int i = 0; i < batches.size(); i++) {
+                List<float[]> batchVectors;
+                try {
+                    batchVectors = futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    executor.shutdownNow();
+                    if (ex.getCause() instanceof IOException io) {
+                        throw io;
+                    }
+                    throw new IOException(ex.getCause());
+                }
+                for (int j = 0; j < batchVectors.size(); j++) {
+                    vectors[batches.get(i)[0] + j] = batchVectors.get(j);
+                }
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Pack the texts in order into batches {@code [from, to, tokens]} of at most
+     * {@code maxTokens} tokens and {@link #MAX_INPUTS} inputs. A single text
+     * above the limit gets a batch of its own.
+     */
+    static List<int[]> pack(int[] counts, int maxTokens) {
+        List<int[]> batches = new ArrayList<>();
+        int from = 0;
+        int sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (i > from && (sum + counts[i] > maxTokens || i - from == MAX_INPUTS)) {
+                batches.add(new int[] { from, i, sum });
+                from = i;
+                sum = 0;
+            }
+            sum += counts[i];
+        }
+        if (from < counts.length) {
+            batches.add(new int[] { from, counts.length, sum });
+        }
+        return batches;
+    }
+
+    private List<float[]> send(List<String> inputs, int tokenCount) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(endpoint)
+                .timeout(requestTimeout)
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody(model, dimensions, inputs),
+                        StandardCharsets.UTF_8))
+                .build();
+        for (int attempt = 0; ; attempt++) {
+            awaitPause();
+            tokens.acquire(tokenCount);
+            requests.acquire(1);
+            int status;
+            String error = null;
+            long retryAfterMs = -1;
+            inFlight.acquire();
+            try {
+                HttpResponse<InputStream> response = null;
+                try {
+                    response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                } catch (IOException ex) {
+                    if (attempt >= maxRetries) {
+                        throw ex;
+                    }
+                    error = ex.toString();
+                }
+                if (response == null) {
+                    status = -1;
+                } else {
+                    // a malformed 200 response is not retried
+                    try (InputStream body = response.body()) {
+                        status = response.statusCode();
+                        if (status < 300) {
+                            return Arrays.asList(new EmbeddingResponseParser(body, dimensions).parse(inputs.size()));
+                        }
+                        error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                    retryAfterMs = retryAfterMillis(response.headers());
+                }
+            } finally {
+                inFlight.release();
+            }
+            boolean retryable = status < 0 || status == 408 || status == 429 || status >= 500;
+            if (!retryable || attempt >= maxRetries) {
+                throw new IOException("Embedding request failed with HTTP " + status + ": " + error);
+            }
+            long delayMs;
+            if (retryAfterMs >= 0) {
+                // a little jitter, so that the waiting requests do not all start again at once
+                delayMs = retryAfterMs + jitter.applyAsLong(250);
+                pausedUntil.accumulateAndGet(ticker.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs), Math::max);
+            } else {
+                delayMs = jitter.applyAsLong(backoffCap(attempt) + 1);
+            }
+            LOGGER.log(Level.WARNING, "Embedding request failed ({0}), attempt {1} in {2} ms",
+                    status < 0 ? error : "HTTP " + status, attempt + 2, delayMs);
+            ticker.sleep(TimeUnit.MILLISECONDS.toNanos(delayMs));
+        }
+    }
+
+    /** Upper bound of the backoff before retry {@code attempt + 1} without Retry-After. */
+    static long backoffCap(int attempt) {
+        return Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 20));
+    }
+
+    private void awaitPause() throws InterruptedException {
+        long wait;
+        while ((wait = pausedUntil.get() - ticker.nanoTime()) > 0) {
+            ticker.sleep(wait);
+        }
+    }
+
+    /** {@code retry-after-ms} (OpenAI) or {@code Retry-After} in seconds; -1 if neither is set. */
+    static long retryAfterMillis(HttpHeaders headers) {
+        try {
+            Optional<String> millis = headers.firstValue("retry-after-ms");
+            if (millis.isPresent()) {
+                return Math.max(0, (long) Double.parseDouble(millis.get().strip()));
+            }
+            Optional<String> seconds = headers.firstValue("retry-after");
+            if (seconds.isPresent()) {
+                return Math.max(0, (long) (Double.parseDouble(seconds.get().strip()) * 1000));
+            }
+        } catch (NumberFormatException ex) {
+            // an HTTP date or similar: regular backoff
+        }
+        return -1;
+    }
+
+    static String requestBody(String model, int dimensions, List<String> inputs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"model\":");
+        appendJsonString(sb, model);
+        // the v3 models return the leading dimensions, renormalized
+        sb.append(",\"dimensions\":").append(dimensions).append(",\"input\":[");
+        for (int i = 0; i < inputs.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendJsonString(sb, inputs.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Settings of an {@link OpenAiEmbedder}. The defaults match the ingest
+     * command line.
+     */
+    public static final class Builder {
+
+        private final URI endpoint;
+        private final String apiKey;
+        private String model = "text-embedding-3-large";
+        private int dimensions = 3072;
+        private int maxInFlight = 4;
+        private int tokensPerMinute = 1_000_000;
+        private int requestsPerMinute = 3_000;
+        private int batchTokens = 50_000;
+        private int maxRetries = 6;
+        private Duration connectTimeout = Duration.ofSeconds(30);
+        private Duration requestTimeout = Duration.ofMinutes(2);
+        private RateBudget.Ticker ticker = RateBudget.Ticker.SYSTEM;
+        private LongUnaryOperator jitter = bound -> ThreadLocalRandom.current().nextLong(bound);
+
+        private Builder(URI endpoint, String apiKey) {
+            this.endpoint = Objects.requireNonNull(endpoint, "endpoint");
+            if (apiKey == null || apiKey.isBlank()) {
+                throw new IllegalArgumentException("An API key is required");
+            }
+            this.apiKey = apiKey;
+        }
+
+        public Builder model(String model) {
+            this.model = Objects.requireNonNull(model, "model");
+            return this;
+        }
+
+        public Builder dimensions(int dimensions) {
+            this.dimensions = positive(dimensions, "dimensions");
+            return this;
+        }
+
+        /** Requests under way at the same time, across all callers. */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = positive(maxInFlight, "maxInFlight");
+            return this;
+        }
+
+        public Builder tokensPerMinute(int tokensPerMinute) {
+            this.tokensPerMinute = positive(tokensPerMinute, "tokensPerMinute");
+            return this;
+        }
+
+        public Builder requestsPerMinute(int requestsPerMinute) {
+            this.requestsPerMinute = positive(requestsPerMinute, "requestsPerMinute");
+            return this;
+        }
+
+        /** Maximum number of tokens sent in one request. */
+        public Builder batchTokens(int batchTokens) {
+            this.batchTokens = positive(batchTokens, "batchTokens");
+            return this;
+        }
+
+        /** Retries after the first attempt; 0 disables retrying. */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries must not be negative");
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = Objects.requireNonNull(connectTimeout, "connectTimeout");
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = Objects.requireNonNull(requestTimeout, "requestTimeout");
+            return this;
+        }
+
+        Builder ticker(RateBudget.Ticker ticker) {
+            this.ticker = Objects.requireNonNull(ticker, "ticker");
+            return this;
+        }
+
+        /** Random wait in {@code [0, bound)} added to the backoff. */
+        Builder jitter(LongUnaryOperator jitter) {
+            this.jitter = Objects.requireNonNull(jitter, "jitter");
+            return this;
+        }
+
+        public OpenAiEmbedder build() {
+            return new OpenAiEmbedder(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ch.so.arp.rag.ingest;
+
+/**
+ * Receives the text of a document page by page.
+ */
+public interface PageSink {
+
+    /**
+     * Accept the text of the next page.
+     *
+     * @param page the page number, starting at 1
+     * @param text the text of the page
+     */
+    void accept(int page, String text);
+
+    /**
+     * Called after the last page.
+     */
+    void finish();
+}
@@ -0,0 +1,36 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+/**
+ * {@link DocumentParser} for PDF files based on PDFBox. The file is read
+ * directly instead of being loaded into the heap, decoded streams are buffered
+ * in temporary files, and the text is stripped one page at a time, so memory
+ * use does not grow with the size of the document.
+ */
+public final class PdfBoxParser implements DocumentParser {
+
+    @Override
+    public int parse(Path file, PageSink pages) throws IOException {
+        // RandomAccessReadBufferedFile takes the Path as is; File would fail on names the platform charset cannot map
+        try (PDDocument document = Loader.loadPDF(new RandomAccessReadBufferedFile(file),
+                IOUtils.createTempFileOnlyStreamCache())) {
+            int count = document.getNumberOfPages();
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            for (int page = 1; page <= count; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                pages.accept(page, stripper.getText(document));
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * {@link DocumentWriter} for the {@code arp_rag_vp} schema. It keeps a fixed
+ * number of connections; every call borrows one and commits before returning
+ * it. Chunks are written with one prepared statement per document using
+ * {@code addBatch}/{@code executeBatch}, which the driver rewrites to
+ * multi-row {@code INSERT}s, or with binary {@code COPY} into a staging table
+ * if {@code copy} is set. Vectors are bound as binary {@link HalfVector}s.
+ * Before the first document, {@code embedding} is checked against the
+ * dimensions of the embedder (see {@link VectorColumns}).
+ * <p>
+ * With {@code shortDimensions} set, every chunk also gets the leading
+ * dimensions of its embedding in {@code embedding_short} (see
+ * {@link VectorCodec#truncate(float[], int)}). The column and its hnsw index
+ * are created on the first run, and chunks stored before are filled in. A
+ * column of other dimensions is rejected (see {@link VectorColumns}).
+ */
+public final class PostgresDocumentWriter implements DocumentWriter {
+
+    static final int INSERT_BATCH_SIZE = 256;
+
+    // full text is computed on the server, the same expression for INSERT and COPY
+    static final String TSV_SQL =
+            "to_tsvector('german', public.unaccent(regexp_replace(lower(coalesce(%s, '')), '\\s+', ' ', 'g')))";
+
+    // embedding_short is only named if enabled, older schemas do not have it
+    static final String SHORT_COLUMN = ", embedding_short";
+
+    static final String INSERT_CHUNK_SQL = """
+            INSERT INTO arp_rag_vp.chunks
+              (document_id, section_id, page_from, page_to, char_start, char_end, text, tsv,
+               embedding, municipality, plan_type, topics, sobau_codes, digest%2$s)
+            VALUES (?, ?, ?, ?, ?, ?, ?, %1$s, ?, ?, ?, ?, ?, ?%3$s)
+            ON CONFLICT (digest) DO NOTHING
+            """;
+
+    // COPY has no ON CONFLICT: the rows go to a temporary table first
+    static final String CREATE_STAGE_SQL = """
+            CREATE TEMP TABLE IF NOT EXISTS chunks_stage (
+              document_id UUID, section_id BIGINT, page_from INT, page_to INT, char_start INT, char_end INT,
+              text TEXT, embedding halfvec, municipality TEXT, plan_type TEXT, topics TEXT[], sobau_codes TEXT[],
+              digest TEXT, embedding_short halfvec
+            ) ON COMMIT DELETE ROWS
+            """;
+
+    static final String COPY_STAGE_SQL = """
+            COPY chunks_stage (document_id, section_id, page_from, page_to, char_start, char_end, text, embedding,
+                               municipality, plan_type, topics, sobau_codes, digest, embedding_short)
+            FROM STDIN (FORMAT binary)
+            """;
+
+    static final String MERGE_STAGE_SQL = """
+            INSERT INTO arp_rag_vp.chunks
+              (document_id, section_id, page_from, page_to, char_start, char_end, text, tsv,
+               embedding, municipality, plan_type, topics, sobau_codes, digest%2$s)
+            SELECT document_id, section_id, page_from, page_to, char_start, char_end, text, %1$s,
+                   embedding, municipality, plan_type, topics, sobau_codes, digest%2$s
+            FROM chunks_stage
+            ON CONFLICT (digest) DO NOTHING
+            """;
+
+    static final String ADD_SHORT_COLUMN_SQL = """
+            ALTER TABLE arp_rag_vp.chunks ADD COLUMN IF NOT EXISTS embedding_short halfvec(%d)
+            """;
+
+    // the same truncation as VectorCodec.truncate, for chunks stored without the column
+    static final String FILL_SHORT_COLUMN_SQL = """
+            UPDATE arp_rag_vp.chunks
+            SET embedding_short = l2_normalize(subvector(embedding, 1, %1$d))::halfvec(%1$d)
+            WHERE embedding_short IS NULL AND embedding IS NOT NULL
+            """;
+
+    static final String CREATE_SHORT_INDEX_SQL = """
+            CREATE INDEX IF NOT EXISTS chunks_embedding_short_idx
+            ON arp_rag_vp.chunks USING hnsw (embedding_short halfvec_cosine_ops)
+            """;
+
+    private final BlockingQueue<Connection> connections;
+    private final List<Connection> all;
+    private final boolean copy;
+    private final int dimensions;
+    private final int shortDimensions;
+    private final String insertChunkSql;
+    private final String mergeStageSql;
+
+    private PostgresDocumentWriter(List<Connection> connections, boolean copy, int dimensions,
+            int shortDimensions) {
+        this.all = List.copyOf(connections);
+        this.connections = new LinkedBlockingQueue<>(connections);
+        this.copy = copy;
+        this.dimensions = dimensions;
+        this.shortDimensions = shortDimensions;
+        String shortColumn = shortDimensions > 0 ? SHORT_COLUMN : "";
+        this.insertChunkSql = INSERT_CHUNK_SQL.formatted(TSV_SQL.formatted("?"), shortColumn,
+                shortDimensions > 0 ? ", ?" : "");
+        this.mergeStageSql = MERGE_STAGE_SQL.formatted(TSV_SQL.formatted("text"), shortColumn);
+    }
+
+    /**
+     * Open {@code poolSize} connections.
+     *
+     * @param url JDBC URL, e.g. {@code jdbc:postgresql://localhost:54323/arp_rag}
+     * @param user database user
+     * @param password password, {@code null} to rely on {@code ~/.pgpass}
+     * @param poolSize number of connections, the number of documents written at the same time
+     * @param copy whether chunks are written with {@code COPY} instead of batched {@code INSERT}s
+     * @param dimensions dimensions of the embeddings, checked against {@code embedding}
+     * @param shortDimensions dimensions of {@code embedding_short}, {@code 0} to leave the column alone
+     */
+    public static PostgresDocumentWriter open(String url, String user, String password, int poolSize, boolean copy,
+            int dimensions, int shortDimensions) throws SQLException {
+        Objects.requireNonNull(url, "url");
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be positive");
+        }
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        if (shortDimensions < 0) {
+            throw new IllegalArgumentException("shortDimensions must not be negative");
+        }
+        List<Connection> connections = new ArrayList<>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                Connection connection = connect(url, user, password);
+                connections.add(connection);
+                connection.setAutoCommit(false);
+                HalfVector.enableBinaryTransfer(connection);
+            }
+        } catch (SQLException ex) {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException closeEx) {
+                    ex.addSuppressed(closeEx);
+                }
+            }
+            throw ex;
+        }
+        return new PostgresDocumentWriter(connections, copy, dimensions, shortDimensions);
+    }
+
+    /** A single connection with the settings of the pool, in auto-commit mode. */
+    static Connection connect(String url, String user, String password) throws SQLException {
+        Properties properties = new Properties();
+        if (user != null) {
+            properties.setProperty("user", user);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        // the driver combines addBatch() rows to multi-row INSERTs
+        properties.setProperty("reWriteBatchedInserts", "true");
+        return DriverManager.getConnection(url, properties);
+    }
+
+    /**
+     * Adds the columns for change detection and the short vectors to older schemas, then loads the
+     * state of all documents. Of duplicates from earlier runs the newest one wins. The pipeline calls it
+     * first, so vector columns of other dimensions stop the run before anything is embedded.
+     *
+     * @throws IllegalStateException if {@code embedding} or {@code embedding_short} exists with other dimensions
+     */
+    @Override
+    public Map<String, KnownDocument> knownDocuments() throws SQLException {
+        return withConnection(connection -> {
+            Map<String, KnownDocument> known = new HashMap<>();
+            VectorColumns.check(connection, VectorColumns.EMBEDDING, dimensions, "--dimensions");
+            try (Statement st = connection.createStatement()) {
+                st.execute("""
+                        ALTER TABLE arp_rag_vp.documents
+                          ADD COLUMN IF NOT EXISTS content_hash TEXT,
+                          ADD COLUMN IF NOT EXISTS file_mtime TIMESTAMPTZ
+                        """);
+                st.execute("CREATE INDEX IF NOT EXISTS documents_source_url_idx ON arp_rag_vp.documents (source_url)");
+                if (shortDimensions > 0) {
+                    // ADD COLUMN IF NOT EXISTS keeps a column of other dimensions, and filling it would fail
+                    VectorColumns.check(connection, VectorColumns.EMBEDDING_SHORT, shortDimensions,
+                            "--short-dimensions");
+                    st.execute(ADD_SHORT_COLUMN_SQL.formatted(shortDimensions));
+                    st.execute(FILL_SHORT_COLUMN_SQL.formatted(shortDimensions));
+                    st.execute(CREATE_SHORT_INDEX_SQL);
+                }
+                try (ResultSet rs = st.executeQuery("""
+                        SELECT DISTINCT ON (source_url) source_url, id, content_hash, file_mtime
+                        FROM arp_rag_vp.documents
+                        WHERE source_url IS NOT NULL
+                        ORDER BY source_url, created_at DESC
+                        """)) {
+                    while (rs.next()) {
+                        Timestamp mtime = rs.getTimestamp(4);
+                        known.put(rs.getString(1), new KnownDocument(rs.getObject(2, UUID.class), rs.getString(3),
+                                mtime == null ? null : mtime.toInstant()));
+                    }
+                }
+            }
+            return known;
+        });
+    }
+
+    @Override
+    public Set<String> storedDigests(Collection<String> digests) throws SQLException {
+        if (digests.isEmpty()) {
+            return Set.of();
+        }
+        return withConnection(connection -> {
+            Set<String> stored = new HashSet<>();
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT digest FROM arp_rag_vp.chunks WHERE digest = ANY(?)")) {
+                ps.setArray(1, connection.createArrayOf("text", digests.toArray()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        stored.add(rs.getString(1));
+                    }
+                }
+            }
+            return stored;
+        });
+    }
+
+    @Override
+    public int write(EmbeddedDocument embedded) throws SQLException, IOException, InterruptedException {
+        Connection connection = borrow();
+        try {
+            int deleted = write(connection, embedded);
+            connection.commit();
+            return deleted;
+        } catch (SQLException | IOException | InterruptedException | RuntimeException ex) {
+            rollback(connection, ex);
+            throw ex;
+        } finally {
+            connections.add(connection);
+        }
+    }
+
+    @Override
+    public void touch(Collection<KnownDocument> documents) throws SQLException {
+        if (documents.isEmpty()) {
+            return;
+        }
+        withConnection(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "UPDATE arp_rag_vp.documents SET file_mtime = ? WHERE id = ?")) {
+                for (KnownDocument document : documents) {
+                    ps.setTimestamp(1, Timestamp.from(document.mtime()));
+                    ps.setObject(2, document.id());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void reset() throws SQLException {
+        withConnection(connection -> {
+            try (Statement st = connection.createStatement()) {
+                st.execute("""
+                        TRUNCATE arp_rag_vp.chunks,
+                                 arp_rag_vp.sobau_refs,
+                                 arp_rag_vp.sections,
+                                 arp_rag_vp.documents
+                        RESTART IDENTITY CASCADE
+                        """);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (Connection connection : all) {
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private int write(Connection connection, EmbeddedDocument embedded)
+            throws SQLException, IOException, InterruptedException {
+        ChunkedDocument doc = embedded.document();
+        SourceFile source = doc.source();
+        UUID docId = source.documentId();
+        try (PreparedStatement ps = connection.prepareStatement(source.known() ? """
+                UPDATE arp_rag_vp.documents
+                SET filename = ?, title = ?, plan_type = ?, municipality = ?, pages = ?, source_url = ?,
+                    content_hash = ?, file_mtime = ?
+                WHERE id = ?
+                """ : """
+                INSERT INTO arp_rag_vp.documents
+                  (filename, title, plan_type, municipality, pages, source_url, content_hash, file_mtime, id)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """)) {
+            ps.setString(1, doc.pdf().getFileName().toString());
+            ps.setString(2, doc.title());
+            ps.setString(3, doc.meta().planType());
+            ps.setString(4, doc.meta().municipality());
+            ps.setInt(5, doc.pages());
+            ps.setString(6, SourceFile.sourceUrl(doc.pdf()));
+            ps.setString(7, source.contentHash());
+            ps.setTimestamp(8, Timestamp.from(source.mtime()));
+            ps.setObject(9, docId);
+            ps.executeUpdate();
+        }
+        if (source.known()) {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM arp_rag_vp.sobau_refs WHERE document_id = ?")) {
+                ps.setObject(1, docId);
+                ps.executeUpdate();
+            }
+        }
+
+        insertSobau(connection, docId, doc.sobau());
+        List<Long> sectionIds = insertSections(connection, docId, doc.sections());
+        if (copy) {
+            copyChunks(connection, docId, sectionIds, embedded);
+        } else {
+            insertChunks(connection, docId, sectionIds, embedded);
+        }
+        updateStoredChunks(connection, docId, sectionIds, embedded);
+        return source.known() ? deleteStale(connection, docId, doc, sectionIds) : 0;
+    }
+
+    private static void insertSobau(Connection connection, UUID docId, List<Integer> values) throws SQLException {
+        if (values.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = connection.prepareStatement("""
+                INSERT INTO arp_rag_vp.sobau_refs (document_id, sobau_code, raw, page)
+                VALUES (?, ?, ?, ?)
+                ON CONFLICT (document_id, sobau_code) DO NOTHING
+                """)) {
+            for (int value : values) {
+                ps.setObject(1, docId);
+                ps.setString(2, String.valueOf(value));
+                ps.setString(3, String.valueOf(value));
+                ps.setNull(4, Types.INTEGER); // page unknown
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static List<Long> insertSections(Connection connection, UUID docId, List<Section> sections)
+            throws SQLException {
+        List<Long> ids = new ArrayList<>(sections.size());
+        try (PreparedStatement ps = connection.prepareStatement("""
+                INSERT INTO arp_rag_vp.sections (document_id, section_path, page_from, page_to)
+                VALUES (?, ?, ?, ?)
+                """, Statement.RETURN_GENERATED_KEYS)) {
+            for (Section section : sections) {
+                ps.setObject(1, docId);
+                if (section.heading() == null || section.heading().isBlank()) {
+                    ps.setNull(2, Types.VARCHAR);
+                } else {
+                    ps.setString(2, section.heading());
+                }
+                ps.setInt(3, section.pageFrom());
+                ps.setInt(4, section.pageTo());
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    ids.add(rs.next() ? rs.getLong(1) : null);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void insertChunks(Connection connection, UUID docId, List<Long> sectionIds,
+            EmbeddedDocument embedded) throws SQLException, IOException, InterruptedException {
+        ChunkedDocument doc = embedded.document();
+        int pending = 0;
+        try (PreparedStatement ps = connection.prepareStatement(insertChunkSql)) {
+            for (int s = 0; s < doc.sections().size(); s++) {
+                Long sectionId = sectionIds.get(s);
+                for (DocumentChunk chunk : doc.chunks().get(s)) {
+                    if (!embedded.isNew(chunk)) {
+                        continue; // stored already
+                    }
+                    float[] vector = embedded.vectors().next();
+                    ps.setObject(1, docId);
+                    setSectionId(ps, 2, sectionId);
+                    ps.setInt(3, chunk.pageFrom());
+                    ps.setInt(4, chunk.pageTo());
+                    ps.setInt(5, chunk.start());
+                    ps.setInt(6, chunk.end());
+                    ps.setString(7, chunk.text());
+                    ps.setString(8, chunk.text());
+                    ps.setObject(9, new HalfVector(vector));
+                    ps.setString(10, doc.meta().municipality());
+                    ps.setString(11, doc.meta().planType());
+                    ps.setArray(12, connection.createArrayOf("text", chunk.topics().toArray()));
+                    ps.setArray(13, connection.createArrayOf("text", chunk.sobauCodes().toArray()));
+                    ps.setString(14, chunk.digest());
+                    if (shortDimensions > 0) {
+                        ps.setObject(15, new HalfVector(VectorCodec.truncate(vector, shortDimensions)));
+                    }
+                    ps.addBatch();
+                    if (++pending == INSERT_BATCH_SIZE) {
+                        ps.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /** Streams the chunks to the staging table with binary COPY and moves them with one INSERT … SELECT. */
+    private void copyChunks(Connection connection, UUID docId, List<Long> sectionIds,
+            EmbeddedDocument embedded) throws SQLException, IOException, InterruptedException {
+        try (Statement st = connection.createStatement()) {
+            st.execute(CREATE_STAGE_SQL);
+        }
+        ChunkedDocument doc = embedded.document();
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGE_SQL);
+        try {
+            BinaryCopyWriter writer = new BinaryCopyWriter(copyIn);
+            for (int s = 0; s < doc.sections().size(); s++) {
+                for (DocumentChunk chunk : doc.chunks().get(s)) {
+                    if (!embedded.isNew(chunk)) {
+                        continue; // stored already
+                    }
+                    float[] vector = embedded.vectors().next();
+                    writer.startRow(14);
+                    writer.writeUuid(docId);
+                    writer.writeLong(sectionIds.get(s));
+                    writer.writeInt(chunk.pageFrom());
+                    writer.writeInt(chunk.pageTo());
+                    writer.writeInt(chunk.start());
+                    writer.writeInt(chunk.end());
+                    writer.writeText(chunk.text());
+                    writer.writeHalfVector(new HalfVector(vector));
+                    writer.writeText(doc.meta().municipality());
+                    writer.writeText(doc.meta().planType());
+                    writer.writeTextArray(chunk.topics());
+                    writer.writeTextArray(chunk.sobauCodes());
+                    writer.writeText(chunk.digest());
+                    if (shortDimensions > 0) {
+                        writer.writeHalfVector(new HalfVector(VectorCodec.truncate(vector, shortDimensions)));
+                    } else {
+                        writer.writeNull();
+                    }
+                }
+            }
+            writer.finish();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate(mergeStageSql);
+        }
+    }
+
+    /** Attach chunks that are stored already to the document and its rewritten sections. */
+    private static void updateStoredChunks(Connection connection, UUID docId, List<Long> sectionIds,
+            EmbeddedDocument embedded) throws SQLException {
+        ChunkedDocument doc = embedded.document();
+        int pending = 0;
+        try (PreparedStatement ps = connection.prepareStatement("""
+                UPDATE arp_rag_vp.chunks
+                SET document_id = ?, section_id = ?, char_start = ?, char_end = ?
+                WHERE digest = ?
+                """)) {
+            for (int s = 0; s < doc.sections().size(); s++) {
+                Long sectionId = sectionIds.get(s);
+                for (DocumentChunk chunk : doc.chunks().get(s)) {
+                    if (embedded.isNew(chunk)) {
+                        continue;
+                    }
+                    ps.setObject(1, docId);
+                    setSectionId(ps, 2, sectionId);
+                    ps.setInt(3, chunk.start());
+                    ps.setInt(4, chunk.end());
+                    ps.setString(5, chunk.digest());
+                    ps.addBatch();
+                    if (++pending == INSERT_BATCH_SIZE) {
+                        ps.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /** Remove chunks and sections of a changed document that no longer occur in the new version. */
+    private static int deleteStale(Connection connection, UUID docId, ChunkedDocument doc, List<Long> sectionIds)
+            throws SQLException {
+        int deleted;
+        try (PreparedStatement ps = connection.prepareStatement(
+                "DELETE FROM arp_rag_vp.chunks WHERE document_id = ? AND digest <> ALL(?)")) {
+            ps.setObject(1, docId);
+            ps.setArray(2, connection.createArrayOf("text",
+                    doc.allChunks().stream().map(DocumentChunk::digest).toArray()));
+            deleted = ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "DELETE FROM arp_rag_vp.sections WHERE document_id = ? AND NOT (id = ANY(?))")) {
+            ps.setObject(1, docId);
+            ps.setArray(2, connection.createArrayOf("bigint", sectionIds.stream().filter(Objects::nonNull).toArray()));
+            ps.executeUpdate();
+        }
+        return deleted;
+    }
+
+    private static void setSectionId(PreparedStatement ps, int index, Long sectionId) throws SQLException {
+        if (sectionId == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, sectionId);
+        }
+    }
+
+    private <T> T withConnection(SqlWork<T> work) throws SQLException {
+        Connection connection = borrow();
+        try {
+            T result = work.apply(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException ex) {
+            rollback(connection, ex);
+            throw ex;
+        } finally {
+            connections.add(connection);
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        try {
+            return connections.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", ex);
+        }
+    }
+
+    private static void rollback(Connection connection, Exception cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+}
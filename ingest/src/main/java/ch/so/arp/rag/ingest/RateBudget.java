@@ -0,0 +1,74 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket with a budget per minute that is refilled continuously.
+ * Requests larger than the whole budget wait for a full bucket instead of
+ * forever.
+ */
+final class RateBudget {
+
+    private final double capacity;
+    private final double perNano;
+    private final Ticker ticker;
+    private double available;
+    private long updated;
+
+    RateBudget(int perMinute) {
+        this(perMinute, Ticker.SYSTEM);
+    }
+
+    RateBudget(int perMinute, Ticker ticker) {
+        if (perMinute <= 0) {
+            throw new IllegalArgumentException("perMinute must be positive");
+        }
+        this.capacity = perMinute;
+        this.perNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.ticker = ticker;
+        this.available = perMinute;
+        this.updated = ticker.nanoTime();
+    }
+
+    void acquire(int amount) throws InterruptedException {
+        double needed = Math.min(amount, capacity);
+        while (true) {
+            long wait;
+            synchronized (this) {
+                long now = ticker.nanoTime();
+                available = Math.min(capacity, available + (now - updated) * perNano);
+                updated = now;
+                if (available >= needed) {
+                    available -= needed;
+                    return;
+                }
+                wait = (long) Math.ceil((needed - available) / perNano);
+            }
+            ticker.sleep(wait);
+        }
+    }
+
+    /**
+     * Time source of the budgets and the backoff of {@link OpenAiEmbedder};
+     * tests replace it to check the waits without waiting.
+     */
+    interface Ticker {
+
+        Ticker SYSTEM = new Ticker() {
+
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void sleep(long nanos) throws InterruptedException {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+        };
+
+        long nanoTime();
+
+        void sleep(long nanos) throws InterruptedException;
+    }
+}
@@ -0,0 +1,19 @@
+package ch.so.arp.rag.ingest;
+
+/**
+ * Part of a document below one heading.
+ *
+ * @param pageFrom first page of the section
+ * @param pageTo last page of the section
+ * @param heading the heading line, {@code null} for text before the first heading
+ * @param text the text of the section including its heading, {@code null} once the section is chunked
+ */
+public record Section(int pageFrom, int pageTo, String heading, String text) {
+
+    /**
+     * The section without its text, which is not needed once its chunks are cut.
+     */
+    public Section withoutText() {
+        return text == null ? this : new Section(pageFrom, pageTo, heading, null);
+    }
+}
@@ -0,0 +1,21 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits the pages of a document into sections.
+ */
+public interface Sectioner {
+
+    /**
+     * Start splitting a document. Each completed section is passed to
+     * {@code sections} as soon as its end is known, at the latest on
+     * {@link PageSink#finish()}.
+     *
+     * @param filename the file name, which may tell the kind of report
+     * @param meta municipality and plan type of the document
+     * @param sections receives the sections in document order
+     * @return the sink the pages are fed to
+     */
+    PageSink open(String filename, DocumentMeta meta, Consumer<Section> sections);
+}
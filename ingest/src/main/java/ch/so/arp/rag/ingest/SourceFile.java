@@ -0,0 +1,23 @@
+package ch.so.arp.rag.ingest;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * State of a PDF file on disk.
+ *
+ * @param contentHash hex encoded SHA-256 of the file
+ * @param mtime last modification, truncated to the precision of PostgreSQL
+ * @param documentId id in {@code arp_rag_vp.documents}, new or existing
+ * @param known whether the document is stored already
+ */
+public record SourceFile(String contentHash, Instant mtime, UUID documentId, boolean known) {
+
+    /**
+     * Key of a file in {@code documents.source_url}.
+     */
+    public static String sourceUrl(Path pdf) {
+        return pdf.toAbsolutePath().toString();
+    }
+}
@@ -0,0 +1,118 @@
+package ch.so.arp.rag.ingest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * One stage of the {@link IngestPipeline}: {@code workers} threads take items
+ * from {@code input}, process them and put the result into {@code output}. A
+ * stage ends once its upstream stage is done and {@code input} is empty. A
+ * failure only affects its item and is reported to {@code onFailure}.
+ */
+final class Stage<I, O> {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final String name;
+    private final Stage<?, ?> upstream;
+    private final BlockingQueue<I> input;
+    private final BlockingQueue<O> output;
+    private final Work<I, O> work;
+    private final BiConsumer<I, Exception> onFailure;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger running;
+    // allocation can only be measured on platform threads
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private volatile boolean allocationMeasured = true;
+
+    Stage(String name, int workers, ThreadFactory factory, Stage<?, ?> upstream, BlockingQueue<I> input,
+            BlockingQueue<O> output, Work<I, O> work, BiConsumer<I, Exception> onFailure) {
+        this.name = name;
+        this.upstream = upstream;
+        this.input = input;
+        this.output = output;
+        this.work = work;
+        this.onFailure = onFailure;
+        this.running = new AtomicInteger(workers);
+        for (int i = 0; i < workers; i++) {
+            threads.add(factory.newThread(this::run));
+        }
+    }
+
+    void start() {
+        threads.forEach(Thread::start);
+    }
+
+    void join() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    void interrupt() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    boolean isDone() {
+        return running.get() == 0;
+    }
+
+    IngestPipeline.StageReport report() {
+        return new IngestPipeline.StageReport(name, items.get(), busyNanos.get(),
+                allocationMeasured ? allocatedBytes.get() : -1);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                I item = input.poll(50, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    // order matters: upstream done first, then the queue empty
+                    if ((upstream == null || upstream.isDone()) && input.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+                    long begin = System.nanoTime();
+                    O result = work.apply(item);
+                    busyNanos.addAndGet(System.nanoTime() - begin);
+                    long allocatedAfter = THREADS.getCurrentThreadAllocatedBytes();
+                    if (allocatedBefore < 0 || allocatedAfter < 0) {
+                        allocationMeasured = false;
+                    } else {
+                        allocatedBytes.addAndGet(allocatedAfter - allocatedBefore);
+                    }
+                    items.incrementAndGet();
+                    if (output != null && result != null) {
+                        output.put(result);
+                    }
+                } catch (InterruptedException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    onFailure.accept(item, ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    @FunctionalInterface
+    interface Work<I, O> {
+        O apply(I item) throws Exception;
+    }
+}
@@ -0,0 +1,12 @@
+package ch.so.arp.rag.ingest;
+
+/**
+ * Chunk of a section text as cut by a {@link Chunker}.
+ *
+ * @param text the chunk text
+ * @param start offset of the first character in the section text
+ * @param end offset after the last character in the section text
+ * @param tokens number of tokens of the chunk window, overlap included
+ */
+public record TextChunk(String text, int start, int end, int tokens) {
+}
@@ -0,0 +1,143 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.knuddels.jtokkit.api.IntArrayList;
+
+/**
+ * {@link Chunker} cutting windows of at most {@code chunkTokens} tokens with
+ * {@code overlapTokens} overlap. The text is tokenized once and cut by token
+ * index, preferably at paragraph breaks and otherwise at word boundaries. Token
+ * boundaries are mapped to character offsets through the UTF-8 length of each
+ * token.
+ */
+public final class TokenChunker implements Chunker {
+
+    public static final int DEFAULT_CHUNK_TOKENS = 450;
+    public static final int DEFAULT_OVERLAP_TOKENS = 90;
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("[\\t ]*\\R{2,}[\\t ]*");
+
+    private final int chunkTokens;
+    private final int overlapTokens;
+
+    public TokenChunker() {
+        this(DEFAULT_CHUNK_TOKENS, DEFAULT_OVERLAP_TOKENS);
+    }
+
+    public TokenChunker(int chunkTokens, int overlapTokens) {
+        if (chunkTokens <= 0 || overlapTokens < 0 || overlapTokens >= chunkTokens) {
+            throw new IllegalArgumentException("Expected 0 <= overlapTokens < chunkTokens");
+        }
+        this.chunkTokens = chunkTokens;
+        this.overlapTokens = overlapTokens;
+    }
+
+    @Override
+    public List<TextChunk> chunk(String text) {
+        IntArrayList tokens = Tokens.encode(text);
+        int n = tokens.size();
+
+        // character offset of each token boundary; a boundary inside a multi-byte character is rounded up
+        int[] offsets = new int[n + 1];
+        long tokenBytes = 0;
+        long charBytes = 0;
+        int charPos = 0;
+        for (int t = 0; t < n; t++) {
+            tokenBytes += Tokens.byteLength(tokens.get(t));
+            while (charBytes < tokenBytes && charPos < text.length()) {
+                int cp = text.codePointAt(charPos);
+                charBytes += cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+                charPos += Character.charCount(cp);
+            }
+            offsets[t + 1] = charPos;
+        }
+
+        boolean[] paragraph = new boolean[n + 1];
+        boolean[] word = new boolean[n + 1];
+        Matcher matcher = PARAGRAPH_BREAK.matcher(text);
+        int b = 0;
+        while (matcher.find()) {
+            while (b <= n && offsets[b] < matcher.start()) {
+                b++;
+            }
+            for (int k = b; k <= n && offsets[k] <= matcher.end(); k++) {
+                paragraph[k] = true;
+            }
+        }
+        for (int k = 0; k <= n; k++) {
+            int c = offsets[k];
+            word[k] = (c > 0 && Character.isWhitespace(text.charAt(c - 1)))
+                    || (c < text.length() && Character.isWhitespace(text.charAt(c)));
+        }
+
+        List<TextChunk> chunks = new ArrayList<>();
+        int start = 0;
+        int covered = 0; // end of the previous chunk: a chunk has to reach beyond it
+        while (start < n) {
+            int limit = Math.min(n, start + chunkTokens);
+            int end = limit;
+            if (limit < n) {
+                int from = Math.max(start, covered) + 1;
+                end = lastMark(paragraph, from, limit);
+                if (end < 0) {
+                    end = lastMark(word, from, limit);
+                }
+                if (end < 0) {
+                    end = limit;
+                }
+            }
+            int cs = offsets[start];
+            int ce = offsets[end];
+            while (cs < ce && Character.isWhitespace(text.charAt(cs))) {
+                cs++;
+            }
+            while (ce > cs && Character.isWhitespace(text.charAt(ce - 1))) {
+                ce--;
+            }
+            if (cs < ce) {
+                chunks.add(new TextChunk(text.substring(cs, ce), cs, ce, end - start));
+            }
+            if (end == n) {
+                break;
+            }
+
+            // overlap: the earliest paragraph or word boundary within the last overlapTokens
+            int next = end;
+            int from = Math.max(end - overlapTokens, start + 1);
+            if (from < end) {
+                next = firstMark(paragraph, from, end - 1);
+                if (next < 0) {
+                    next = firstMark(word, from, end - 1);
+                }
+                if (next < 0) {
+                    next = from;
+                }
+            }
+            covered = end;
+            start = next;
+        }
+        return chunks;
+    }
+
+    private static int lastMark(boolean[] marks, int from, int to) {
+        for (int k = to; k >= from; k--) {
+            if (marks[k]) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private static int firstMark(boolean[] marks, int from, int to) {
+        for (int k = from; k <= to; k++) {
+            if (marks[k]) {
+                return k;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,44 @@
+package ch.so.arp.rag.ingest;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.IntArrayList;
+import com.knuddels.jtokkit.api.ModelType;
+
+/**
+ * Tokenizer of the embedding model ({@code cl100k_base}), used to size chunks
+ * and embedding batches.
+ */
+final class Tokens {
+
+    static final Encoding ENCODING = Encodings.newDefaultEncodingRegistry()
+            .getEncodingForModel(ModelType.TEXT_EMBEDDING_3_LARGE);
+
+    // UTF-8 length per token id, filled on demand (0 = not known yet); cl100k has about 100k tokens
+    private static final int[] BYTE_LENGTHS = new int[1 << 18];
+
+    private Tokens() {
+    }
+
+    static int count(String text) {
+        return ENCODING.countTokensOrdinary(text);
+    }
+
+    static IntArrayList encode(String text) {
+        return ENCODING.encodeOrdinary(text);
+    }
+
+    static int byteLength(int token) {
+        int length = token < BYTE_LENGTHS.length ? BYTE_LENGTHS[token] : 0;
+        if (length == 0) {
+            IntArrayList single = new IntArrayList(1);
+            single.add(token);
+            length = ENCODING.decodeBytes(single).length;
+            if (token < BYTE_LENGTHS.length) {
+                // idempotent, concurrent writes store the same value
+                BYTE_LENGTHS[token] = length;
+            }
+        }
+        return length;
+    }
+}
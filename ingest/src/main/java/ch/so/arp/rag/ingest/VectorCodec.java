@@ -0,0 +1,97 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.Arrays;
+
+/**
+ * Conversions of embedding vectors shared by the ingest and the chat
+ * application. pgvector stores the embeddings as {@code halfvec}, so the
+ * vectors are rounded to IEEE 754 half precision in exactly one place and a
+ * question vector is encoded the same way as the chunk vectors it is compared
+ * with.
+ */
+public final class VectorCodec {
+
+    private VectorCodec() {
+    }
+
+    public static short[] encode(float[] vector) {
+        short[] half = new short[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            half[i] = Float.floatToFloat16(vector[i]);
+        }
+        return half;
+    }
+
+    public static float[] decode(short[] half) {
+        float[] vector = new float[half.length];
+        for (int i = 0; i < half.length; i++) {
+            vector[i] = Float.float16ToFloat(half[i]);
+        }
+        return vector;
+    }
+
+    /**
+     * The first {@code dimensions} values of {@code vector}, scaled to unit
+     * length. The OpenAI v3 embeddings are trained so that such a prefix is an
+     * embedding of its own (the {@code dimensions} parameter of the API does
+     * the same), which lets one request yield both the full and the short
+     * vector.
+     *
+     * @throws IllegalArgumentException if {@code dimensions} is not between 1 and the length of {@code vector}
+     */
+    public static float[] truncate(float[] vector, int dimensions) {
+        if (dimensions <= 0 || dimensions > vector.length) {
+            throw new IllegalArgumentException(
+                    "Cannot truncate " + vector.length + " dimensions to " + dimensions);
+        }
+        float[] prefix = Arrays.copyOf(vector, dimensions);
+        double norm = 0d;
+        for (float value : prefix) {
+            norm += (double) value * value;
+        }
+        if (norm > 0d) {
+            float scale = (float) (1d / Math.sqrt(norm));
+            for (int i = 0; i < prefix.length; i++) {
+                prefix[i] *= scale;
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * Text literal of pgvector, e.g. {@code [0.25,-1.0]}.
+     */
+    public static String toLiteral(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12);
+        sb.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Parse a pgvector text literal.
+     *
+     * @throws IllegalArgumentException if {@code literal} is not enclosed in brackets
+     */
+    public static float[] parseLiteral(String literal) {
+        String body = literal.strip();
+        if (!body.startsWith("[") || !body.endsWith("]")) {
+            throw new IllegalArgumentException("Invalid vector literal: " + literal);
+        }
+        body = body.substring(1, body.length() - 1).strip();
+        if (body.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i].strip());
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,54 @@
+package ch.so.arp.rag.ingest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Dimensions of the {@code halfvec} columns of {@code arp_rag_vp.chunks}.
+ * pgvector keeps them in the type modifier ({@code atttypmod}) of the column,
+ * so a column created for another model is only noticed when the first vector
+ * is written or searched. Chat and ingest check them before they start.
+ */
+public final class VectorColumns {
+
+    public static final String EMBEDDING = "embedding";
+    public static final String EMBEDDING_SHORT = "embedding_short";
+
+    private static final String DIMENSIONS_SQL = """
+            SELECT atttypmod FROM pg_attribute
+            WHERE attrelid = to_regclass('arp_rag_vp.chunks') AND attname = ? AND NOT attisdropped
+            """;
+
+    private VectorColumns() {
+    }
+
+    /**
+     * @return the dimensions of the column, {@code 0} if it has none, {@code -1} if it or the table does not exist
+     */
+    public static int dimensions(Connection connection, String column) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(DIMENSIONS_SQL)) {
+            ps.setString(1, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? Math.max(rs.getInt(1), 0) : -1;
+            }
+        }
+    }
+
+    /**
+     * Fails if the column exists with other dimensions than {@code expected}.
+     *
+     * @param setting the option that configures the dimensions, named in the message
+     * @throws IllegalStateException if the dimensions differ
+     */
+    public static void check(Connection connection, String column, int expected, String setting)
+            throws SQLException {
+        int actual = dimensions(connection, column);
+        if (actual > 0 && actual != expected) {
+            throw new IllegalStateException("arp_rag_vp.chunks." + column + " has " + actual
+                    + " dimensions, but " + setting + " is " + expected
+                    + ": change the setting or recreate the column with halfvec(" + expected + ")");
+        }
+    }
+}
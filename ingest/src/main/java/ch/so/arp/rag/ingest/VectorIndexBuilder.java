@@ -0,0 +1,336 @@
+package ch.so.arp.rag.ingest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Builds the nearest neighbour index on {@code arp_rag_vp.chunks.embedding}
+ * once the chunks are loaded. The ivfflat index of {@code initdb} is created
+ * on the empty table, so its centroids say nothing about the data; rebuilt
+ * after the ingest, the lists are trained on the chunks and sized from their
+ * number.
+ * <p>
+ * The index is built with {@code CREATE INDEX CONCURRENTLY} under a temporary
+ * name while searches keep using the previous one. In one short transaction
+ * the previous index is then dropped and the new one takes its name. The
+ * recall is estimated with the {@code ivfflat.probes} or {@code hnsw.ef_search}
+ * the chat searches with: for sampled chunks the neighbours found through the
+ * index are compared with those of an exact scan.
+ * <p>
+ * With {@link Settings#minRecall()} set, the index queries of the estimate run
+ * inside the swap transaction, so searches wait for them. Below the threshold
+ * the transaction is rolled back, the previous index stays and the new one is
+ * dropped.
+ */
+public final class VectorIndexBuilder {
+
+    static final String INDEX_NAME = "chunks_embedding_idx";
+    static final String BUILD_NAME = INDEX_NAME + "_new";
+    // the chat searches with max(topK, 40), see PostgresVectorDatabase
+    public static final int HNSW_EF_SEARCH = 40;
+
+    static final String COUNT_SQL = "SELECT count(*) FROM arp_rag_vp.chunks WHERE embedding IS NOT NULL";
+
+    // the binary and short vector indexes are on other expressions and stay
+    static final String EXISTING_SQL = """
+            SELECT indexname FROM pg_indexes
+            WHERE schemaname = 'arp_rag_vp' AND tablename = 'chunks' AND indexname <> ?
+              AND indexdef ~ 'USING (hnsw|ivfflat) \\(embedding halfvec_cosine_ops\\)'
+            """;
+
+    static final String SAMPLE_SQL = """
+            SELECT id FROM arp_rag_vp.chunks WHERE embedding IS NOT NULL ORDER BY random() LIMIT ?
+            """;
+
+    // the subquery is evaluated once, so the index can serve the ORDER BY
+    static final String NEIGHBOURS_SQL = """
+            SELECT id FROM arp_rag_vp.chunks
+            WHERE id <> ? AND embedding IS NOT NULL
+            ORDER BY embedding <=> (SELECT embedding FROM arp_rag_vp.chunks WHERE id = ?)
+            LIMIT ?
+            """;
+
+    private final Connection connection;
+
+    /**
+     * @param connection a connection of the owner of the table; it is left in auto-commit mode
+     */
+    public VectorIndexBuilder(Connection connection) {
+        this.connection = Objects.requireNonNull(connection, "connection");
+    }
+
+    /**
+     * Build a new index, estimate its recall and replace the previous one unless the recall is below
+     * {@link Settings#minRecall()}.
+     */
+    public Report rebuild(Settings settings) throws SQLException {
+        Objects.requireNonNull(settings, "settings");
+        // CREATE INDEX CONCURRENTLY refuses to run inside a transaction
+        connection.setAutoCommit(true);
+        long rows = count();
+        int lists = settings.method() == Method.IVFFLAT ? lists(rows) : 0;
+        setConfig("maintenance_work_mem", settings.maintenanceWorkMem(), false);
+        setConfig("max_parallel_maintenance_workers", Integer.toString(settings.parallelWorkers()), false);
+        long started = System.nanoTime();
+        try (Statement st = connection.createStatement()) {
+            // a build that failed or was cancelled leaves an invalid index behind
+            st.execute("DROP INDEX CONCURRENTLY IF EXISTS arp_rag_vp." + BUILD_NAME);
+            st.execute(createSql(settings.method(), lists));
+        }
+        Duration buildTime = Duration.ofNanos(System.nanoTime() - started);
+        String search = settings.method() == Method.IVFFLAT
+                ? "ivfflat.probes=" + settings.probes()
+                : "hnsw.ef_search=" + settings.efSearch();
+        // the exact scan does not depend on the index and runs before the swap
+        List<Long> samples = samples(settings.recallSamples());
+        List<Set<Long>> exact = inTransaction(() -> {
+            setConfig("enable_indexscan", "off", true);
+            return neighbours(samples, settings.recallK());
+        });
+        List<String> previous = previousIndexes();
+        double recall = Double.NaN;
+        boolean accepted = true;
+        connection.setAutoCommit(false);
+        try {
+            swap(previous);
+            if (settings.minRecall() > 0) {
+                // searches wait for these index queries behind the lock of the swap
+                recall = recall(exact, approximate(samples, settings.recallK(), search));
+                accepted = accepts(recall, settings.minRecall());
+            }
+            if (accepted) {
+                connection.commit();
+            } else {
+                connection.rollback();
+            }
+        } catch (SQLException | RuntimeException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        if (!accepted) {
+            try (Statement st = connection.createStatement()) {
+                st.execute("DROP INDEX CONCURRENTLY IF EXISTS arp_rag_vp." + BUILD_NAME);
+            }
+            return new Report(BUILD_NAME, settings.method(), rows, lists, buildTime, List.of(), search, recall,
+                    false);
+        }
+        if (Double.isNaN(recall) && !samples.isEmpty()) {
+            recall = recall(exact, inTransaction(() -> approximate(samples, settings.recallK(), search)));
+        }
+        return new Report(INDEX_NAME, settings.method(), rows, lists, buildTime, previous, search, recall, true);
+    }
+
+    /**
+     * Below {@code minRecall} a rebuild is rejected; without a threshold or with nothing to measure
+     * ({@code NaN}) it is accepted.
+     */
+    static boolean accepts(double recall, double minRecall) {
+        return minRecall <= 0 || Double.isNaN(recall) || recall >= minRecall;
+    }
+
+    /** Share of the exact neighbours that were found, {@code NaN} without any. */
+    static double recall(List<Set<Long>> exact, List<Set<Long>> approximate) {
+        int found = 0;
+        int expected = 0;
+        for (int i = 0; i < exact.size(); i++) {
+            expected += exact.get(i).size();
+            for (Long id : approximate.get(i)) {
+                if (exact.get(i).contains(id)) {
+                    found++;
+                }
+            }
+        }
+        return expected == 0 ? Double.NaN : (double) found / expected;
+    }
+
+    /**
+     * Lists of an ivfflat index as recommended by pgvector: a thousandth of
+     * the rows up to a million rows, the square root above.
+     */
+    static int lists(long rows) {
+        long lists = rows <= 1_000_000 ? rows / 1000 : (long) Math.sqrt(rows);
+        return (int) Math.max(1, lists);
+    }
+
+    /** Probes recommended by pgvector for {@code lists}: the square root. */
+    static int probes(int lists) {
+        return Math.max(1, (int) Math.round(Math.sqrt(lists)));
+    }
+
+    static String createSql(Method method, int lists) {
+        String sql = "CREATE INDEX CONCURRENTLY " + BUILD_NAME + " ON arp_rag_vp.chunks USING "
+                + method.name().toLowerCase(Locale.ROOT) + " (embedding halfvec_cosine_ops)";
+        return method == Method.IVFFLAT ? sql + " WITH (lists = " + lists + ")" : sql;
+    }
+
+    private long count() throws SQLException {
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(COUNT_SQL)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private List<String> previousIndexes() throws SQLException {
+        List<String> previous = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(EXISTING_SQL)) {
+            ps.setString(1, BUILD_NAME);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    previous.add(rs.getString(1));
+                }
+            }
+        }
+        return previous;
+    }
+
+    /** Drops the previous indexes on the embedding and renames the new one, in the current transaction. */
+    private void swap(List<String> previous) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            // DROP INDEX locks the table: give up rather than queue searches behind a long query
+            setConfig("lock_timeout", "10s", true);
+            for (String index : previous) {
+                st.execute("DROP INDEX arp_rag_vp." + quote(index));
+            }
+            st.execute("ALTER INDEX arp_rag_vp." + BUILD_NAME + " RENAME TO " + INDEX_NAME);
+        }
+    }
+
+    private List<Long> samples(int count) throws SQLException {
+        List<Long> samples = new ArrayList<>();
+        if (count == 0) {
+            return samples;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(SAMPLE_SQL)) {
+            ps.setInt(1, count);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    samples.add(rs.getLong(1));
+                }
+            }
+        }
+        return samples;
+    }
+
+    /** Neighbours through the index with the search setting of the chat, in the current transaction. */
+    private List<Set<Long>> approximate(List<Long> samples, int k, String search) throws SQLException {
+        String[] setting = search.split("=", 2);
+        setConfig("enable_seqscan", "off", true);
+        setConfig(setting[0], setting[1], true);
+        return neighbours(samples, k);
+    }
+
+    /** Nearest neighbours of every sample with the settings of the current transaction. */
+    private List<Set<Long>> neighbours(List<Long> samples, int k) throws SQLException {
+        List<Set<Long>> neighbours = new ArrayList<>(samples.size());
+        try (PreparedStatement ps = connection.prepareStatement(NEIGHBOURS_SQL)) {
+            for (Long sample : samples) {
+                ps.setLong(1, sample);
+                ps.setLong(2, sample);
+                ps.setInt(3, k);
+                Set<Long> ids = new HashSet<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                    }
+                }
+                neighbours.add(ids);
+            }
+        }
+        return neighbours;
+    }
+
+    private <T> T inTransaction(SqlSupplier<T> work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            T result = work.get();
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void setConfig(String name, String value, boolean local) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT set_config(?, ?, ?)")) {
+            ps.setString(1, name);
+            ps.setString(2, value);
+            ps.setBoolean(3, local);
+            ps.execute();
+        }
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    @FunctionalInterface
+    private interface SqlSupplier<T> {
+        T get() throws SQLException;
+    }
+
+    /** Type of the index. */
+    public enum Method {
+        /** Graph index: slower to build, better recall per query time, no training. */
+        HNSW,
+        /** Inverted lists around k-means centroids of the chunks at build time. */
+        IVFFLAT
+    }
+
+    /**
+     * @param method type of the index
+     * @param maintenanceWorkMem {@code maintenance_work_mem} of the build, e.g. {@code 2GB}; an HNSW
+     *            build is much faster if the graph fits
+     * @param parallelWorkers {@code max_parallel_maintenance_workers} of the build
+     * @param recallSamples chunks used as queries for the recall estimate, 0 to skip it
+     * @param recallK neighbours compared per query
+     * @param probes {@code ivfflat.probes} of the estimate, the value the chat searches with
+     * @param efSearch {@code hnsw.ef_search} of the estimate, the value the chat searches with
+     * @param minRecall recall below which the new index is rejected, 0 to accept any; needs samples
+     */
+    public record Settings(Method method, String maintenanceWorkMem, int parallelWorkers, int recallSamples,
+            int recallK, int probes, int efSearch, double minRecall) {
+
+        public Settings {
+            Objects.requireNonNull(method, "method");
+            Objects.requireNonNull(maintenanceWorkMem, "maintenanceWorkMem");
+            if (parallelWorkers < 0 || recallSamples < 0 || recallK <= 0 || probes <= 0 || efSearch <= 0
+                    || minRecall < 0 || minRecall > 1 || minRecall > 0 && recallSamples == 0) {
+                throw new IllegalArgumentException("Invalid index settings");
+            }
+        }
+
+        public static Settings defaults(Method method) {
+            return new Settings(method, "1GB", 2, 100, 10, 10, HNSW_EF_SEARCH, 0);
+        }
+    }
+
+    /**
+     * Outcome of {@link #rebuild(Settings)}.
+     *
+     * @param index name of the new index
+     * @param rows chunks with an embedding
+     * @param lists ivfflat lists, 0 for HNSW
+     * @param replaced names of the dropped indexes
+     * @param search setting the recall was measured with
+     * @param recall share of the exact neighbours found through the index, {@code NaN} if not measured
+     * @param accepted {@code false} if the recall was below the threshold and the previous index was kept
+     */
+    public record Report(String index, Method method, long rows, int lists, Duration buildTime, List<String> replaced,
+            String search, double recall, boolean accepted) {
+    }
+}
@@ -0,0 +1,104 @@
+package ch.so.arp.rag.ingest;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vectors of the new chunks of one document on their way from the embed
+ * stage to the writer. The document is handed over before it is embedded,
+ * and the vectors follow batch by batch; at most {@code capacity} batches
+ * wait for the writer, so the vectors of a large document are never all in
+ * memory at once.
+ */
+public final class VectorStream implements AutoCloseable {
+
+    private final BlockingQueue<List<float[]>> batches;
+    private Iterator<float[]> current = Collections.emptyIterator();
+    private volatile boolean finished;
+    private volatile boolean closed;
+    private volatile Exception failure;
+
+    VectorStream(int capacity) {
+        this.batches = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Stream of vectors that are all known already.
+     */
+    static VectorStream of(List<float[]> vectors) {
+        VectorStream stream = new VectorStream(1);
+        if (!vectors.isEmpty()) {
+            stream.batches.add(vectors);
+        }
+        stream.finish();
+        return stream;
+    }
+
+    /**
+     * Add the next batch, waiting while {@code capacity} batches are pending.
+     *
+     * @return {@code false} if the writer closed the stream and needs no more vectors
+     */
+    boolean put(List<float[]> batch) throws InterruptedException {
+        while (!closed) {
+            if (batches.offer(batch, 50, TimeUnit.MILLISECONDS)) {
+                break;
+            }
+        }
+        // closing frees the queue, so a waiting offer may succeed after all
+        if (closed) {
+            batches.clear();
+            return false;
+        }
+        return true;
+    }
+
+    /** All batches are added. */
+    void finish() {
+        finished = true;
+    }
+
+    /** Embedding failed, the writer gives up at its next {@link #next()}. */
+    void fail(Exception exception) {
+        failure = exception;
+    }
+
+    boolean failed() {
+        return failure != null;
+    }
+
+    /**
+     * The vector of the next new chunk, waiting until it is embedded.
+     *
+     * @throws IOException if embedding failed or there are no vectors left
+     */
+    public float[] next() throws IOException, InterruptedException {
+        while (!current.hasNext()) {
+            List<float[]> batch = batches.poll(50, TimeUnit.MILLISECONDS);
+            if (batch != null) {
+                current = batch.iterator();
+            } else if (failure != null) {
+                throw new IOException("Embedding failed: " + failure.getMessage(), failure);
+            } else if (finished && batches.isEmpty()) {
+                // order matters: finished first, then the queue empty
+                throw new IOException("More new chunks than vectors");
+            }
+        }
+        return current.next();
+    }
+
+    /**
+     * Release the pending batches and stop the embed stage from adding more;
+     * called by the writer once it is done with the document or gives up.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        batches.clear();
+    }
+}
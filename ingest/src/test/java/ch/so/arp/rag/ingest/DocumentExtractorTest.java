@@ -0,0 +1,30 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class DocumentExtractorTest {
+
+    private final DocumentExtractor extractor = new DocumentExtractor((file, pages) -> {
+        pages.accept(1, "Einleitung\n1 Ausgangslage\nDie Hecke am Siedlungsrand bleibt erhalten.\n");
+        return 1;
+    }, new HeadingSectioner(), new TokenChunker());
+
+    @Test
+    void digestDoesNotDependOnHowThePathIsGiven() throws IOException {
+        Path relative = Path.of("reports", "..", "VP_OP_Balsthal_Vorpruefung.pdf");
+
+        assertThat(digests(relative)).isNotEmpty()
+                .isEqualTo(digests(relative.toAbsolutePath()))
+                .isEqualTo(digests(Path.of("VP_OP_Balsthal_Vorpruefung.pdf")));
+    }
+
+    private List<String> digests(Path pdf) throws IOException {
+        return extractor.extract(pdf, null).allChunks().stream().map(DocumentChunk::digest).toList();
+    }
+}
@@ -0,0 +1,22 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class DocumentMetaTest {
+
+    @Test
+    void readsMunicipalityAndPlanTypeFromFilename() {
+        assertThat(DocumentMeta.fromFilename("VP_GP_Balsthal_Vorprüfung_2024.pdf"))
+                .isEqualTo(new DocumentMeta("Balsthal", DocumentMeta.GESTALTUNGSPLAN));
+        assertThat(DocumentMeta.fromFilename("VP_OP_Kestenholz.pdf"))
+                .isEqualTo(new DocumentMeta("Kestenholz", DocumentMeta.ORTSPLANUNG));
+    }
+
+    @Test
+    void fallsBackForOtherFilenames() {
+        assertThat(DocumentMeta.fromFilename("Bericht.pdf"))
+                .isEqualTo(new DocumentMeta("Unbekannt", DocumentMeta.ORTSPLANUNG));
+    }
+}
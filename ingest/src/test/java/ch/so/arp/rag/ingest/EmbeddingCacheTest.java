@@ -0,0 +1,94 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EmbeddingCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesVectorsWithHalfPrecision() throws IOException {
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 3)) {
+            cache.put("Hecken", new float[] { 0.0123456f, -0.5f, 1f });
+
+            assertThat(cache.get("Hecken")).containsExactly(new float[] { 0.0123456f, -0.5f, 1f },
+                    Offset.offset(1e-5f));
+            assertThat(cache.get("hecken")).isNull();
+            assertThat(cache.hits()).isEqualTo(1);
+            assertThat(cache.misses()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void keepsEntriesAcrossReopening() throws IOException {
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 2)) {
+            cache.put("a", new float[] { 0.25f, 0.5f });
+            cache.put("b", new float[] { -0.25f, 0.75f });
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 2)) {
+            assertThat(cache.size()).isEqualTo(2);
+            assertThat(cache.get("b")).containsExactly(-0.25f, 0.75f);
+        }
+    }
+
+    @Test
+    void picksUpEntriesWrittenByAnotherInstance() throws IOException {
+        try (EmbeddingCache reader = EmbeddingCache.open(directory, "model", 2);
+                EmbeddingCache writer = EmbeddingCache.open(directory, "model", 2)) {
+            reader.put("first", new float[] { 0.5f, 0.5f });
+            writer.put("second", new float[] { 1f, 0f });
+
+            assertThat(reader.get("second")).containsExactly(1f, 0f);
+            assertThat(writer.get("first")).containsExactly(0.5f, 0.5f);
+            assertThat(reader.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void separatesModelsAndDimensions() throws IOException {
+        try (EmbeddingCache large = EmbeddingCache.open(directory, "text-embedding-3-large", 2);
+                EmbeddingCache small = EmbeddingCache.open(directory, "text-embedding-3-small", 2);
+                EmbeddingCache shorter = EmbeddingCache.open(directory, "text-embedding-3-large", 1)) {
+            large.put("Lärm", new float[] { 0.5f, 0.5f });
+
+            assertThat(small.get("Lärm")).isNull();
+            assertThat(shorter.get("Lärm")).isNull();
+        }
+    }
+
+    @Test
+    void rejectsVectorsOfOtherDimensions() throws IOException {
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 3)) {
+            assertThatThrownBy(() -> cache.put("a", new float[] { 1f }))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void ignoresPartiallyWrittenIndexRecord() throws IOException {
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 2)) {
+            cache.put("a", new float[] { 0.25f, 0.5f });
+        }
+        Files.write(directory.resolve("model-2.idx"), new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 2)) {
+            cache.put("b", new float[] { 0.75f, 1f });
+
+            assertThat(cache.get("a")).containsExactly(0.25f, 0.5f);
+            assertThat(cache.get("b")).containsExactly(0.75f, 1f);
+        }
+        assertThat(Files.size(directory.resolve("model-2.idx")))
+                .isEqualTo(EmbeddingCache.HEADER_BYTES + 2L * EmbeddingCache.RECORD_BYTES);
+    }
+}
@@ -0,0 +1,117 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class EmbeddingResponseParserTest {
+
+    @Test
+    void ordersVectorsByIndex() throws IOException {
+        float[][] vectors = parse("""
+                {"data":[{"index":2,"embedding":[0.0,2.0]},{"index":0,"embedding":[0.5,0.0]},
+                         {"index":1,"embedding":[1.0,1.0]}]}
+                """, 2, 3);
+
+        assertThat(vectors[0]).containsExactly(0.5f, 0f);
+        assertThat(vectors[1]).containsExactly(1f, 1f);
+        assertThat(vectors[2]).containsExactly(0f, 2f);
+    }
+
+    @Test
+    void skipsUnknownFieldsAroundData() throws IOException {
+        float[][] vectors = parse("""
+                {
+                  "object": "li\\"st",
+                  "note": "Zürich \\u00e9 \\\\ \\n",
+                  "meta": {"nested": [1, -2.5e3, true, null, {"a": "b"}], "empty": {}, "none": []},
+                  "data": [
+                    {"object": "embedding", "embedding": [0.25, -0.75], "extra": "\\u0041", "index": 0}
+                  ],
+                  "model": "text-embedding-3-large",
+                  "usage": {"prompt_tokens": 8, "total_tokens": 8}
+                }
+                """, 2, 1);
+
+        assertThat(vectors[0]).containsExactly(0.25f, -0.75f);
+    }
+
+    @Test
+    void parsesNegativeAndExponentNumbers() throws IOException {
+        float[][] vectors = parse("""
+                {"data":[{"index":0,"embedding":[-0.0123,1.5e-3,-2E+2,7e0,-1,0.12345678901234567890]}]}
+                """, 6, 1);
+
+        assertThat(vectors[0][0]).isEqualTo(-0.0123f);
+        assertThat(vectors[0][1]).isEqualTo(1.5e-3f);
+        assertThat(vectors[0][2]).isEqualTo(-200f);
+        assertThat(vectors[0][3]).isEqualTo(7f);
+        assertThat(vectors[0][4]).isEqualTo(-1f);
+        assertThat(vectors[0][5]).isCloseTo(0.12345679f, Offset.offset(1e-7f));
+    }
+
+    @Test
+    void readsVectorsLargerThanTheBuffer() throws IOException {
+        StringJoiner values = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < 3072; i++) {
+            values.add(Float.toString(-i / 3072f));
+        }
+        float[][] vectors = parse("{\"data\":[{\"index\":0,\"embedding\":" + values + "}]}", 3072, 1);
+
+        assertThat(vectors[0][3071]).isEqualTo(-3071 / 3072f);
+    }
+
+    @Test
+    void rejectsTruncatedBody() {
+        assertThatThrownBy(() -> parse("{\"data\":[{\"index\":0,\"embedding\":[0.1,0.", 2, 1))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> parse("{\"data\":[{\"index\":0,\"embedding\":[0.1,0.2]}", 2, 1))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> parse("{\"obj", 2, 1))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("end of the response");
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        assertThatThrownBy(() -> parse("{\"data\":[{\"index\":0,\"embedding\":[0.1;0.2]}]}", 2, 1))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Expected ',' or ']'");
+        assertThatThrownBy(() -> parse("{\"data\":[{\"index\":0,\"embedding\":[0.1,-]}]}", 2, 1))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Number expected");
+        assertThatThrownBy(() -> parse("[]", 2, 1))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Expected '{'");
+    }
+
+    @Test
+    void rejectsDimensionMismatch() {
+        assertThatThrownBy(() -> parse("{\"data\":[{\"index\":0,\"embedding\":[0.1,0.2,0.3]}]}", 2, 1))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Embedding has 3 instead of 2 dimensions");
+    }
+
+    @Test
+    void rejectsMissingOrDuplicateIndex() {
+        assertThatThrownBy(() -> parse("{\"data\":[{\"index\":0,\"embedding\":[0.1]}]}", 1, 2))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Embedding count mismatch: index 1 is missing");
+        assertThatThrownBy(() -> parse(
+                "{\"data\":[{\"index\":0,\"embedding\":[0.1]},{\"index\":0,\"embedding\":[0.2]}]}", 1, 2))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Invalid element in 'data' (index=0)");
+    }
+
+    private static float[][] parse(String body, int dimensions, int expected) throws IOException {
+        return new EmbeddingResponseParser(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                dimensions).parse(expected);
+    }
+}
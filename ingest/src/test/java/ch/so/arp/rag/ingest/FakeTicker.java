@@ -0,0 +1,33 @@
+package ch.so.arp.rag.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RateBudget.Ticker} whose clock only moves when it is advanced or
+ * slept on. The sleeps are recorded.
+ */
+final class FakeTicker implements RateBudget.Ticker {
+
+    private final List<Long> sleeps = new ArrayList<>();
+    private long now;
+
+    @Override
+    public synchronized long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public synchronized void sleep(long nanos) {
+        sleeps.add(nanos);
+        now += nanos;
+    }
+
+    synchronized void advance(long nanos) {
+        now += nanos;
+    }
+
+    synchronized List<Long> sleeps() {
+        return List.copyOf(sleeps);
+    }
+}
@@ -0,0 +1,52 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.SQLException;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class HalfVectorTest {
+
+    @Test
+    void writesPgvectorBinaryFormat() {
+        HalfVector vector = new HalfVector(new float[] { 1f, -2f, 0.5f });
+        byte[] bytes = new byte[vector.lengthInBytes()];
+
+        vector.toBytes(bytes, 0);
+
+        assertThat(bytes).containsExactly(
+                0x00, 0x03, 0x00, 0x00,
+                0x3c, 0x00,
+                (byte) 0xc0, 0x00,
+                0x38, 0x00);
+    }
+
+    @Test
+    void readsBinaryFormatBack() {
+        float[] embedding = new MockEmbedder().embed("Fruchtfolgeflächen");
+        HalfVector written = new HalfVector(embedding);
+        byte[] bytes = new byte[written.lengthInBytes() + 2];
+        written.toBytes(bytes, 2);
+
+        HalfVector read = new HalfVector();
+        read.setByteValue(bytes, 2);
+
+        assertThat(read).isEqualTo(written);
+        assertThat(read.dimensions()).isEqualTo(MockEmbedder.DEFAULT_DIMENSIONS);
+        assertThat(read.toArray()[0]).isCloseTo(embedding[0], Offset.offset(1e-3f));
+    }
+
+    @Test
+    void fallsBackToTextLiteral() throws SQLException {
+        HalfVector vector = new HalfVector(new float[] { 0.25f, -1f });
+
+        assertThat(vector.getType()).isEqualTo("halfvec");
+        assertThat(vector.getValue()).isEqualTo("[0.25,-1.0]");
+
+        HalfVector parsed = new HalfVector();
+        parsed.setValue("[0.25, -1]");
+        assertThat(parsed).isEqualTo(vector);
+    }
+}
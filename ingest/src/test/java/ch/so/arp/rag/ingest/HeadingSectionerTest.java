@@ -0,0 +1,49 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class HeadingSectionerTest {
+
+    @Test
+    void splitsLocalPlanReportsAtNumberedHeadings() {
+        List<Section> sections = split("VP_OP_Balsthal_Vorprüfung.pdf",
+                "Einleitung\n1 Ausgangslage\nText eins\n", "fortgesetzt\n2.1 Verkehr\nText zwei\n");
+
+        assertThat(sections).extracting(Section::heading)
+                .containsExactly(null, "1 Ausgangslage", "2.1 Verkehr");
+        assertThat(sections.get(1).pageFrom()).isEqualTo(1);
+        assertThat(sections.get(1).pageTo()).isEqualTo(2);
+        assertThat(sections.get(1).text()).contains("Text eins").contains("fortgesetzt");
+    }
+
+    @Test
+    void splitsDesignPlanReportsAtChapterTitles() {
+        List<Section> sections = split("VP_GP_Olten_Vorprüfung.pdf",
+                "Ausgangslage\nText\n2025 Jahreszahl ohne Bedeutung\nLärm\nText\n");
+
+        assertThat(sections).extracting(Section::heading).containsExactly("Ausgangslage", "Lärm");
+    }
+
+    @Test
+    void recognisesHeadingLines() {
+        assertThat(HeadingSectioner.isNumberedHeading("3.2 Fruchtfolgeflächen")).isTrue();
+        assertThat(HeadingSectioner.isNumberedHeading("4500 4600")).isFalse();
+        assertThat(HeadingSectioner.isGpHeading("Erschliessungsprinzip")).isTrue();
+        assertThat(HeadingSectioner.isGpHeading("Beurteilte Unterlagen")).isFalse();
+    }
+
+    private static List<Section> split(String filename, String... pages) {
+        List<Section> sections = new ArrayList<>();
+        PageSink sink = new HeadingSectioner().open(filename, DocumentMeta.fromFilename(filename), sections::add);
+        for (int p = 0; p < pages.length; p++) {
+            sink.accept(p + 1, pages[p]);
+        }
+        sink.finish();
+        return sections;
+    }
+}
@@ -0,0 +1,176 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IngestPipelineTest {
+
+    private static final int PAGES = 3;
+    private static final int LINES = 200;
+
+    private final MockEmbedder mockEmbedder = new MockEmbedder(4);
+    private final RecordingWriter writer = new RecordingWriter();
+    private final List<String> failures = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void streamsVectorsOfNewChunksToWriter() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Embedder embedder = counting(calls);
+
+        IngestPipeline.Result result = pipeline(embedder).run(List.of(pdf()));
+
+        assertThat(result.failed()).isZero();
+        assertThat(failures).isEmpty();
+        // every tenth chunk is stored already
+        int fresh = PAGES * LINES - PAGES * LINES / 10;
+        assertThat(writer.written).hasValue(fresh);
+        assertThat(calls).hasValue((fresh + IngestPipeline.EMBED_BATCH - 1) / IngestPipeline.EMBED_BATCH);
+        assertThat(writer.sectionTexts).containsOnlyNulls().hasSize(PAGES);
+    }
+
+    @Test
+    void reportsFailedEmbeddingOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Embedder embedder = new Embedder() {
+            @Override
+            public List<float[]> embed(List<String> texts) throws IOException, InterruptedException {
+                if (calls.incrementAndGet() == 2) {
+                    throw new IOException("HTTP 500");
+                }
+                return mockEmbedder.embed(texts);
+            }
+
+            @Override
+            public int dimensions() {
+                return 4;
+            }
+        };
+
+        IngestPipeline.Result result = pipeline(embedder).run(List.of(pdf()));
+
+        assertThat(result.failed()).isEqualTo(1);
+        assertThat(failures).containsExactly("embed: HTTP 500");
+        assertThat(writer.written).hasValue(IngestPipeline.EMBED_BATCH);
+        assertThat(writer.committed).hasValue(0);
+    }
+
+    private IngestPipeline pipeline(Embedder embedder) {
+        DocumentParser parser = (file, pages) -> {
+            for (int page = 1; page <= PAGES; page++) {
+                int number = page;
+                pages.accept(page, IntStream.range(0, LINES)
+                        .mapToObj(line -> "Seite " + number + " Zeile " + line)
+                        .collect(Collectors.joining("\n")));
+            }
+            return PAGES;
+        };
+        Sectioner sectioner = (filename, meta, sections) -> new PageSink() {
+            @Override
+            public void accept(int page, String text) {
+                sections.accept(new Section(page, page, "Kapitel " + page, text));
+            }
+
+            @Override
+            public void finish() {
+            }
+        };
+        Chunker chunker = text -> {
+            List<TextChunk> chunks = new ArrayList<>();
+            int start = 0;
+            for (String line : text.split("\n")) {
+                chunks.add(new TextChunk(line, start, start + line.length(), 4));
+                start += line.length() + 1;
+            }
+            return chunks;
+        };
+        return new IngestPipeline(new DocumentExtractor(parser, sectioner, chunker), embedder, writer,
+                new IngestPipeline.Settings(1, 1, 1, 1, false), new IngestPipeline.Listener() {
+                    @Override
+                    public void failed(Path pdf, String stage, Exception exception) {
+                        failures.add(stage + ": " + exception.getMessage());
+                    }
+                });
+    }
+
+    private Embedder counting(AtomicInteger calls) {
+        return new Embedder() {
+            @Override
+            public List<float[]> embed(List<String> texts) {
+                assertThat(texts).hasSizeLessThanOrEqualTo(IngestPipeline.EMBED_BATCH);
+                calls.incrementAndGet();
+                return mockEmbedder.embed(texts);
+            }
+
+            @Override
+            public int dimensions() {
+                return 4;
+            }
+        };
+    }
+
+    private Path pdf() throws IOException {
+        return Files.writeString(directory.resolve("VP_OP_Test_01.pdf"), "%PDF");
+    }
+
+    /** Takes the vectors like the real writer, chunk by chunk, and checks them against the chunk text. */
+    private final class RecordingWriter implements DocumentWriter {
+
+        private final AtomicInteger written = new AtomicInteger();
+        private final AtomicInteger committed = new AtomicInteger();
+        private final List<String> sectionTexts = new ArrayList<>();
+
+        @Override
+        public Map<String, KnownDocument> knownDocuments() {
+            return Map.of();
+        }
+
+        @Override
+        public Set<String> storedDigests(Collection<String> digests) {
+            List<String> all = List.copyOf(digests);
+            return IntStream.range(0, all.size()).filter(i -> i % 10 == 0).mapToObj(all::get)
+                    .collect(Collectors.toSet());
+        }
+
+        @Override
+        public int write(EmbeddedDocument document) throws IOException, InterruptedException {
+            document.document().sections().forEach(section -> sectionTexts.add(section.text()));
+            for (DocumentChunk chunk : document.document().allChunks()) {
+                if (document.isNew(chunk)) {
+                    assertThat(document.vectors().next()).containsExactly(mockEmbedder.embed(chunk.text()));
+                    written.incrementAndGet();
+                }
+            }
+            committed.incrementAndGet();
+            return 0;
+        }
+
+        @Override
+        public void touch(Collection<KnownDocument> documents) {
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+class OpenAiEmbedderTest {
+
+    private static final String TWO_VECTORS = """
+            {"data":[{"index":1,"embedding":[0.0,1.0]},{"index":0,"embedding":[1.0,0.0]}]}
+            """;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void retriesRateLimitedRequestsAfterTheAnnouncedDelay() throws Exception {
+        OpenAiEmbedder embedder = embedder(429, TWO_VECTORS);
+
+        List<float[]> vectors = embedder.embed(List.of("Hecken", "Biber"));
+
+        assertThat(vectors).hasSize(2);
+        assertThat(vectors.get(0)).containsExactly(1f, 0f);
+        assertThat(vectors.get(1)).containsExactly(0f, 1f);
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        OpenAiEmbedder embedder = embedder(400, TWO_VECTORS);
+
+        assertThatThrownBy(() -> embedder.embed(List.of("Hecken", "Biber")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("HTTP 400");
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void packsTextsIntoBatchesByTokens() {
+        List<int[]> batches = OpenAiEmbedder.pack(new int[] { 40, 30, 50, 120, 10 }, 100);
+
+        assertThat(batches).containsExactly(
+                new int[] { 0, 2, 70 },
+                new int[] { 2, 3, 50 },
+                new int[] { 3, 4, 120 },
+                new int[] { 4, 5, 10 });
+    }
+
+    @Test
+    void escapesInputsInTheRequestBody() {
+        assertThat(OpenAiEmbedder.requestBody("m", 256, List.of("a \"b\"\n\\c\u0001")))
+                .isEqualTo("{\"model\":\"m\",\"dimensions\":256,\"input\":[\"a \\\"b\\\"\\n\\\\c\\u0001\"]}");
+    }
+
+    @Test
+    void waitsForRetryAfterMilliseconds() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        OpenAiEmbedder embedder = builder(failFirst(429, "retry-after-ms", "1500")).ticker(ticker).build();
+
+        embedder.embed(List.of("Hecken", "Biber"));
+
+        // announced delay plus the largest jitter; the pause of the other requests is over by then
+        assertThat(ticker.sleeps()).containsExactly(TimeUnit.MILLISECONDS.toNanos(1500 + 249));
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void waitsForRetryAfterSeconds() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        OpenAiEmbedder embedder = builder(failFirst(503, "Retry-After", "2")).ticker(ticker).build();
+
+        embedder.embed(List.of("Hecken", "Biber"));
+
+        assertThat(ticker.sleeps()).containsExactly(TimeUnit.MILLISECONDS.toNanos(2000 + 249));
+    }
+
+    @Test
+    void backsOffExponentiallyUntilRetriesAreExhausted() {
+        FakeTicker ticker = new FakeTicker();
+        OpenAiEmbedder embedder = builder(exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 503, "{\"error\":{}}");
+        }).ticker(ticker).maxRetries(3).build();
+
+        assertThatThrownBy(() -> embedder.embed(List.of("Hecken", "Biber")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("HTTP 503");
+        assertThat(requests).hasValue(4);
+        assertThat(ticker.sleeps()).containsExactly(
+                TimeUnit.MILLISECONDS.toNanos(500),
+                TimeUnit.MILLISECONDS.toNanos(1000),
+                TimeUnit.MILLISECONDS.toNanos(2000));
+        assertThat(OpenAiEmbedder.backoffCap(30)).isEqualTo(OpenAiEmbedder.MAX_BACKOFF_MS);
+    }
+
+    @Test
+    void keepsRequestsInFlightWithinLimit() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        OpenAiEmbedder embedder = builder(exchange -> {
+            requests.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            respond(exchange, 200, "{\"data\":[{\"index\":0,\"embedding\":[1.0,0.0]}]}");
+        }).maxInFlight(2).batchTokens(1).build();
+
+        List<float[]> vectors = embedder.embed(List.of("Hecken", "Biber", "Wald", "Bach", "Moor", "Ried"));
+
+        assertThat(vectors).hasSize(6);
+        assertThat(requests).hasValue(6);
+        assertThat(maxRunning).hasValue(2);
+    }
+
+    /** The first request is answered with {@code firstStatus}, every later one with {@code body}. */
+    private OpenAiEmbedder embedder(int firstStatus, String body) {
+        return builder(exchange -> {
+            int status = requests.getAndIncrement() == 0 ? firstStatus : 200;
+            exchange.getResponseHeaders().add("retry-after-ms", "0");
+            respond(exchange, status, status == 200 ? body : "{\"error\":{}}");
+        }).build();
+    }
+
+    /** The first request fails with {@code status} and the given header, the second returns two vectors. */
+    private HttpHandler failFirst(int status, String header, String value) {
+        return exchange -> {
+            if (requests.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().add(header, value);
+                respond(exchange, status, "{\"error\":{}}");
+            } else {
+                respond(exchange, 200, TWO_VECTORS);
+            }
+        };
+    }
+
+    /** Embedder against a local server, with the largest jitter so that the waits are predictable. */
+    private OpenAiEmbedder.Builder builder(HttpHandler handler) {
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        server.createContext("/v1/embeddings", handler);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        URI endpoint = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/embeddings");
+        return OpenAiEmbedder.builder(endpoint, "test-key").dimensions(2).maxRetries(1).jitter(bound -> bound - 1);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] response = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class RateBudgetTest {
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    void refillsContinuously() throws InterruptedException {
+        RateBudget budget = new RateBudget(60, ticker);
+
+        budget.acquire(60);
+        ticker.advance(TimeUnit.SECONDS.toNanos(30));
+        budget.acquire(30);
+
+        assertThat(ticker.sleeps()).isEmpty();
+    }
+
+    @Test
+    void waitsUntilEnoughIsRefilled() throws InterruptedException {
+        RateBudget budget = new RateBudget(60, ticker);
+        budget.acquire(60);
+
+        budget.acquire(2);
+
+        assertThat(ticker.sleeps()).hasSize(1);
+        assertThat((double) ticker.sleeps().get(0))
+                .isCloseTo(TimeUnit.SECONDS.toNanos(2), Offset.offset(1e3));
+    }
+
+    @Test
+    void requestOverBudgetWaitsForFullBucket() throws InterruptedException {
+        RateBudget budget = new RateBudget(60, ticker);
+        budget.acquire(45);
+
+        budget.acquire(120);
+
+        assertThat(ticker.sleeps()).hasSize(1);
+        assertThat((double) ticker.sleeps().get(0))
+                .isCloseTo(TimeUnit.SECONDS.toNanos(45), Offset.offset(1e3));
+        assertThat(ticker.nanoTime()).isEqualTo(ticker.sleeps().get(0));
+    }
+
+    @Test
+    void rejectsEmptyBudget() {
+        assertThatThrownBy(() -> new RateBudget(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("perMinute must be positive");
+    }
+}
@@ -0,0 +1,95 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class TokenChunkerTest {
+
+    @Test
+    void keepsShortTextInOneChunk() {
+        List<TextChunk> chunks = new TokenChunker().chunk("  Die Hecke ist zu erhalten.\n\n");
+
+        assertThat(chunks).singleElement().satisfies(chunk -> {
+            assertThat(chunk.text()).isEqualTo("Die Hecke ist zu erhalten.");
+            assertThat(chunk.start()).isEqualTo(2);
+            assertThat(chunk.end()).isEqualTo(28);
+        });
+    }
+
+    @Test
+    void cutsAtParagraphsWithOverlapAndExactOffsets() {
+        String paragraph = "Der Gewässerraum ist im Zonenplan grundeigentümerverbindlich festzulegen. ";
+        String text = paragraph.repeat(2).strip() + "\n\n" + paragraph.repeat(2).strip() + "\n\n"
+                + paragraph.repeat(2).strip();
+
+        List<TextChunk> chunks = new TokenChunker(80, 20).chunk(text);
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        for (TextChunk chunk : chunks) {
+            assertThat(text.substring(chunk.start(), chunk.end())).isEqualTo(chunk.text());
+            assertThat(chunk.tokens()).isLessThanOrEqualTo(80);
+        }
+        assertThat(chunks.get(0).text()).endsWith("festzulegen.");
+        assertThat(chunks.get(chunks.size() - 1).end()).isEqualTo(text.length());
+    }
+
+    @Test
+    void overlapsConsecutiveChunksByConfiguredTokens() {
+        String text = words(300);
+
+        List<TextChunk> chunks = new TokenChunker(50, 10).chunk(text);
+
+        // windows start every 40 tokens, the last one holds the remaining 20
+        assertThat(chunks).hasSize(8);
+        for (int i = 0; i + 1 < chunks.size(); i++) {
+            List<String> tail = words(chunks.get(i)).subList(40, 50);
+            List<String> head = words(chunks.get(i + 1)).subList(0, 10);
+            assertThat(head).isEqualTo(tail);
+            String shared = text.substring(chunks.get(i + 1).start(), chunks.get(i).end());
+            assertThat(Tokens.count(shared)).isEqualTo(10);
+        }
+        assertThat(chunks).extracting(TextChunk::tokens).containsExactly(50, 50, 50, 50, 50, 50, 50, 20);
+        assertThat(chunks.get(chunks.size() - 1).end()).isEqualTo(text.length());
+    }
+
+    @Test
+    void cutsAdjacentChunksWithoutOverlap() {
+        String text = words(300);
+
+        List<TextChunk> chunks = new TokenChunker(50, 0).chunk(text);
+
+        assertThat(chunks).hasSize(6);
+        for (int i = 0; i + 1 < chunks.size(); i++) {
+            assertThat(chunks.get(i + 1).start()).isEqualTo(chunks.get(i).end() + 1);
+        }
+        assertThat(chunks.stream().mapToInt(TextChunk::tokens).sum()).isEqualTo(300);
+    }
+
+    @Test
+    void rejectsOverlapNotSmallerThanChunk() {
+        assertThatThrownBy(() -> new TokenChunker(50, 50)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenChunker(50, 80)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenChunker(50, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /** Text of {@code count} tokens: each of these words is one token, also after a space. */
+    private static String words(int count) {
+        String[] words = { "house", "water", "tree", "field", "road", "river", "town", "green", "plan", "zone",
+            "land", "rule", "wall", "roof", "park", "farm", "lake", "hill", "wood", "stone" };
+        String text = IntStream.range(0, count).mapToObj(i -> words[i % words.length])
+                .collect(Collectors.joining(" "));
+        assertThat(Tokens.count(text)).isEqualTo(count);
+        return text;
+    }
+
+    private static List<String> words(TextChunk chunk) {
+        return Arrays.asList(chunk.text().split(" "));
+    }
+}
@@ -0,0 +1,39 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class VectorCodecTest {
+
+    @Test
+    void truncatesToUnitLengthPrefix() {
+        float[] vector = { 3f, 4f, 12f };
+
+        float[] prefix = VectorCodec.truncate(vector, 2);
+
+        assertThat(prefix).containsExactly(new float[] { 0.6f, 0.8f }, Offset.offset(1e-6f));
+        assertThat(vector).containsExactly(3f, 4f, 12f);
+    }
+
+    @Test
+    void keepsZeroPrefix() {
+        assertThat(VectorCodec.truncate(new float[] { 0f, 0f, 1f }, 2)).containsExactly(0f, 0f);
+    }
+
+    @Test
+    void rejectsMoreDimensionsThanTheVectorHas() {
+        assertThatThrownBy(() -> VectorCodec.truncate(new float[3], 4))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void roundTripsLiteral() {
+        float[] vector = { 0.25f, -1f };
+
+        assertThat(VectorCodec.toLiteral(vector)).isEqualTo("[0.25,-1.0]");
+        assertThat(VectorCodec.parseLiteral(" [0.25, -1.0] ")).containsExactly(vector);
+    }
+}
@@ -0,0 +1,102 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+/**
+ * Runs against the pgvector instance started by {@code docker compose up}. The
+ * test is skipped unless {@code RAG_IT_DB_URL} points to that database, e.g.
+ * {@code jdbc:postgresql://localhost:54323/arp_rag}.
+ */
+@EnabledIfEnvironmentVariable(named = "RAG_IT_DB_URL", matches = ".+")
+class VectorIndexBuilderIntegrationTest {
+
+    private static final int CHUNKS = 200;
+
+    private Connection connection;
+    private UUID documentId;
+
+    @BeforeEach
+    void insertChunks() throws SQLException {
+        connection = PostgresDocumentWriter.connect(System.getenv("RAG_IT_DB_URL"),
+                System.getenv().getOrDefault("RAG_IT_DB_USERNAME", "gretl"),
+                System.getenv().getOrDefault("RAG_IT_DB_PASSWORD", "gretl"));
+        HalfVector.enableBinaryTransfer(connection);
+        int dimensions = VectorColumns.dimensions(connection, VectorColumns.EMBEDDING);
+        documentId = UUID.randomUUID();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO arp_rag_vp.documents (id, filename) VALUES (?, 'index-test.pdf')")) {
+            ps.setObject(1, documentId);
+            ps.execute();
+        }
+        Random random = new Random(42);
+        try (PreparedStatement ps = connection.prepareStatement("""
+                INSERT INTO arp_rag_vp.chunks (document_id, text, embedding, digest) VALUES (?, ?, ?, ?)
+                """)) {
+            for (int i = 0; i < CHUNKS; i++) {
+                float[] vector = new float[dimensions];
+                for (int d = 0; d < dimensions; d++) {
+                    vector[d] = (float) random.nextGaussian();
+                }
+                ps.setObject(1, documentId);
+                ps.setString(2, "Chunk " + i);
+                ps.setObject(3, new HalfVector(vector));
+                ps.setString(4, documentId + "-" + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @AfterEach
+    void deleteChunks() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM arp_rag_vp.documents WHERE id = ?")) {
+            ps.setObject(1, documentId);
+            ps.execute();
+        }
+        connection.close();
+    }
+
+    @Test
+    void keepsPreviousIndexWhenRecallIsBelowThreshold() throws SQLException {
+        List<String> before = embeddingIndexes();
+        // hnsw returns at most ef_search rows, so at most 10 of the 100 exact neighbours are found
+        VectorIndexBuilder.Settings settings = new VectorIndexBuilder.Settings(VectorIndexBuilder.Method.HNSW,
+                "256MB", 0, 20, 100, 10, 10, 0.5);
+
+        VectorIndexBuilder.Report report = new VectorIndexBuilder(connection).rebuild(settings);
+
+        assertThat(report.accepted()).isFalse();
+        assertThat(report.search()).isEqualTo("hnsw.ef_search=10");
+        assertThat(report.recall()).isLessThanOrEqualTo(0.1);
+        assertThat(report.replaced()).isEmpty();
+        assertThat(embeddingIndexes()).isEqualTo(before);
+    }
+
+    private List<String> embeddingIndexes() throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("""
+                SELECT indexname || ': ' || indexdef FROM pg_indexes
+                WHERE schemaname = 'arp_rag_vp' AND tablename = 'chunks' AND indexdef ~ '\\(embedding '
+                ORDER BY indexname
+                """); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                indexes.add(rs.getString(1));
+            }
+        }
+        return indexes;
+    }
+}
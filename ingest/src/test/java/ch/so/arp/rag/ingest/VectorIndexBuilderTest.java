@@ -0,0 +1,62 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class VectorIndexBuilderTest {
+
+    @Test
+    void sizesListsFromRowCount() {
+        assertThat(VectorIndexBuilder.lists(0)).isEqualTo(1);
+        assertThat(VectorIndexBuilder.lists(25_000)).isEqualTo(25);
+        assertThat(VectorIndexBuilder.lists(1_000_000)).isEqualTo(1000);
+        assertThat(VectorIndexBuilder.lists(4_000_000)).isEqualTo(2000);
+    }
+
+    @Test
+    void probesSquareRootOfLists() {
+        assertThat(VectorIndexBuilder.probes(1)).isEqualTo(1);
+        assertThat(VectorIndexBuilder.probes(100)).isEqualTo(10);
+    }
+
+    @Test
+    void buildsUnderTemporaryName() {
+        assertThat(VectorIndexBuilder.createSql(VectorIndexBuilder.Method.IVFFLAT, 25)).isEqualTo(
+                "CREATE INDEX CONCURRENTLY chunks_embedding_idx_new ON arp_rag_vp.chunks"
+                        + " USING ivfflat (embedding halfvec_cosine_ops) WITH (lists = 25)");
+        assertThat(VectorIndexBuilder.createSql(VectorIndexBuilder.Method.HNSW, 0)).isEqualTo(
+                "CREATE INDEX CONCURRENTLY chunks_embedding_idx_new ON arp_rag_vp.chunks"
+                        + " USING hnsw (embedding halfvec_cosine_ops)");
+    }
+
+    @Test
+    void measuresShareOfExactNeighboursFound() {
+        List<Set<Long>> exact = List.of(Set.of(1L, 2L, 3L, 4L), Set.of(5L, 6L, 7L, 8L));
+        List<Set<Long>> approximate = List.of(Set.of(1L, 2L, 3L, 9L), Set.of(5L, 10L));
+
+        assertThat(VectorIndexBuilder.recall(exact, approximate)).isEqualTo(0.5);
+        assertThat(VectorIndexBuilder.recall(List.of(), List.of())).isNaN();
+    }
+
+    @Test
+    void rejectsRecallBelowThreshold() {
+        assertThat(VectorIndexBuilder.accepts(0.89, 0.9)).isFalse();
+        assertThat(VectorIndexBuilder.accepts(0.9, 0.9)).isTrue();
+        assertThat(VectorIndexBuilder.accepts(0.1, 0)).isTrue();
+        // an empty table has nothing to measure
+        assertThat(VectorIndexBuilder.accepts(Double.NaN, 0.9)).isTrue();
+    }
+
+    @Test
+    void requiresSamplesForThreshold() {
+        assertThatThrownBy(() -> new VectorIndexBuilder.Settings(VectorIndexBuilder.Method.HNSW, "1GB", 2, 0, 10, 10,
+                40, 0.9)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new VectorIndexBuilder.Settings(VectorIndexBuilder.Method.HNSW, "1GB", 2, 100, 10, 10,
+                40, 1.5)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,79 @@
+package ch.so.arp.rag.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class VectorStreamTest {
+
+    @Test
+    void handsOverBatchesInOrder() throws Exception {
+        VectorStream stream = new VectorStream(1);
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            try {
+                for (int i = 0; i < 3; i++) {
+                    stream.put(List.of(new float[] { 2 * i }, new float[] { 2 * i + 1 }));
+                }
+                stream.finish();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(stream.next()).containsExactly(i);
+        }
+        producer.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(stream::next)
+                .isInstanceOf(IOException.class)
+                .hasMessage("More new chunks than vectors");
+    }
+
+    @Test
+    void keepsAtMostCapacityBatches() throws Exception {
+        VectorStream stream = new VectorStream(2);
+        assertThat(stream.put(List.of(new float[] { 1 }))).isTrue();
+        assertThat(stream.put(List.of(new float[] { 2 }))).isTrue();
+
+        CompletableFuture<Boolean> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return stream.put(List.of(new float[] { 3 }));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        });
+        Thread.sleep(200);
+        assertThat(third).isNotDone();
+
+        stream.close();
+        assertThat(third.get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    void passesEmbeddingFailureToWriter() throws Exception {
+        VectorStream stream = new VectorStream(2);
+        stream.put(List.of(new float[] { 1 }));
+        stream.fail(new IOException("HTTP 500"));
+
+        assertThat(stream.next()).containsExactly(1);
+        assertThat(stream.failed()).isTrue();
+        assertThatThrownBy(stream::next)
+                .isInstanceOf(IOException.class)
+                .hasMessage("Embedding failed: HTTP 500");
+    }
+
+    @Test
+    void streamsKnownVectors() throws Exception {
+        VectorStream stream = VectorStream.of(List.of(new float[] { 1 }));
+
+        assertThat(stream.next()).containsExactly(1);
+        assertThatThrownBy(stream::next).isInstanceOf(IOException.class);
+    }
+}
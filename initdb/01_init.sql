@@ -15,8 +15,11 @@ CREATE TABLE arp_rag_vp.documents (
   doc_date DATE,
   source_url TEXT,          -- Link zum PDF (z. B. MinIO/S3)
   pages INT,
+  content_hash TEXT,        -- SHA-256 der PDF-Datei (inkrementeller Ingest)
+  file_mtime TIMESTAMPTZ,   -- mtime der Datei beim letzten Ingest
   created_at TIMESTAMPTZ DEFAULT now()
 );
+CREATE INDEX documents_source_url_idx ON arp_rag_vp.documents (source_url);
 
 -- SOBAU-Referenzen (n:1 je Dokument, aber auch in Chunks)
 CREATE TABLE arp_rag_vp.sobau_refs (
@@ -48,17 +51,22 @@ CREATE TABLE arp_rag_vp.chunks (
   char_end INT,
   text TEXT NOT NULL,
   tsv tsvector,             -- Volltext
-  embedding halfvec(3072),   -- Dimension je nach Modell
+  embedding halfvec(3072),   -- 03_embedding_dimensions.sh passt sie an EMBEDDING_DIMENSIONS an
   municipality TEXT,
   plan_type TEXT,
   topics TEXT[],            -- {'Hecken','FFF',...}
   sobau_codes TEXT[],       -- {'82_326', ...}
   digest TEXT
+  -- embedding_short halfvec(N) legt der Ingest mit --short-dimensions=N an (EMBEDDING_SHORT_DIMENSIONS)
 );
 
 -- Indizes
 CREATE INDEX ON arp_rag_vp.chunks USING GIN (tsv);
+-- auf der leeren Tabelle ohne brauchbare Zentren: nach dem ersten Ingest mit --reindex neu aufbauen
 CREATE INDEX ON arp_rag_vp.chunks USING ivfflat (embedding halfvec_cosine_ops) WITH (lists = 200);
+-- Grobsuche auf 1 Bit je Dimension (rag.chat.retrieval.binary-candidates), danach exakte Sortierung
+CREATE INDEX chunks_embedding_binary_idx ON arp_rag_vp.chunks
+  USING hnsw ((binary_quantize(embedding)::bit(3072)) bit_hamming_ops);  -- ebenfalls
 CREATE INDEX ON arp_rag_vp.chunks (municipality, plan_type);
 CREATE INDEX ON arp_rag_vp.chunks USING GIN (topics);
 CREATE UNIQUE INDEX IF NOT EXISTS chunks_digest_uniq ON arp_rag_vp.chunks(digest);
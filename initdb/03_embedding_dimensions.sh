@@ -0,0 +1,15 @@
+#!/usr/bin/env bash
+# 01_init.sql legt embedding als halfvec(3072) an. Liefert das Modell andere Dimensionen
+# (EMBEDDING_DIMENSIONS), werden die noch leere Spalte und der Bit-Index hier angepasst.
+# Der Chat prüft beim Start, dass Spalte und Konfiguration übereinstimmen.
+# Ohne exit/set -e, weil der Einstiegspunkt nicht ausführbare Skripte per source einliest.
+if [ "${EMBEDDING_DIMENSIONS:-3072}" != "3072" ]; then
+  psql -v ON_ERROR_STOP=1 -v dims="$EMBEDDING_DIMENSIONS" \
+    --username "$POSTGRES_USER" --dbname "$POSTGRES_DB" <<'SQL'
+DROP INDEX arp_rag_vp.chunks_embedding_binary_idx;
+-- der ivfflat-Index wird dabei neu aufgebaut
+ALTER TABLE arp_rag_vp.chunks ALTER COLUMN embedding TYPE halfvec(:dims);
+CREATE INDEX chunks_embedding_binary_idx ON arp_rag_vp.chunks
+  USING hnsw ((binary_quantize(embedding)::bit(:dims)) bit_hamming_ops);
+SQL
+fi
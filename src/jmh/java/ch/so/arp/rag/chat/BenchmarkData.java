@@ -0,0 +1,49 @@
+package ch.so.arp.rag.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic texts resembling chunks and questions of the
+ * Vorprüfungsberichte, so that runs on different machines use the same input.
+ */
+final class BenchmarkData {
+
+    private static final String[] WORDS = { "Nutzungsplanung", "Fruchtfolgefläche", "Bauzone", "Gemeinde",
+            "Erschliessungsplan", "Gewässerraum", "Naturgefahren", "Zonenreglement", "Kompensation", "Vorprüfung",
+            "Ortsbild", "Wald", "Strassenlärm", "Parkierung", "Mehrwertabgabe", "Hecke", "Grundwasser", "Einzonung",
+            "Auszonung", "Richtplan" };
+
+    private BenchmarkData() {
+    }
+
+    static List<String> chunks(int count, int words) {
+        Random random = new Random(42);
+        List<String> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            chunks.add(sentence(random, words));
+        }
+        return chunks;
+    }
+
+    static List<String> questions(int count) {
+        Random random = new Random(7);
+        List<String> questions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            questions.add("Was gilt für " + sentence(random, 6) + "?");
+        }
+        return questions;
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package ch.so.arp.rag.chat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Pure Java stand-in for the vector index. All chunks are kept in one float
+ * array and scored exactly with the dot product, which equals the cosine
+ * similarity of normalised vectors. It is the baseline the database backed
+ * implementations are compared against.
+ */
+class BruteForceVectorDatabase implements VectorDatabase {
+
+    private final EmbeddingClient embeddingClient;
+    private final int dimensions;
+    private final float[] vectors;
+    private final List<String> texts;
+    private final int topK;
+
+    BruteForceVectorDatabase(EmbeddingClient embeddingClient, List<String> texts, int dimensions, int topK) {
+        this.embeddingClient = embeddingClient;
+        this.dimensions = dimensions;
+        this.texts = List.copyOf(texts);
+        this.topK = topK;
+        this.vectors = new float[texts.size() * dimensions];
+        for (int i = 0; i < texts.size(); i++) {
+            System.arraycopy(embeddingClient.embed(texts.get(i)), 0, vectors, i * dimensions, dimensions);
+        }
+    }
+
+    @Override
+    public List<String> findRelevantContext(String question) {
+        return findRelevantChunks(question, RetrievalOptions.DEFAULT).stream()
+                .map(RetrievedChunk::text)
+                .toList();
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+        int limit = options.topK() != null ? options.topK() : topK;
+        float[] query = embeddingClient.embed(question);
+        PriorityQueue<RetrievedChunk> best = new PriorityQueue<>(Comparator.comparingDouble(RetrievedChunk::score));
+        for (int row = 0; row < texts.size(); row++) {
+            double score = dot(query, row * dimensions);
+            if (best.size() < limit) {
+                best.add(new RetrievedChunk(row, texts.get(row), null, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new RetrievedChunk(row, texts.get(row), null, score));
+            }
+        }
+        List<RetrievedChunk> chunks = new ArrayList<>(best);
+        chunks.sort(Comparator.comparingDouble(RetrievedChunk::score).reversed());
+        return chunks;
+    }
+
+    private double dot(float[] query, int offset) {
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[i] * vectors[offset + i];
+        }
+        return sum;
+    }
+}
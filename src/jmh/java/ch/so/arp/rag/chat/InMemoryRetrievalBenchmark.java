@@ -0,0 +1,59 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a top-k lookup against the pure Java {@link BruteForceVectorDatabase}.
+ * Question embeddings are cached up front so that only the scan is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class InMemoryRetrievalBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int chunks;
+
+    @Param({ "3072" })
+    public int dimensions;
+
+    @Param({ "5" })
+    public int topK;
+
+    private VectorDatabase database;
+    private List<String> questions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EmbeddingClient embeddingClient = new CachingEmbeddingClient(new MockEmbeddingClient(dimensions), 100,
+                Duration.ofHours(1));
+        database = new BruteForceVectorDatabase(embeddingClient, BenchmarkData.chunks(chunks, 40), dimensions, topK);
+        questions = BenchmarkData.questions(50);
+        questions.forEach(embeddingClient::embed);
+    }
+
+    @Benchmark
+    public List<RetrievedChunk> findRelevantChunks() {
+        String question = questions.get(next++ % questions.size());
+        return database.findRelevantChunks(question, RetrievalOptions.DEFAULT);
+    }
+}
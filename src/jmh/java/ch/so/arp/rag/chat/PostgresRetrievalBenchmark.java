@@ -0,0 +1,166 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import ch.so.arp.rag.ingest.VectorCodec;
+
+/**
+ * Latency of the PostgreSQL retrieval against a local database, e.g. the one
+ * from {@code docker-compose.yml} loaded with the ingest script. The database
+ * is passed with {@code -PbenchDbUrl=...}; without it the benchmark is
+ * excluded. Question embeddings come from the cached mock client, so only the
+ * SQL round trips, or the scan of the in-memory index, are measured.
+ * <p>
+ * The recall@k of the retrieved chunks against the exact cosine ordering is
+ * reported as the secondary result {@code recall} next to the latency, e.g. to
+ * compare {@code -p mode=VECTOR -p binaryCandidates=0,50,200}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostgresRetrievalBenchmark {
+
+    @Param({ "VECTOR", "HYBRID", "IN_MEMORY" })
+    public RetrievalProperties.Mode mode;
+
+    @Param({ "10" })
+    public int probes;
+
+    @Param({ "0" })
+    public int binaryCandidates;
+
+    private HikariDataSource dataSource;
+    private ExecutorService executor;
+    private VectorDatabase database;
+    private List<String> questions;
+    private Map<String, Set<Long>> exact;
+    private int next;
+
+    /**
+     * Share of the retrieved chunks that are among the exact top k. JMH sums
+     * {@code EVENTS} counters over threads and measurement iterations, so every
+     * iteration reports its part of the mean.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Recall {
+
+        private long found;
+        private long expected;
+        private double share;
+
+        @Setup(Level.Iteration)
+        public void reset(BenchmarkParams params) {
+            found = 0;
+            expected = 0;
+            share = 1d / (params.getMeasurement().getCount() * params.getThreads());
+        }
+
+        public double recall() {
+            return expected == 0 ? 0d : share * found / expected;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String url = System.getProperty("rag.bench.db-url");
+        if (url == null) {
+            throw new IllegalStateException("System property 'rag.bench.db-url' is required");
+        }
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(System.getProperty("rag.bench.db-username"));
+        dataSource.setPassword(System.getProperty("rag.bench.db-password"));
+        dataSource.setMaximumPoolSize(5);
+        NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        EmbeddingClient embeddingClient = new CachingEmbeddingClient(new MockEmbeddingClient(), 100,
+                Duration.ofHours(1));
+        RetrievalProperties properties = new RetrievalProperties();
+        properties.setProbes(probes);
+        properties.setBinaryCandidates(binaryCandidates);
+        VectorDatabase vectorSearch = new PostgresVectorDatabase(jdbcTemplate, embeddingClient, properties);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        database = switch (mode) {
+            case VECTOR -> vectorSearch;
+            case HYBRID -> new HybridVectorDatabase(vectorSearch,
+                    new PostgresFullTextDatabase(jdbcTemplate, properties), executor, properties);
+            case IN_MEMORY -> {
+                InMemoryVectorDatabase inMemory = new InMemoryVectorDatabase(dataSource, embeddingClient, properties);
+                inMemory.start();
+                yield inMemory;
+            }
+        };
+        questions = BenchmarkData.questions(50);
+        questions.forEach(embeddingClient::embed);
+        exact = exactNeighbours(jdbcTemplate, embeddingClient, properties.getTopK());
+    }
+
+    private Map<String, Set<Long>> exactNeighbours(NamedParameterJdbcTemplate jdbcTemplate,
+            EmbeddingClient embeddingClient, int topK) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        Map<String, Set<Long>> neighbours = new HashMap<>();
+        for (String question : questions) {
+            neighbours.put(question, new HashSet<>(transaction.execute(status -> {
+                // no index scan: the sequential scan ranks every chunk by its exact distance
+                jdbcTemplate.queryForObject("SELECT set_config('enable_indexscan', 'off', true)", Map.of(),
+                        String.class);
+                return jdbcTemplate.queryForList("""
+                        SELECT id FROM arp_rag_vp.chunks
+                        WHERE embedding IS NOT NULL
+                        ORDER BY embedding <=> CAST(:embedding AS halfvec)
+                        LIMIT :limit
+                        """, Map.of("embedding", VectorCodec.toLiteral(embeddingClient.embed(question)),
+                        "limit", topK), Long.class);
+            })));
+        }
+        return neighbours;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public List<RetrievedChunk> findRelevantChunks(Recall recall) {
+        String question = questions.get(next++ % questions.size());
+        List<RetrievedChunk> chunks = database.findRelevantChunks(question, RetrievalOptions.DEFAULT);
+        Set<Long> neighbours = exact.get(question);
+        recall.expected += neighbours.size();
+        recall.found += chunks.stream().filter(chunk -> neighbours.contains(chunk.id())).count();
+        return chunks;
+    }
+}
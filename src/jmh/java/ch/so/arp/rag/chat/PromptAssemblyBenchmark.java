@@ -0,0 +1,62 @@
+package ch.so.arp.rag.chat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of turning the question and the retrieved chunks into the request body
+ * of the chat completion, and of the context handling of {@link MockLlmClient}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+
+    @Param({ "5", "20", "50" })
+    public int contextChunks;
+
+    @Param({ "250" })
+    public int wordsPerChunk;
+
+    private OpenAiLlmClient openAiClient;
+    private MockLlmClient mockClient;
+    private List<String> context;
+    private String question;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OpenAiClientProperties properties = new OpenAiClientProperties();
+        properties.setApiKey("benchmark");
+        openAiClient = new OpenAiLlmClient(properties);
+        mockClient = new MockLlmClient();
+        context = BenchmarkData.chunks(contextChunks, wordsPerChunk);
+        question = BenchmarkData.questions(1).get(0);
+    }
+
+    @Benchmark
+    public String openAiRequestBody() {
+        return openAiClient.buildRequestBody(question, context);
+    }
+
+    @Benchmark
+    public void mockStreamChat(Blackhole blackhole) {
+        mockClient.streamChat(question, context, blackhole::consume);
+    }
+}
@@ -0,0 +1,98 @@
+package ch.so.arp.rag.chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Write path of {@link ChatController}: a question answered by
+ * {@link MockLlmClient} is pushed through the token sink into an emitter that
+ * renders every SSE frame to bytes, with and without coalescing. The answer is
+ * split into words so that the number of tokens is close to a real model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseEmissionBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean coalescing;
+
+    @Param({ "5", "20" })
+    public int contextChunks;
+
+    private ScheduledExecutorService flushScheduler;
+    private ChatController controller;
+    private ChatRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockLlmClient mockClient = new MockLlmClient();
+        LlmClient wordByWord = (question, context, tokenConsumer) -> mockClient.streamChat(question, context,
+                token -> {
+                    for (String word : token.split("(?<= )")) {
+                        tokenConsumer.accept(word);
+                    }
+                });
+        List<String> context = BenchmarkData.chunks(contextChunks, 40);
+        VectorDatabase vectorDatabase = question -> context;
+        ChatService chatService = new ChatService(wordByWord, vectorDatabase, Runnable::run);
+        StreamingProperties properties = new StreamingProperties();
+        properties.setCoalescing(coalescing);
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().factory());
+        controller = new ChatController(chatService, RenderingSseEmitter::new, properties, flushScheduler, null,
+                new AdmissionProperties());
+        request = new ChatRequest(BenchmarkData.questions(1).get(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        flushScheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public long chat() {
+        RenderingSseEmitter emitter = (RenderingSseEmitter) controller.chat(request, null);
+        return emitter.bytes;
+    }
+
+    /**
+     * Emitter rendering the frames like the servlet response would, without
+     * writing them anywhere.
+     */
+    static final class RenderingSseEmitter extends SseEmitter {
+
+        private long bytes;
+
+        RenderingSseEmitter() {
+            super(0L);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (DataWithMediaType data : builder.build()) {
+                bytes += data.getData().toString().getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+    }
+}
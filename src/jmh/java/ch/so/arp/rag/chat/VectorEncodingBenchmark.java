@@ -0,0 +1,57 @@
+package ch.so.arp.rag.chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.so.arp.rag.ingest.HalfVector;
+import ch.so.arp.rag.ingest.VectorCodec;
+
+/**
+ * Client side cost of binding an embedding: the text literal parsed by the
+ * server versus the binary {@code halfvec} wire format of {@link HalfVector}.
+ * The returned lengths show the number of bytes sent per vector.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorEncodingBenchmark {
+
+    @Param({ "3072" })
+    public int dimensions;
+
+    private float[] embedding;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        embedding = new MockEmbeddingClient(dimensions).embed("Gewässerraum");
+    }
+
+    @Benchmark
+    public int textLiteral() {
+        return VectorCodec.toLiteral(embedding).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Benchmark
+    public int binaryHalfVector() {
+        HalfVector vector = new HalfVector(embedding);
+        byte[] bytes = new byte[vector.lengthInBytes()];
+        vector.toBytes(bytes, 0);
+        return bytes.length;
+    }
+}
@@ -0,0 +1,166 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Limits the number of chat requests running at the same time. A fair
+ * semaphore caps the requests globally, a per client counter keeps a single
+ * client from taking all slots, and at most {@code maxQueued} requests wait for
+ * a slot, each for at most {@code maxWait}. Everything beyond that is rejected
+ * right away, so a load spike leads to fast rejections instead of every request
+ * queueing on the connection pool and the rate limit of the model.
+ */
+class AdmissionController implements MeterBinder {
+
+    /**
+     * Permit used when no admission controller is configured.
+     */
+    static final Permit NO_LIMIT = () -> {
+    };
+
+    private final int maxConcurrent;
+    private final Semaphore slots;
+    private final int maxPerClient;
+    private final int maxQueued;
+    private final Duration maxWait;
+    private final Map<String, Integer> activePerClient = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong clientLimitRejections = new AtomicLong();
+    private final AtomicLong queueFullRejections = new AtomicLong();
+    private final AtomicLong timeoutRejections = new AtomicLong();
+
+    AdmissionController(AdmissionProperties properties) {
+        this(properties.getMaxConcurrent(), properties.getMaxPerClient(), properties.getMaxQueued(),
+                properties.getMaxWait());
+    }
+
+    AdmissionController(int maxConcurrent, int maxPerClient, int maxQueued, Duration maxWait) {
+        if (maxConcurrent < 1 || maxPerClient < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Admission limits must be positive");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.maxPerClient = maxPerClient;
+        this.maxQueued = maxQueued;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Admit a request of the given client, waiting for a free slot if needed.
+     *
+     * @param clientKey identifies the client the request belongs to
+     * @return the permit that must be closed once the request is done
+     * @throws AdmissionRejectedException if the request is not admitted
+     */
+    Permit admit(String clientKey) {
+        if (!enterClient(clientKey)) {
+            clientLimitRejections.incrementAndGet();
+            throw new AdmissionRejectedException("Too many concurrent requests for this client");
+        }
+        try {
+            acquireSlot();
+        } catch (RuntimeException ex) {
+            leaveClient(clientKey);
+            throw ex;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+                leaveClient(clientKey);
+            }
+        };
+    }
+
+    private void acquireSlot() {
+        if (slots.tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            queueFullRejections.incrementAndGet();
+            throw new AdmissionRejectedException("Service is busy, please retry later");
+        }
+        try {
+            if (!slots.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                timeoutRejections.incrementAndGet();
+                throw new AdmissionRejectedException("Service is busy, please retry later");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AdmissionRejectedException("Interrupted while waiting for admission");
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private boolean enterClient(String clientKey) {
+        AtomicBoolean entered = new AtomicBoolean();
+        activePerClient.compute(clientKey, (key, active) -> {
+            int current = active != null ? active : 0;
+            if (current >= maxPerClient) {
+                return active;
+            }
+            entered.set(true);
+            return current + 1;
+        });
+        return entered.get();
+    }
+
+    private void leaveClient(String clientKey) {
+        activePerClient.computeIfPresent(clientKey, (key, active) -> active > 1 ? active - 1 : null);
+    }
+
+    int activeRequests() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    int queuedRequests() {
+        return queued.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rag.chat.admission.active", this, AdmissionController::activeRequests)
+                .description("Chat requests currently running")
+                .register(registry);
+        Gauge.builder("rag.chat.admission.queued", this, AdmissionController::queuedRequests)
+                .description("Chat requests waiting for a free slot")
+                .register(registry);
+        FunctionCounter.builder("rag.chat.admission.rejections", clientLimitRejections, AtomicLong::get)
+                .tag("reason", "client_limit")
+                .description("Chat requests rejected because the client is at its limit")
+                .register(registry);
+        FunctionCounter.builder("rag.chat.admission.rejections", queueFullRejections, AtomicLong::get)
+                .tag("reason", "queue_full")
+                .description("Chat requests rejected because the wait queue is full")
+                .register(registry);
+        FunctionCounter.builder("rag.chat.admission.rejections", timeoutRejections, AtomicLong::get)
+                .tag("reason", "timeout")
+                .description("Chat requests rejected because no slot became free in time")
+                .register(registry);
+    }
+
+    /**
+     * Slot held by an admitted request. Closing it more than once has no
+     * effect.
+     */
+    @FunctionalInterface
+    interface Permit extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,98 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties of the {@link AdmissionController} limiting how
+ * many chat requests run at the same time.
+ */
+@ConfigurationProperties(prefix = "rag.chat.admission")
+public class AdmissionProperties {
+
+    /**
+     * Whether chat requests pass the admission controller. When disabled every
+     * request starts immediately.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Number of chat requests that may run at the same time. Should be sized
+     * with the connection pool and the rate limit of the model in mind.
+     */
+    private int maxConcurrent = 10;
+
+    /**
+     * Number of chat requests a single client may run at the same time.
+     * Further requests of that client are rejected without waiting.
+     */
+    private int maxPerClient = 2;
+
+    /**
+     * Number of requests that may wait for a free slot. Requests arriving when
+     * the queue is full are rejected immediately.
+     */
+    private int maxQueued = 50;
+
+    /**
+     * Maximum time a request waits for a free slot before it is rejected.
+     */
+    private Duration maxWait = Duration.ofSeconds(3);
+
+    /**
+     * Request header identifying the client, e.g. {@code X-Client-Key}. Empty by
+     * default, so clients are keyed by their remote address. Only set it if a
+     * trusted proxy sets the header: a client choosing its own key can rotate it
+     * to get around {@link #getMaxPerClient() max-per-client}.
+     */
+    private String clientKeyHeader = "";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public int getMaxPerClient() {
+        return maxPerClient;
+    }
+
+    public void setMaxPerClient(int maxPerClient) {
+        this.maxPerClient = maxPerClient;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public String getClientKeyHeader() {
+        return clientKeyHeader;
+    }
+
+    public void setClientKeyHeader(String clientKeyHeader) {
+        this.clientKeyHeader = clientKeyHeader;
+    }
+}
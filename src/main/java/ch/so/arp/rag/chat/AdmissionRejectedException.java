@@ -0,0 +1,12 @@
+package ch.so.arp.rag.chat;
+
+/**
+ * Signals that a chat request was not admitted because the service is at its
+ * concurrency limit.
+ */
+class AdmissionRejectedException extends RuntimeException {
+
+    AdmissionRejectedException(String message) {
+        super(message);
+    }
+}
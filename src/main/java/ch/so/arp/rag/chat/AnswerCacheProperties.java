@@ -0,0 +1,64 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties of the {@link SemanticAnswerCache}.
+ */
+@ConfigurationProperties(prefix = "rag.chat.answer-cache")
+public class AnswerCacheProperties {
+
+    /**
+     * Whether generated answers should be replayed for near duplicate questions.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum cosine distance between two questions that share an answer.
+     */
+    private double maxDistance = 0.05;
+
+    /**
+     * Maximum number of distinct chunk sets with cached answers.
+     */
+    private int maxSize = 500;
+
+    /**
+     * Time after which a cached answer is generated again.
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getMaxDistance() {
+        return maxDistance;
+    }
+
+    public void setMaxDistance(double maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+}
@@ -0,0 +1,126 @@
+package ch.so.arp.rag.chat;
+
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import ch.so.arp.rag.ingest.VectorCodec;
+
+/**
+ * {@link EmbeddingClient} decorator keeping recently computed question
+ * embeddings in memory. Questions are looked up by a normalised key (lower
+ * case, without accents, collapsed whitespace) so that trivially different
+ * spellings of the same question share an entry. Entries are stored as half
+ * precision values and evicted in least recently used order once
+ * {@code maxSize} is reached or after {@code ttl} has passed.
+ */
+class CachingEmbeddingClient implements EmbeddingClient, MeterBinder {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingClient delegate;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    CachingEmbeddingClient(EmbeddingClient delegate, int maxSize, Duration ttl) {
+        this(delegate, maxSize, ttl, Clock.systemUTC());
+    }
+
+    CachingEmbeddingClient(EmbeddingClient delegate, int maxSize, Duration ttl, Clock clock) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.ttl = Objects.requireNonNull(ttl, "ttl");
+        this.clock = Objects.requireNonNull(clock, "clock");
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String key = normalize(text);
+        Instant now = clock.instant();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt().isAfter(now)) {
+                hits.incrementAndGet();
+                return VectorCodec.decode(entry.vector());
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        float[] vector = delegate.embed(text);
+        synchronized (entries) {
+            entries.put(key, new Entry(VectorCodec.encode(vector), now.plus(ttl)));
+        }
+        return vector;
+    }
+
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String unaccented = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return WHITESPACE.matcher(unaccented.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rag.embedding.cache.gets", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .description("Question embeddings served from the cache")
+                .register(registry);
+        FunctionCounter.builder("rag.embedding.cache.gets", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .description("Question embeddings computed by the embedding model")
+                .register(registry);
+        FunctionCounter.builder("rag.embedding.cache.evictions", evictions, AtomicLong::get)
+                .description("Entries removed because of size or age")
+                .register(registry);
+        Gauge.builder("rag.embedding.cache.size", this, CachingEmbeddingClient::size)
+                .description("Number of cached question embeddings")
+                .register(registry);
+        Gauge.builder("rag.embedding.cache.hit.ratio", this, CachingEmbeddingClient::hitRatio)
+                .description("Share of lookups served from the cache")
+                .register(registry);
+    }
+
+    private double hitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0d : (double) hitCount / total;
+    }
+
+    private record Entry(short[] vector, Instant expiresAt) {
+    }
+}
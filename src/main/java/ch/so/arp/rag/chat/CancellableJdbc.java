@@ -0,0 +1,84 @@
+package ch.so.arp.rag.chat;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * Binds the JDBC statements of a single request to its
+ * {@link CancellationToken}. Cancelling the token calls
+ * {@link Statement#cancel()} on every statement created through the returned
+ * template, so PostgreSQL stops a running query instead of finishing work for a
+ * client that is gone.
+ * <p>
+ * The callback is removed once the statement has finished, successfully or
+ * with an {@link SQLException}, where {@link JdbcTemplate} handles its
+ * warnings. A finished statement is never cancelled: the cancel request of the
+ * driver goes to the connection, which may already run another query.
+ */
+final class CancellableJdbc {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CancellableJdbc.class);
+
+    private CancellableJdbc() {
+    }
+
+    static NamedParameterJdbcTemplate bind(NamedParameterJdbcTemplate jdbcTemplate,
+            CancellationToken cancellation) {
+        if (!cancellation.isCancellable()) {
+            return jdbcTemplate;
+        }
+        JdbcTemplate source = jdbcTemplate.getJdbcTemplate();
+        DataSource dataSource = source.getDataSource();
+        Map<Statement, CancellationToken.Registration> running = new ConcurrentHashMap<>();
+        JdbcTemplate template = new JdbcTemplate(dataSource) {
+            @Override
+            protected void applyStatementSettings(Statement statement) throws SQLException {
+                super.applyStatementSettings(statement);
+                running.put(statement, cancellation.onCancel(() -> cancelQuietly(statement)));
+            }
+
+            @Override
+            protected void handleWarnings(Statement statement) throws SQLException {
+                finished(statement);
+                super.handleWarnings(statement);
+            }
+
+            @Override
+            protected void handleWarnings(Statement statement, SQLException ex) {
+                finished(statement);
+                super.handleWarnings(statement, ex);
+            }
+
+            private void finished(Statement statement) {
+                CancellationToken.Registration registration = running.remove(statement);
+                if (registration != null) {
+                    registration.close();
+                }
+            }
+        };
+        template.setQueryTimeout(source.getQueryTimeout());
+        template.setFetchSize(source.getFetchSize());
+        template.setMaxRows(source.getMaxRows());
+        return new NamedParameterJdbcTemplate(template);
+    }
+
+    private static void cancelQuietly(Statement statement) {
+        try {
+            // a row mapper that threw skips handleWarnings, but the statement is closed by then
+            if (!statement.isClosed()) {
+                statement.cancel();
+            }
+        } catch (SQLException ex) {
+            LOGGER.debug("Unable to cancel statement: {}", ex.getMessage());
+        }
+    }
+}
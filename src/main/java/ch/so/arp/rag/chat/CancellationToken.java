@@ -0,0 +1,111 @@
+package ch.so.arp.rag.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handle to an in-flight chat request. Cancelling it runs the registered
+ * callbacks, which interrupt the pieces of work that do not watch the flag
+ * themselves, e.g. a running JDBC statement or the HTTP stream from the model.
+ */
+public final class CancellationToken {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CancellationToken.class);
+
+    /**
+     * Token that is never cancelled, used where no caller can abort the work.
+     */
+    static final CancellationToken NONE = new CancellationToken(false);
+
+    private final boolean cancellable;
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * Cancel the request. Subsequent calls have no effect.
+     */
+    public void cancel() {
+        if (!cancellable) {
+            return;
+        }
+        List<Runnable> pending;
+        synchronized (callbacks) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            pending = List.copyOf(callbacks);
+            callbacks.clear();
+        }
+        for (Runnable callback : pending) {
+            try {
+                callback.run();
+            } catch (RuntimeException ex) {
+                LOGGER.debug("Cancellation callback failed: {}", ex.getMessage(), ex);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean isCancellable() {
+        return cancellable;
+    }
+
+    /**
+     * Register a callback that is run when the token gets cancelled. If the
+     * token already is cancelled, the callback runs immediately.
+     *
+     * @param callback the action aborting a piece of work
+     * @return registration that removes the callback once the work is done
+     */
+    Registration onCancel(Runnable callback) {
+        if (!cancellable) {
+            return () -> {
+            };
+        }
+        synchronized (callbacks) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (callbacks) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+        callback.run();
+        return () -> {
+        };
+    }
+
+    void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Chat request was cancelled");
+        }
+    }
+
+    /**
+     * Removes a callback registered with {@link #onCancel(Runnable)}.
+     */
+    @FunctionalInterface
+    interface Registration extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -1,8 +1,13 @@
 package ch.so.arp.rag.chat;
 
+import java.io.IOException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -10,12 +15,20 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import ch.so.arp.rag.ingest.EmbeddingCache;
+
 /**
  * Central configuration wiring the chat components together. It exposes toggles
  * that decide whether mocked or real infrastructure components should be used.
  */
 @Configuration
-@EnableConfigurationProperties(OpenAiClientProperties.class)
+@EnableConfigurationProperties({ OpenAiClientProperties.class, RetrievalProperties.class,
+        EmbeddingCacheProperties.class, AnswerCacheProperties.class, StreamingProperties.class,
+        AdmissionProperties.class, RerankProperties.class })
 public class ChatConfiguration {
 
     @Bean
@@ -24,6 +37,11 @@ public class ChatConfiguration {
         return Executors.newVirtualThreadPerTaskExecutor();
     }
 
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService sseFlushScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("sse-flush").daemon().factory());
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public SseEmitterFactory sseEmitterFactory() {
@@ -42,15 +60,145 @@ public class ChatConfiguration {
         return new OpenAiLlmClient(properties);
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "rag.chat.mock-openai", havingValue = "true", matchIfMissing = true)
+    public EmbeddingClient mockEmbeddingClient(OpenAiClientProperties properties,
+            EmbeddingCacheProperties cacheProperties) {
+        // the same vectors as the ingest with --no-openai
+        return withCache(new MockEmbeddingClient(properties.getEmbeddingDimensions()), cacheProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rag.chat.mock-openai", havingValue = "false")
+    public EmbeddingClient openAiEmbeddingClient(OpenAiClientProperties properties,
+            EmbeddingCacheProperties cacheProperties, ObjectProvider<EmbeddingCache> diskCache) {
+        EmbeddingClient client = new OpenAiEmbeddingClient(properties);
+        EmbeddingCache cache = diskCache.getIfAvailable();
+        if (cache != null) {
+            client = new PersistentEmbeddingClient(client, cache);
+        }
+        return withCache(client, cacheProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rag.chat.mock-openai", havingValue = "false")
+    @ConditionalOnProperty(name = "rag.chat.embedding-cache.directory")
+    public EmbeddingCache diskEmbeddingCache(OpenAiClientProperties properties,
+            EmbeddingCacheProperties cacheProperties) throws IOException {
+        return EmbeddingCache.open(cacheProperties.getDirectory(), properties.getEmbeddingModel(),
+                properties.getEmbeddingDimensions());
+    }
+
+    @Bean
+    public MeterBinder embeddingCacheMetrics(EmbeddingClient embeddingClient) {
+        return registry -> {
+            if (embeddingClient instanceof CachingEmbeddingClient cachingClient) {
+                cachingClient.bindTo(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder diskEmbeddingCacheMetrics(ObjectProvider<EmbeddingCache> diskCache) {
+        return registry -> diskCache.ifAvailable(cache -> {
+            FunctionCounter.builder("rag.embedding.disk-cache.gets", cache, EmbeddingCache::hits)
+                    .tag("result", "hit")
+                    .description("Embeddings served from the on-disk cache")
+                    .register(registry);
+            FunctionCounter.builder("rag.embedding.disk-cache.gets", cache, EmbeddingCache::misses)
+                    .tag("result", "miss")
+                    .description("Embeddings not found in the on-disk cache")
+                    .register(registry);
+            Gauge.builder("rag.embedding.disk-cache.size", cache, EmbeddingCache::size)
+                    .description("Number of embeddings in the on-disk cache")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rag.chat.answer-cache.enabled", havingValue = "true")
+    public SemanticAnswerCache semanticAnswerCache(EmbeddingClient embeddingClient, AnswerCacheProperties properties) {
+        return new SemanticAnswerCache(embeddingClient, properties.getMaxDistance(), properties.getMaxSize(),
+                properties.getTtl());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rag.chat.admission.enabled", havingValue = "true", matchIfMissing = true)
+    public AdmissionController admissionController(AdmissionProperties properties) {
+        return new AdmissionController(properties);
+    }
+
     @Bean
     @ConditionalOnProperty(name = "rag.chat.mock-vector-store", havingValue = "true", matchIfMissing = true)
     public VectorDatabase mockVectorDatabase() {
         return new MockVectorDatabase();
     }
 
+    /**
+     * Runs the two legs of the hybrid search. Not a default candidate, so that
+     * {@link #chatExecutor()} is still the one injected by type.
+     */
+    @Bean(destroyMethod = "close", defaultCandidate = false)
+    @ConditionalOnProperty(name = "rag.chat.mock-vector-store", havingValue = "false")
+    public ExecutorService retrievalExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("retrieval-", 0).factory());
+    }
+
+    /**
+     * Runs the reranker within its deadline, see {@link #retrievalExecutor()}.
+     */
+    @Bean(destroyMethod = "close", defaultCandidate = false)
+    @ConditionalOnProperty(name = "rag.chat.mock-vector-store", havingValue = "false")
+    public ExecutorService rerankExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rerank-", 0).factory());
+    }
+
     @Bean
     @ConditionalOnProperty(name = "rag.chat.mock-vector-store", havingValue = "false")
-    public VectorDatabase postgresVectorDatabase(NamedParameterJdbcTemplate jdbcTemplate) {
-        return new PostgresVectorDatabase(jdbcTemplate);
+    public VectorDatabase postgresVectorDatabase(NamedParameterJdbcTemplate jdbcTemplate,
+            EmbeddingClient embeddingClient, OpenAiClientProperties openAiProperties, RetrievalProperties properties,
+            RerankProperties rerankProperties, ObjectProvider<Reranker> reranker,
+            @Qualifier("retrievalExecutor") ExecutorService retrievalExecutor,
+            @Qualifier("rerankExecutor") ExecutorService rerankExecutor) {
+        PostgresVectorDatabase vectorSearch = new PostgresVectorDatabase(jdbcTemplate, embeddingClient, properties);
+        vectorSearch.checkDimensions(openAiProperties.getEmbeddingDimensions());
+        VectorDatabase database = switch (properties.getMode()) {
+            case VECTOR -> vectorSearch;
+            case HYBRID -> new HybridVectorDatabase(vectorSearch,
+                    new PostgresFullTextDatabase(jdbcTemplate, properties), retrievalExecutor, properties);
+            case IN_MEMORY -> {
+                InMemoryVectorDatabase inMemory = new InMemoryVectorDatabase(
+                        jdbcTemplate.getJdbcTemplate().getDataSource(), embeddingClient, properties);
+                inMemory.start();
+                yield inMemory;
+            }
+        };
+        if (!rerankProperties.isEnabled()) {
+            return database;
+        }
+        return new RerankingVectorDatabase(database, reranker.getObject(), rerankExecutor, properties,
+                rerankProperties);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public Reranker lexicalReranker(RetrievalProperties properties) {
+        return new LexicalReranker(properties.getRrfK());
+    }
+
+    @Bean
+    public MeterBinder rerankMetrics(ObjectProvider<VectorDatabase> vectorDatabase) {
+        return registry -> vectorDatabase.ifAvailable(database -> {
+            if (database instanceof RerankingVectorDatabase reranking) {
+                reranking.bindTo(registry);
+            }
+        });
+    }
+
+    private static EmbeddingClient withCache(EmbeddingClient embeddingClient, EmbeddingCacheProperties properties) {
+        if (!properties.isEnabled()) {
+            return embeddingClient;
+        }
+        return new CachingEmbeddingClient(embeddingClient, properties.getMaxSize(), properties.getTtl());
     }
 }
@@ -1,10 +1,14 @@
 package ch.so.arp.rag.chat;
 
 import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -12,8 +16,23 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+
 /**
  * REST endpoint exposing the chat functionality via server sent events.
+ * Depending on {@link StreamingProperties} the tokens are either written one
+ * by one or coalesced into larger frames. When the emitter completes, times
+ * out or fails, e.g. because the client disconnected, the in-flight work of
+ * the request is cancelled.
+ * <p>
+ * If an {@link AdmissionController} is configured, every request has to be
+ * admitted before it starts. Waiting for a free slot happens on the request
+ * thread, which is bounded by the size of the admission queue. Rejected
+ * requests receive a single SSE {@code error} event and the stream is closed.
+ * The slot is released when the worker of the request has ended, not when the
+ * client disconnects, since cancellation only takes effect once the running
+ * call notices it.
  */
 @RestController
 @RequestMapping(path = "/api/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
@@ -24,28 +43,60 @@ public class ChatController {
 
     private final ChatService chatService;
     private final SseEmitterFactory emitterFactory;
+    private final StreamingProperties streamingProperties;
+    private final ScheduledExecutorService flushScheduler;
+    private final AdmissionController admission;
+    private final String clientKeyHeader;
 
     public ChatController(ChatService chatService, SseEmitterFactory emitterFactory) {
+        this(chatService, emitterFactory, StreamingProperties.passThrough(), null);
+    }
+
+    public ChatController(ChatService chatService, SseEmitterFactory emitterFactory,
+            StreamingProperties streamingProperties, ScheduledExecutorService sseFlushScheduler) {
+        this(chatService, emitterFactory, streamingProperties, sseFlushScheduler, null, new AdmissionProperties());
+    }
+
+    @Autowired
+    public ChatController(ChatService chatService, SseEmitterFactory emitterFactory,
+            StreamingProperties streamingProperties, ScheduledExecutorService sseFlushScheduler,
+            @Nullable AdmissionController admission, AdmissionProperties admissionProperties) {
         this.chatService = chatService;
         this.emitterFactory = emitterFactory;
+        this.streamingProperties = streamingProperties;
+        this.flushScheduler = sseFlushScheduler;
+        this.admission = admission;
+        this.clientKeyHeader = admissionProperties.getClientKeyHeader();
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public SseEmitter chat(@RequestBody ChatRequest request) {
+    public SseEmitter chat(@Valid @RequestBody ChatRequest request, HttpServletRequest servletRequest) {
         SseEmitter emitter = emitterFactory.create();
-        chatService.streamAnswer(request.question(), new ChatService.StreamingResponseHandler() {
+        AdmissionController.Permit permit;
+        try {
+            permit = admission != null ? admission.admit(clientKey(servletRequest)) : AdmissionController.NO_LIMIT;
+        } catch (AdmissionRejectedException ex) {
+            reject(emitter, ex);
+            return emitter;
+        }
+        TokenSink sink = streamingProperties.isCoalescing()
+                ? new CoalescingTokenSink(emitter, streamingProperties, flushScheduler)
+                : new DirectTokenSink(emitter);
+        RetrievalOptions options = request.retrievalOptions();
+        ChatService.StreamingResponseHandler handler = new ChatService.StreamingResponseHandler() {
             @Override
             public void onToken(String token) {
-                try {
-                    emitter.send(token);
-                } catch (IOException ex) {
-                    LOGGER.warn("Unable to stream token: {}", token, ex);
-                    emitter.completeWithError(ex);
-                }
+                sink.accept(token);
             }
 
             @Override
             public void onComplete() {
+                try {
+                    sink.close();
+                } catch (RuntimeException ex) {
+                    emitter.completeWithError(ex);
+                    return;
+                }
                 emitter.complete();
             }
 
@@ -53,7 +104,38 @@ public class ChatController {
             public void onError(Throwable throwable) {
                 emitter.completeWithError(throwable);
             }
-        });
+
+            @Override
+            public void onFinished() {
+                // not on cancel: the worker may still hold a connection or wait for the model
+                permit.close();
+            }
+        };
+        CancellationToken cancellation;
+        try {
+            cancellation = chatService.streamAnswer(request.question(), options, handler);
+        } catch (RuntimeException ex) {
+            permit.close();
+            throw ex;
+        }
+        emitter.onCompletion(cancellation::cancel);
+        emitter.onTimeout(cancellation::cancel);
+        emitter.onError(throwable -> cancellation.cancel());
         return emitter;
     }
+
+    private String clientKey(HttpServletRequest servletRequest) {
+        String clientKey = StringUtils.hasText(clientKeyHeader) ? servletRequest.getHeader(clientKeyHeader) : null;
+        return StringUtils.hasText(clientKey) ? clientKey.strip() : servletRequest.getRemoteAddr();
+    }
+
+    private static void reject(SseEmitter emitter, AdmissionRejectedException rejection) {
+        LOGGER.debug("Chat request rejected: {}", rejection.getMessage());
+        try {
+            emitter.send(SseEmitter.event().name("error").data(rejection.getMessage()));
+            emitter.complete();
+        } catch (IOException ex) {
+            emitter.completeWithError(ex);
+        }
+    }
 }
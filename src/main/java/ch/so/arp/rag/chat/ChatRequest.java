@@ -1,9 +1,24 @@
 package ch.so.arp.rag.chat;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 
 /**
- * Incoming payload for chat requests.
+ * Incoming payload for chat requests. Besides the question a client may tune
+ * the number of retrieved chunks and the number of probed ivfflat lists, and
+ * restrict the retrieval with a metadata filter. Values that are not positive
+ * are rejected with 400; values above {@code rag.chat.retrieval.max-top-k}
+ * are clamped by {@link RetrievalProperties}.
  */
-public record ChatRequest(@NotBlank String question) {
+public record ChatRequest(@NotBlank String question, @Positive Integer topK, @Positive Integer probes,
+        @Valid RetrievalFilter filter) {
+
+    public ChatRequest(String question) {
+        this(question, null, null, null);
+    }
+
+    RetrievalOptions retrievalOptions() {
+        return new RetrievalOptions(topK, probes, filter);
+    }
 }
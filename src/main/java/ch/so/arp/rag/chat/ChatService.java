@@ -1,16 +1,26 @@
 package ch.so.arp.rag.chat;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 /**
  * Coordinates the retrieval of context from the vector database and delegates
- * the answer generation to the large language model integration.
+ * the answer generation to the large language model integration. If a
+ * {@link SemanticAnswerCache} is configured, answers to near duplicate
+ * questions are replayed from the cache instead of being generated again.
+ * <p>
+ * Every request returns a {@link CancellationToken}. Cancelling it stops the
+ * retrieval and the generation, e.g. when the client closed the connection.
  */
 @Service
 public class ChatService {
@@ -20,25 +30,84 @@ public class ChatService {
     private final LlmClient llmClient;
     private final VectorDatabase vectorDatabase;
     private final Executor chatExecutor;
+    private final SemanticAnswerCache answerCache;
 
     public ChatService(LlmClient llmClient, VectorDatabase vectorDatabase, Executor chatExecutor) {
+        this(llmClient, vectorDatabase, chatExecutor, null);
+    }
+
+    @Autowired
+    public ChatService(LlmClient llmClient, VectorDatabase vectorDatabase, Executor chatExecutor,
+            @Nullable SemanticAnswerCache answerCache) {
         this.llmClient = Objects.requireNonNull(llmClient, "llmClient");
         this.vectorDatabase = Objects.requireNonNull(vectorDatabase, "vectorDatabase");
         this.chatExecutor = Objects.requireNonNull(chatExecutor, "chatExecutor");
+        this.answerCache = answerCache;
+    }
+
+    public CancellationToken streamAnswer(String question, StreamingResponseHandler handler) {
+        return streamAnswer(question, RetrievalOptions.DEFAULT, handler);
     }
 
-    public void streamAnswer(String question, StreamingResponseHandler handler) {
+    public CancellationToken streamAnswer(String question, RetrievalOptions options,
+            StreamingResponseHandler handler) {
+        Objects.requireNonNull(options, "options");
         Objects.requireNonNull(handler, "handler");
+        CancellationToken cancellation = new CancellationToken();
         chatExecutor.execute(() -> {
             try {
-                List<String> context = vectorDatabase.findRelevantContext(question);
-                llmClient.streamChat(question, context, handler::onToken);
-                handler.onComplete();
-            } catch (Exception ex) {
-                LOGGER.error("Failed to produce response for question '{}': {}", question, ex.getMessage(), ex);
-                handler.onError(ex);
+                answer(question, options, handler, cancellation);
+            } finally {
+                handler.onFinished();
             }
         });
+        return cancellation;
+    }
+
+    private void answer(String question, RetrievalOptions options, StreamingResponseHandler handler,
+            CancellationToken cancellation) {
+        try {
+            cancellation.throwIfCancelled();
+            List<RetrievedChunk> chunks = vectorDatabase.findRelevantChunks(question, options, cancellation);
+            cancellation.throwIfCancelled();
+            Optional<List<String>> cached = answerCache != null
+                    ? answerCache.find(question, chunks)
+                    : Optional.empty();
+            if (cached.isPresent()) {
+                LOGGER.debug("Replaying cached answer for question '{}'", question);
+                for (String token : cached.get()) {
+                    cancellation.throwIfCancelled();
+                    handler.onToken(token);
+                }
+            } else {
+                generate(question, chunks, handler, cancellation);
+            }
+            handler.onComplete();
+        } catch (Exception ex) {
+            if (cancellation.isCancelled() || ex instanceof CancellationException) {
+                cancellation.cancel();
+                LOGGER.debug("Response for question '{}' cancelled", question);
+                return;
+            }
+            LOGGER.error("Failed to produce response for question '{}': {}", question, ex.getMessage(), ex);
+            handler.onError(ex);
+        }
+    }
+
+    private void generate(String question, List<RetrievedChunk> chunks, StreamingResponseHandler handler,
+            CancellationToken cancellation) {
+        List<String> context = chunks.stream().map(RetrievedChunk::text).toList();
+        if (answerCache == null) {
+            llmClient.streamChat(question, context, handler::onToken, cancellation);
+            return;
+        }
+        List<String> tokens = new ArrayList<>();
+        llmClient.streamChat(question, context, token -> {
+            tokens.add(token);
+            handler.onToken(token);
+        }, cancellation);
+        cancellation.throwIfCancelled();
+        answerCache.store(question, chunks, tokens);
     }
 
     /**
@@ -51,5 +120,13 @@ public class ChatService {
         void onComplete();
 
         void onError(Throwable throwable);
+
+        /**
+         * Called last, once the worker has really ended: after {@link #onComplete()} or
+         * {@link #onError(Throwable)}, and also after a cancellation, which only takes effect when the
+         * running call notices it. Resources held for the request are released here.
+         */
+        default void onFinished() {
+        }
     }
 }
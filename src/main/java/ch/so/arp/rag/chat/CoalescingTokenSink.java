@@ -0,0 +1,196 @@
+package ch.so.arp.rag.chat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * {@link TokenSink} collecting tokens into larger SSE frames. The buffer is
+ * flushed once it holds {@code maxBytes}, when a token ends a sentence, or at
+ * the latest {@code maxLatency} after the first buffered token. Frames are
+ * written by a virtual thread so the producer never waits for the network;
+ * while a write is in progress further tokens accumulate in the buffer.
+ * <p>
+ * Buffered and in flight bytes are bounded by {@code maxPendingBytes}. If a
+ * client does not keep up, the producer is either blocked until the client
+ * caught up or the stream is aborted, depending on the configured
+ * {@link StreamingProperties.SlowClientPolicy}.
+ */
+class CoalescingTokenSink implements TokenSink {
+
+    private final SseEmitter emitter;
+    private final StreamingProperties properties;
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
+    private final StringBuilder buffer = new StringBuilder();
+    private int bufferedBytes;
+    private int inFlightBytes;
+    private boolean sending;
+    private ScheduledFuture<?> scheduledFlush;
+    private RuntimeException failure;
+
+    CoalescingTokenSink(SseEmitter emitter, StreamingProperties properties, ScheduledExecutorService scheduler) {
+        this.emitter = emitter;
+        this.properties = properties;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void accept(String token) {
+        lock.lock();
+        try {
+            throwIfFailed();
+            buffer.append(token);
+            bufferedBytes += utf8Length(token);
+            if (bufferedBytes >= properties.getMaxBytes()
+                    || (properties.isFlushOnSentenceEnd() && endsSentence(token))) {
+                startSendingLocked();
+            } else if (scheduledFlush == null && !sending) {
+                scheduledFlush = scheduler.schedule(this::flush, properties.getMaxLatency().toNanos(),
+                        TimeUnit.NANOSECONDS);
+            }
+            awaitCapacityLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            startSendingLocked();
+            while (sending && failure == null) {
+                progress.awaitUninterruptibly();
+            }
+            throwIfFailed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() {
+        lock.lock();
+        try {
+            scheduledFlush = null;
+            startSendingLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startSendingLocked() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (!sending && buffer.length() > 0 && failure == null) {
+            sending = true;
+            Thread.ofVirtual().name("sse-send").start(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            String frame;
+            lock.lock();
+            try {
+                if (buffer.length() == 0 || failure != null) {
+                    sending = false;
+                    progress.signalAll();
+                    return;
+                }
+                frame = buffer.toString();
+                buffer.setLength(0);
+                inFlightBytes = bufferedBytes;
+                bufferedBytes = 0;
+            } finally {
+                lock.unlock();
+            }
+            RuntimeException sendFailure = null;
+            try {
+                emitter.send(frame);
+            } catch (IOException ex) {
+                sendFailure = new UncheckedIOException("Client stopped reading the stream", ex);
+            } catch (RuntimeException ex) {
+                sendFailure = ex;
+            }
+            lock.lock();
+            try {
+                inFlightBytes = 0;
+                if (sendFailure != null && failure == null) {
+                    failure = sendFailure;
+                }
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void awaitCapacityLocked() {
+        long remaining = properties.getSlowClientTimeout().toNanos();
+        while (failure == null && bufferedBytes + inFlightBytes > properties.getMaxPendingBytes()) {
+            startSendingLocked();
+            if (properties.getSlowClientPolicy() == StreamingProperties.SlowClientPolicy.DISCONNECT
+                    || remaining <= 0) {
+                failure = new SlowClientException("Client did not keep up with "
+                        + (bufferedBytes + inFlightBytes) + " pending bytes");
+                buffer.setLength(0);
+                bufferedBytes = 0;
+                break;
+            }
+            try {
+                remaining = progress.awaitNanos(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failure = new SlowClientException("Interrupted while waiting for a slow client");
+            }
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    static boolean endsSentence(String token) {
+        for (int i = token.length() - 1; i >= 0; i--) {
+            char c = token.charAt(i);
+            if (c == '\n') {
+                return true;
+            }
+            if (!Character.isWhitespace(c)) {
+                return c == '.' || c == '!' || c == '?' || c == ':';
+            }
+        }
+        return false;
+    }
+
+    static int utf8Length(String token) {
+        int bytes = 0;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,45 @@
+package ch.so.arp.rag.chat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * {@link TokenSink} writing every token as its own SSE frame. The first failed
+ * write completes the emitter and aborts the generation, so a client that went
+ * away does not produce one warning per remaining token.
+ */
+class DirectTokenSink implements TokenSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectTokenSink.class);
+
+    private final SseEmitter emitter;
+    private UncheckedIOException failure;
+
+    DirectTokenSink(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void accept(String token) {
+        if (failure != null) {
+            throw failure;
+        }
+        try {
+            emitter.send(token);
+        } catch (IOException ex) {
+            LOGGER.debug("Client stopped reading the stream: {}", ex.getMessage());
+            failure = new UncheckedIOException("Client stopped reading the stream", ex);
+            emitter.completeWithError(ex);
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing buffered
+    }
+}
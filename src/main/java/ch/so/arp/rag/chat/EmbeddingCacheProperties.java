@@ -0,0 +1,68 @@
+package ch.so.arp.rag.chat;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties of the in-process question embedding cache.
+ */
+@ConfigurationProperties(prefix = "rag.chat.embedding-cache")
+public class EmbeddingCacheProperties {
+
+    /**
+     * Whether question embeddings should be cached.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of cached embeddings. One 3072 dimensional entry takes
+     * about 6 KB.
+     */
+    private int maxSize = 2000;
+
+    /**
+     * Time after which a cached embedding is computed again.
+     */
+    private Duration ttl = Duration.ofHours(12);
+
+    /**
+     * Directory of the persistent embedding cache shared with the ingest
+     * script. Question embeddings stored there survive restarts. Only used
+     * for the OpenAI client; not set means no persistent cache.
+     */
+    private Path directory;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+}
@@ -0,0 +1,16 @@
+package ch.so.arp.rag.chat;
+
+/**
+ * Abstraction over the embedding model. Implementations turn a piece of text
+ * into the vector representation that is stored in {@code arp_rag_vp.chunks}.
+ */
+public interface EmbeddingClient {
+
+    /**
+     * Compute the embedding for the given text.
+     *
+     * @param text the text that should be embedded
+     * @return the embedding vector
+     */
+    float[] embed(String text);
+}
@@ -0,0 +1,81 @@
+package ch.so.arp.rag.chat;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link VectorDatabase} combining an approximate nearest neighbour search with
+ * a full text search. Both legs run concurrently on the given executor so that
+ * the latency is close to the slower of the two queries, and their rankings
+ * are merged with {@link ReciprocalRankFusion}. The legs share a token that
+ * follows the cancellation token of the request and is also cancelled as
+ * soon as one leg fails.
+ */
+class HybridVectorDatabase implements VectorDatabase {
+
+    private final VectorDatabase vectorSearch;
+    private final VectorDatabase fullTextSearch;
+    private final Executor executor;
+    private final RetrievalProperties properties;
+
+    HybridVectorDatabase(VectorDatabase vectorSearch, VectorDatabase fullTextSearch, Executor executor,
+            RetrievalProperties properties) {
+        this.vectorSearch = Objects.requireNonNull(vectorSearch, "vectorSearch");
+        this.fullTextSearch = Objects.requireNonNull(fullTextSearch, "fullTextSearch");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.properties = Objects.requireNonNull(properties, "properties");
+    }
+
+    @Override
+    public List<String> findRelevantContext(String question) {
+        return findRelevantChunks(question, RetrievalOptions.DEFAULT).stream()
+                .map(RetrievedChunk::text)
+                .toList();
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+        return findRelevantChunks(question, options, CancellationToken.NONE);
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options,
+            CancellationToken cancellation) {
+        int topK = properties.resolveTopK(options);
+        RetrievalOptions candidateOptions = options.withTopK(Math.max(topK, properties.getHybridCandidates()));
+        CancellationToken legs = new CancellationToken();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (CancellationToken.Registration registration = cancellation.onCancel(legs::cancel)) {
+            CompletableFuture<List<RetrievedChunk>> vectorHits = leg(vectorSearch, question, candidateOptions,
+                    legs, failure);
+            CompletableFuture<List<RetrievedChunk>> fullTextHits = leg(fullTextSearch, question, candidateOptions,
+                    legs, failure);
+            return ReciprocalRankFusion.fuse(List.of(vectorHits.join(), fullTextHits.join()),
+                    properties.getRrfK(), topK);
+        } catch (CompletionException ex) {
+            // the other leg usually fails only because it was cancelled, report the failure that caused it
+            if (failure.get() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs one leg; if it fails, the other leg is cancelled instead of being waited for.
+     */
+    private CompletableFuture<List<RetrievedChunk>> leg(VectorDatabase database, String question,
+            RetrievalOptions options, CancellationToken legs, AtomicReference<Throwable> failure) {
+        return CompletableFuture.supplyAsync(() -> database.findRelevantChunks(question, options, legs), executor)
+                .whenComplete((chunks, ex) -> {
+                    if (ex != null) {
+                        failure.compareAndSet(null, ex instanceof CompletionException ? ex.getCause() : ex);
+                        legs.cancel();
+                    }
+                });
+    }
+}
@@ -0,0 +1,160 @@
+package ch.so.arp.rag.chat;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ch.so.arp.rag.ingest.HalfVector;
+import ch.so.arp.rag.ingest.VectorCodec;
+
+/**
+ * {@link VectorDatabase} answering from an {@link InMemoryVectorIndex} of
+ * {@code arp_rag_vp.chunks}. PostgreSQL stays the source of truth: the index
+ * is loaded once by {@link #reload()} and, if
+ * {@link RetrievalProperties#getInMemoryRefresh()} is set, rebuilt in the
+ * background and swapped in atomically. A question then needs no database
+ * connection at all.
+ */
+class InMemoryVectorDatabase implements VectorDatabase, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryVectorDatabase.class);
+
+    static final String LOAD_SQL = """
+            SELECT c.id, c.text, c.digest, c.embedding, c.municipality, c.plan_type,
+                   c.topics, c.sobau_codes, d.doc_date
+            FROM arp_rag_vp.chunks c
+            LEFT JOIN arp_rag_vp.documents d ON d.id = c.document_id
+            WHERE c.embedding IS NOT NULL
+            ORDER BY c.id
+            """;
+
+    private static final int FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EmbeddingClient embeddingClient;
+    private final RetrievalProperties properties;
+    private volatile InMemoryVectorIndex index = InMemoryVectorIndex.EMPTY;
+    private ScheduledExecutorService refresher;
+
+    InMemoryVectorDatabase(DataSource dataSource, EmbeddingClient embeddingClient, RetrievalProperties properties) {
+        Objects.requireNonNull(dataSource, "dataSource");
+        this.embeddingClient = Objects.requireNonNull(embeddingClient, "embeddingClient");
+        this.properties = Objects.requireNonNull(properties, "properties");
+        // a cursor instead of the whole result set: the rows are only held as int8
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Load the index and schedule the refresh.
+     */
+    void start() {
+        reload();
+        Duration refresh = properties.getInMemoryRefresh();
+        if (refresh != null && refresh.isPositive()) {
+            refresher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("vector-index-refresh").daemon().factory());
+            refresher.scheduleWithFixedDelay(this::refresh, refresh.toMillis(), refresh.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Rebuild the index from the database and swap it in. Lookups continue on
+     * the previous index while loading.
+     */
+    void reload() {
+        long started = System.nanoTime();
+        InMemoryVectorIndex.Builder builder = new InMemoryVectorIndex.Builder();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(LOAD_SQL);
+            HalfVector.enableBinaryReceive(statement);
+            return statement;
+        }, rs -> {
+            builder.add(rs.getLong("id"), rs.getString("text"), rs.getString("digest"),
+                    embedding(rs, "embedding"), rs.getString("municipality"), rs.getString("plan_type"),
+                    strings(rs, "topics"), strings(rs, "sobau_codes"), date(rs, "doc_date"));
+        }));
+        InMemoryVectorIndex loaded = builder.build();
+        index = loaded;
+        LOGGER.info("Loaded {} chunks with {} dimensions into the in-memory vector index in {} ms",
+                loaded.size(), loaded.dimensions(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    @Override
+    public List<String> findRelevantContext(String question) {
+        return findRelevantChunks(question, RetrievalOptions.DEFAULT).stream()
+                .map(RetrievedChunk::text)
+                .toList();
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+        float[] query = embeddingClient.embed(question);
+        return index.search(query, properties.resolveTopK(options), options.filter());
+    }
+
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    private void refresh() {
+        try {
+            reload();
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Could not refresh the in-memory vector index, keeping the previous one: {}",
+                    ex.getMessage());
+        }
+    }
+
+    private static float[] embedding(ResultSet rs, String column) throws SQLException {
+        Object value = rs.getObject(column);
+        // the text literal only arrives when the driver could not switch to binary
+        return value instanceof HalfVector vector ? vector.toArray() : VectorCodec.parseLiteral(rs.getString(column));
+    }
+
+    private static List<String> strings(ResultSet rs, String column) throws SQLException {
+        Array array = rs.getArray(column);
+        if (array == null) {
+            return List.of();
+        }
+        try {
+            return Arrays.asList((String[]) array.getArray());
+        } finally {
+            array.free();
+        }
+    }
+
+    private static LocalDate date(ResultSet rs, String column) throws SQLException {
+        Date date = rs.getDate(column);
+        return date != null ? date.toLocalDate() : null;
+    }
+}
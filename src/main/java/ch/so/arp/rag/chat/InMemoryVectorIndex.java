@@ -0,0 +1,255 @@
+package ch.so.arp.rag.chat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-process copy of the chunk embeddings. All vectors are quantized
+ * to int8 with one scale per row and stored row by row in a single contiguous
+ * array, so a lookup is one linear scan with {@link Int8Dot}. The scale also
+ * holds the inverse norm of the row, which makes the int8 dot product an
+ * estimate of the cosine similarity that {@link PostgresVectorDatabase} ranks
+ * by.
+ * <p>
+ * Metadata filters are answered from bitmaps: one {@link BitSet} per
+ * municipality, plan type, topic and SOBAU code, and the document date of
+ * every row for date ranges.
+ */
+final class InMemoryVectorIndex {
+
+    static final InMemoryVectorIndex EMPTY = new Builder().build();
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final int size;
+    private final int dimensions;
+    private final byte[] matrix;
+    private final float[] scales;
+    private final long[] ids;
+    private final String[] texts;
+    private final String[] digests;
+    private final int[] docDates;
+    private final Map<String, BitSet> municipalities;
+    private final Map<String, BitSet> planTypes;
+    private final Map<String, BitSet> topics;
+    private final Map<String, BitSet> sobauCodes;
+
+    private InMemoryVectorIndex(Builder builder) {
+        this.size = builder.size;
+        this.dimensions = builder.dimensions;
+        // the matrix is the bulk of the memory: only copied if the builder grew beyond the rows
+        this.matrix = builder.matrix.length == size * dimensions
+                ? builder.matrix
+                : Arrays.copyOf(builder.matrix, size * dimensions);
+        this.scales = Arrays.copyOf(builder.scales, size);
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.texts = Arrays.copyOf(builder.texts, size);
+        this.digests = Arrays.copyOf(builder.digests, size);
+        this.docDates = Arrays.copyOf(builder.docDates, size);
+        this.municipalities = Map.copyOf(builder.municipalities);
+        this.planTypes = Map.copyOf(builder.planTypes);
+        this.topics = Map.copyOf(builder.topics);
+        this.sobauCodes = Map.copyOf(builder.sobauCodes);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * The {@code topK} rows most similar to {@code query} among the rows matching {@code filter}.
+     *
+     * @throws IllegalArgumentException if the query does not have the dimensions of the index
+     */
+    List<RetrievedChunk> search(float[] query, int topK, RetrievalFilter filter) {
+        if (size == 0) {
+            return List.of();
+        }
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Query has " + query.length + " dimensions but the index holds " + dimensions);
+        }
+        BitSet rows = filter.isEmpty() ? null : matching(filter);
+        if (rows != null && rows.isEmpty()) {
+            return List.of();
+        }
+        byte[] quantized = new byte[dimensions];
+        float queryScale = quantize(query, quantized, 0);
+
+        // best rows so far, ordered by descending score
+        int limit = Math.min(topK, rows != null ? rows.cardinality() : size);
+        int[] bestRows = new int[limit];
+        float[] bestScores = new float[limit];
+        int found = 0;
+        for (int row = rows != null ? rows.nextSetBit(0) : 0; row >= 0 && row < size;
+                row = rows != null ? rows.nextSetBit(row + 1) : row + 1) {
+            float score = Int8Dot.dot(matrix, row * dimensions, quantized, dimensions) * scales[row] * queryScale;
+            if (found == limit && score <= bestScores[limit - 1]) {
+                continue;
+            }
+            int at = found < limit ? found++ : limit - 1;
+            while (at > 0 && bestScores[at - 1] < score) {
+                bestScores[at] = bestScores[at - 1];
+                bestRows[at] = bestRows[at - 1];
+                at--;
+            }
+            bestScores[at] = score;
+            bestRows[at] = row;
+        }
+        List<RetrievedChunk> chunks = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int row = bestRows[i];
+            chunks.add(new RetrievedChunk(ids[row], texts[row], digests[row], bestScores[i]));
+        }
+        return chunks;
+    }
+
+    /** Rows matching all criteria of the filter; list criteria match any of their values. */
+    BitSet matching(RetrievalFilter filter) {
+        BitSet rows = new BitSet(size);
+        rows.set(0, size);
+        if (filter.municipality() != null) {
+            rows.and(lookup(municipalities, filter.municipality()));
+        }
+        if (filter.planType() != null) {
+            rows.and(lookup(planTypes, filter.planType()));
+        }
+        if (!filter.topics().isEmpty()) {
+            rows.and(anyOf(topics, filter.topics()));
+        }
+        if (!filter.sobauCodes().isEmpty()) {
+            rows.and(anyOf(sobauCodes, filter.sobauCodes()));
+        }
+        if (filter.docDateFrom() != null || filter.docDateTo() != null) {
+            // like the SQL comparison, a document without date never matches a range
+            long from = filter.docDateFrom() != null ? filter.docDateFrom().toEpochDay() : Long.MIN_VALUE;
+            long to = filter.docDateTo() != null ? filter.docDateTo().toEpochDay() : Long.MAX_VALUE;
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                if (docDates[row] == NO_DATE || docDates[row] < from || docDates[row] > to) {
+                    rows.clear(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static BitSet lookup(Map<String, BitSet> bitmaps, String value) {
+        BitSet rows = bitmaps.get(value);
+        return rows != null ? rows : new BitSet();
+    }
+
+    private static BitSet anyOf(Map<String, BitSet> bitmaps, List<String> values) {
+        BitSet rows = new BitSet();
+        for (String value : values) {
+            rows.or(lookup(bitmaps, value));
+        }
+        return rows;
+    }
+
+    /**
+     * Quantize {@code vector} symmetrically to int8 into {@code target}.
+     *
+     * @return the factor that turns a dot product of the int8 values into the
+     *         cosine, {@code 0} for the zero vector
+     */
+    static float quantize(float[] vector, byte[] target, int offset) {
+        float max = 0f;
+        double norm = 0d;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+            norm += (double) value * value;
+        }
+        if (max == 0f) {
+            Arrays.fill(target, offset, offset + vector.length, (byte) 0);
+            return 0f;
+        }
+        float step = max / 127f;
+        for (int i = 0; i < vector.length; i++) {
+            target[offset + i] = (byte) Math.round(vector[i] / step);
+        }
+        return (float) (step / Math.sqrt(norm));
+    }
+
+    /**
+     * Collects the rows of an index. The first vector fixes the dimensions.
+     */
+    static final class Builder {
+
+        private int size;
+        private int dimensions;
+        private byte[] matrix = new byte[0];
+        private float[] scales = new float[0];
+        private long[] ids = new long[0];
+        private String[] texts = new String[0];
+        private String[] digests = new String[0];
+        private int[] docDates = new int[0];
+        private final Map<String, BitSet> municipalities = new HashMap<>();
+        private final Map<String, BitSet> planTypes = new HashMap<>();
+        private final Map<String, BitSet> topics = new HashMap<>();
+        private final Map<String, BitSet> sobauCodes = new HashMap<>();
+
+        /**
+         * Add a chunk.
+         *
+         * @throws IllegalArgumentException if the embedding has other dimensions than the rows before
+         */
+        Builder add(long id, String text, String digest, float[] embedding, String municipality, String planType,
+                List<String> chunkTopics, List<String> chunkSobauCodes, LocalDate docDate) {
+            if (size == 0) {
+                dimensions = embedding.length;
+            } else if (embedding.length != dimensions) {
+                throw new IllegalArgumentException("Chunk " + id + " has " + embedding.length
+                        + " dimensions but the index holds " + dimensions);
+            }
+            if (size == ids.length) {
+                grow();
+            }
+            int row = size++;
+            scales[row] = quantize(embedding, matrix, row * dimensions);
+            ids[row] = id;
+            texts[row] = text;
+            digests[row] = digest;
+            docDates[row] = docDate != null ? (int) docDate.toEpochDay() : NO_DATE;
+            mark(municipalities, municipality, row);
+            mark(planTypes, planType, row);
+            chunkTopics.forEach(topic -> mark(topics, topic, row));
+            chunkSobauCodes.forEach(code -> mark(sobauCodes, code, row));
+            return this;
+        }
+
+        InMemoryVectorIndex build() {
+            return new InMemoryVectorIndex(this);
+        }
+
+        private void grow() {
+            int capacity = Math.max(1024, ids.length * 2);
+            if ((long) capacity * dimensions > Integer.MAX_VALUE - 8) {
+                capacity = (Integer.MAX_VALUE - 8) / dimensions;
+                if (capacity <= size) {
+                    throw new IllegalStateException("Too many chunks for an in-memory index: " + size);
+                }
+            }
+            matrix = Arrays.copyOf(matrix, capacity * dimensions);
+            scales = Arrays.copyOf(scales, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            digests = Arrays.copyOf(digests, capacity);
+            docDates = Arrays.copyOf(docDates, capacity);
+        }
+
+        private static void mark(Map<String, BitSet> bitmaps, String value, int row) {
+            if (value != null) {
+                bitmaps.computeIfAbsent(value, key -> new BitSet()).set(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ch.so.arp.rag.chat;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Dot product of int8 vectors. With the {@code jdk.incubator.vector} module
+ * resolved ({@code --add-modules jdk.incubator.vector}) the bytes are widened to
+ * int lanes of the preferred vector size and multiplied with SIMD
+ * instructions; otherwise a scalar loop is used, so the application still
+ * starts without the flag.
+ */
+final class Int8Dot {
+
+    static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private Int8Dot() {
+    }
+
+    /**
+     * @param row the matrix holding the row
+     * @param offset start of the row in {@code row}
+     * @param query the query, {@code length} values starting at 0
+     * @param length number of dimensions
+     */
+    static int dot(byte[] row, int offset, byte[] query, int length) {
+        return SIMD ? Simd.dot(row, offset, query, length) : scalar(row, offset, query, length, 0);
+    }
+
+    static int scalar(byte[] row, int offset, byte[] query, int length, int from) {
+        int sum = 0;
+        for (int i = from; i < length; i++) {
+            sum += row[offset + i] * query[i];
+        }
+        return sum;
+    }
+
+    /** Only loaded if the module is present. */
+    private static final class Simd {
+
+        private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+        // at least 64 bits of bytes; with 128 bit int vectors a load is widened in two parts
+        private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class,
+                VectorShape.forBitSize(Math.max(64, INTS.length() * Byte.SIZE)));
+        private static final int PARTS = BYTES.length() / INTS.length();
+
+        static int dot(byte[] row, int offset, byte[] query, int length) {
+            IntVector sum = IntVector.zero(INTS);
+            int bound = BYTES.loopBound(length);
+            int i = 0;
+            for (; i < bound; i += BYTES.length()) {
+                ByteVector r = ByteVector.fromArray(BYTES, row, offset + i);
+                ByteVector q = ByteVector.fromArray(BYTES, query, i);
+                for (int part = 0; part < PARTS; part++) {
+                    IntVector ri = (IntVector) r.castShape(INTS, part);
+                    IntVector qi = (IntVector) q.castShape(INTS, part);
+                    sum = sum.add(ri.mul(qi));
+                }
+            }
+            return sum.reduceLanes(VectorOperators.ADD) + scalar(row, offset, query, length, i);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ch.so.arp.rag.chat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * {@link Reranker} scoring the candidates with BM25 against the question. The
+ * document frequencies are taken from the candidates themselves, so no index
+ * is needed. Terms are lower cased and unaccented like the cache keys of
+ * {@link CachingEmbeddingClient}, and a few German suffixes are cut so that
+ * e.g. "Fruchtfolgeflächen" matches "Fruchtfolgefläche".
+ * <p>
+ * A lexical score alone would discard what the embedding got right, so the
+ * BM25 ranking is fused with the order of the first stage by
+ * {@link ReciprocalRankFusion}. Chunks sharing exact terms with the question,
+ * like SOBAU numbers or place names, move up.
+ */
+final class LexicalReranker implements Reranker {
+
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+
+    private static final Pattern TERM_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String[] SUFFIXES = { "ungen", "ung", "en", "er", "es", "e", "n", "s" };
+    private static final int MIN_STEM = 4;
+    private static final Set<String> STOP_WORDS = Set.of("der", "die", "das", "den", "dem", "des", "ein", "eine",
+            "einer", "eines", "einem", "einen", "und", "oder", "ist", "sind", "wird", "werden", "was", "wie", "wer",
+            "wo", "welche", "welcher", "gilt", "gelten", "fur", "mit", "von", "zu", "zum", "zur", "im", "in", "an",
+            "am", "auf", "aus", "bei", "nach", "uber", "unter", "nicht", "auch", "es", "sich", "als", "dass", "kann",
+            "konnen", "muss", "mussen", "ich", "wir", "sie", "er");
+
+    private final int rrfK;
+
+    LexicalReranker(int rrfK) {
+        this.rrfK = rrfK;
+    }
+
+    @Override
+    public List<RetrievedChunk> rerank(String question, List<RetrievedChunk> candidates,
+            CancellationToken cancellation) {
+        Set<String> queryTerms = new LinkedHashSet<>(terms(question));
+        if (queryTerms.isEmpty() || candidates.size() < 2) {
+            return candidates;
+        }
+        List<Map<String, Integer>> frequencies = new ArrayList<>(candidates.size());
+        int[] lengths = new int[candidates.size()];
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        long totalLength = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            cancellation.throwIfCancelled();
+            List<String> terms = terms(candidates.get(i).text());
+            Map<String, Integer> frequency = new HashMap<>();
+            for (String term : terms) {
+                if (queryTerms.contains(term)) {
+                    frequency.merge(term, 1, Integer::sum);
+                }
+            }
+            frequency.keySet().forEach(term -> documentFrequencies.merge(term, 1, Integer::sum));
+            frequencies.add(frequency);
+            lengths[i] = terms.size();
+            totalLength += terms.size();
+        }
+        double averageLength = Math.max(1d, (double) totalLength / candidates.size());
+
+        List<RetrievedChunk> lexical = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            cancellation.throwIfCancelled();
+            double score = 0d;
+            for (Map.Entry<String, Integer> entry : frequencies.get(i).entrySet()) {
+                int documentFrequency = documentFrequencies.get(entry.getKey());
+                double idf = Math.log(1d + (candidates.size() - documentFrequency + 0.5d) / (documentFrequency + 0.5d));
+                double tf = entry.getValue();
+                score += idf * tf * (K1 + 1d) / (tf + K1 * (1d - B + B * lengths[i] / averageLength));
+            }
+            if (score > 0d) {
+                RetrievedChunk chunk = candidates.get(i);
+                lexical.add(new RetrievedChunk(chunk.id(), chunk.text(), chunk.digest(), score));
+            }
+        }
+        // chunks without a common term keep only their rank of the first stage
+        lexical.sort(Comparator.comparingDouble(RetrievedChunk::score).reversed());
+        return ReciprocalRankFusion.fuse(List.of(candidates, lexical), rrfK, candidates.size());
+    }
+
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String token : TERM_SEPARATOR.split(CachingEmbeddingClient.normalize(text))) {
+            if (!token.isEmpty() && !STOP_WORDS.contains(token)) {
+                terms.add(stem(token));
+            }
+        }
+        return terms;
+    }
+
+    private static String stem(String term) {
+        for (String suffix : SUFFIXES) {
+            if (term.length() - suffix.length() >= MIN_STEM && term.endsWith(suffix)) {
+                return term.substring(0, term.length() - suffix.length());
+            }
+        }
+        return term;
+    }
+}
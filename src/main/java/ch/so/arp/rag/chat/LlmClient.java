@@ -17,4 +17,20 @@ public interface LlmClient {
      * @param tokenConsumer callback invoked for every generated token
      */
     void streamChat(String question, List<String> context, Consumer<String> tokenConsumer);
+
+    /**
+     * Stream answer tokens and stop as soon as the request gets cancelled.
+     *
+     * @param question the user question
+     * @param context relevant context retrieved from the vector store
+     * @param tokenConsumer callback invoked for every generated token
+     * @param cancellation token of the chat request
+     */
+    default void streamChat(String question, List<String> context, Consumer<String> tokenConsumer,
+            CancellationToken cancellation) {
+        streamChat(question, context, token -> {
+            cancellation.throwIfCancelled();
+            tokenConsumer.accept(token);
+        });
+    }
 }
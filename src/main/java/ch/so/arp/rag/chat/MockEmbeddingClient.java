@@ -0,0 +1,28 @@
+package ch.so.arp.rag.chat;
+
+import ch.so.arp.rag.ingest.MockEmbedder;
+
+/**
+ * Deterministic {@link EmbeddingClient} mirroring the {@code --no-openai} mode
+ * of the ingest command. Identical texts yield identical unit vectors so that a
+ * database filled with dummy embeddings can still be queried locally.
+ */
+class MockEmbeddingClient implements EmbeddingClient {
+
+    static final int DEFAULT_DIMENSIONS = MockEmbedder.DEFAULT_DIMENSIONS;
+
+    private final MockEmbedder embedder;
+
+    MockEmbeddingClient() {
+        this(DEFAULT_DIMENSIONS);
+    }
+
+    MockEmbeddingClient(int dimensions) {
+        this.embedder = new MockEmbedder(dimensions);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return embedder.embed(text);
+    }
+}
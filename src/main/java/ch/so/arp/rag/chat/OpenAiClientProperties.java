@@ -26,6 +26,16 @@ public class OpenAiClientProperties implements EnvironmentAware {
      */
     private String model = "gpt-4o-mini";
 
+    /**
+     * Name of the embedding model. Must match the model used during ingest.
+     */
+    private String embeddingModel = "text-embedding-3-large";
+
+    /**
+     * Number of dimensions returned by the embedding model.
+     */
+    private int embeddingDimensions = 3072;
+
     private Environment environment;
 
     public String getApiKey() {
@@ -55,6 +65,22 @@ public class OpenAiClientProperties implements EnvironmentAware {
         this.model = model;
     }
 
+    public String getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    public void setEmbeddingModel(String embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    public int getEmbeddingDimensions() {
+        return embeddingDimensions;
+    }
+
+    public void setEmbeddingDimensions(int embeddingDimensions) {
+        this.embeddingDimensions = embeddingDimensions;
+    }
+
     @Override
     public void setEnvironment(Environment environment) {
         this.environment = environment;
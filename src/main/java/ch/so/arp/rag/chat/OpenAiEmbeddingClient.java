@@ -0,0 +1,51 @@
+package ch.so.arp.rag.chat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+
+import org.springframework.util.StringUtils;
+
+import ch.so.arp.rag.ingest.OpenAiEmbedder;
+
+/**
+ * {@link EmbeddingClient} calling the {@code /embeddings} endpoint of an
+ * OpenAI compatible API through the {@link OpenAiEmbedder} of the ingest. The
+ * model must match the one used during ingest, otherwise question and chunk
+ * vectors are not comparable. A question is retried at most twice so that a
+ * rate limited API does not hold the request for long.
+ */
+class OpenAiEmbeddingClient implements EmbeddingClient {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int MAX_RETRIES = 2;
+
+    private final OpenAiEmbedder embedder;
+
+    OpenAiEmbeddingClient(OpenAiClientProperties properties) {
+        if (!StringUtils.hasText(properties.getApiKey())) {
+            throw new IllegalArgumentException(
+                    "Property 'spring.ai.openai.api-key' must be provided when mocks are disabled");
+        }
+        this.embedder = OpenAiEmbedder.builder(URI.create(properties.getBaseUrl() + "/embeddings"),
+                        properties.getApiKey())
+                .model(properties.getEmbeddingModel())
+                .dimensions(properties.getEmbeddingDimensions())
+                .maxRetries(MAX_RETRIES)
+                .connectTimeout(TIMEOUT)
+                .requestTimeout(TIMEOUT)
+                .build();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        try {
+            return embedder.embed(text);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Embedding request failed", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Embedding request interrupted", ex);
+        }
+    }
+}
@@ -1,25 +1,57 @@
 package ch.so.arp.rag.chat;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 /**
- * Simplified OpenAI client used when the application runs against real
- * infrastructure. The implementation does not reach out to the OpenAI API yet
- * but it incorporates the configured model and retrieved context to produce a
- * deterministic response. This behaviour is intentionally predictable so that
- * tests can assert on the output without accessing external services.
+ * {@link LlmClient} streaming answers from an OpenAI compatible
+ * {@code /chat/completions} endpoint. The request is sent with
+ * {@code stream=true} and the {@code data:} frames of the response are parsed
+ * one by one while they arrive, so every delta reaches the token consumer
+ * without waiting for the rest of the answer.
+ * <p>
+ * Cancelling the request aborts the pending exchange or closes the response
+ * body, which tears down the connection so the model stops generating tokens
+ * nobody reads any more.
  */
 class OpenAiLlmClient implements LlmClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenAiLlmClient.class);
 
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofMinutes(2);
+    private static final String DONE = "[DONE]";
+
+    private static final String SYSTEM_PROMPT = """
+            Du bist ein Assistent für die kantonale Raumplanung Solothurn. Beantworte die Frage \
+            ausschliesslich anhand der nummerierten Auszüge aus Vorprüfungsberichten. Nenne die \
+            Nummern der verwendeten Auszüge. Wenn die Auszüge keine Antwort enthalten, sage das.""";
+
     private final OpenAiClientProperties properties;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     OpenAiLlmClient(OpenAiClientProperties properties) {
         if (!StringUtils.hasText(properties.getApiKey())) {
@@ -27,28 +59,107 @@ class OpenAiLlmClient implements LlmClient {
                     "Property 'spring.ai.openai.api-key' must be provided when mocks are disabled");
         }
         this.properties = properties;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
     }
 
     @Override
     public void streamChat(String question, List<String> context, Consumer<String> tokenConsumer) {
+        streamChat(question, context, tokenConsumer, CancellationToken.NONE);
+    }
+
+    @Override
+    public void streamChat(String question, List<String> context, Consumer<String> tokenConsumer,
+            CancellationToken cancellation) {
         LOGGER.debug("Streaming response with model {} via base URL {}", properties.getModel(), properties.getBaseUrl());
-        tokenConsumer.accept("Model: " + properties.getModel());
-        tokenConsumer.accept("Question: " + question);
-        if (!context.isEmpty()) {
-            StringJoiner joiner = new StringJoiner(" | ");
-            context.forEach(joiner::add);
-            tokenConsumer.accept("Context: " + joiner);
-        } else {
-            tokenConsumer.accept("Context: none available");
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(properties.getBaseUrl() + "/chat/completions"))
+                .timeout(RESPONSE_TIMEOUT)
+                .header("Authorization", "Bearer " + properties.getApiKey())
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(buildRequestBody(question, context), StandardCharsets.UTF_8))
+                .build();
+        try {
+            HttpResponse<InputStream> response = send(request, cancellation);
+            try (InputStream body = response.body();
+                    CancellationToken.Registration registration = cancellation.onCancel(() -> closeQuietly(body))) {
+                if (response.statusCode() >= 300) {
+                    String error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                    throw new IllegalStateException(
+                            "Chat completion failed with HTTP " + response.statusCode() + ": " + error);
+                }
+                ServerSentEventReader reader = new ServerSentEventReader(body);
+                String data;
+                while (!cancellation.isCancelled() && (data = reader.next()) != null && !DONE.equals(data)) {
+                    String delta = parseDelta(data);
+                    if (!delta.isEmpty()) {
+                        tokenConsumer.accept(delta);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            cancellation.throwIfCancelled();
+            throw new IllegalStateException("Chat completion failed", ex);
+        }
+        cancellation.throwIfCancelled();
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request, CancellationToken cancellation) throws IOException {
+        CompletableFuture<HttpResponse<InputStream>> exchange = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (CancellationToken.Registration registration = cancellation.onCancel(() -> exchange.cancel(true))) {
+            return exchange.get();
+        } catch (CancellationException ex) {
+            throw new CancellationException("Chat request was cancelled");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Chat completion failed", ex.getCause());
+        } catch (InterruptedException ex) {
+            exchange.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Chat completion interrupted", ex);
+        }
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException ex) {
+            LOGGER.debug("Unable to close chat completion stream: {}", ex.getMessage());
+        }
+    }
+
+    String buildRequestBody(String question, List<String> context) {
+        StringBuilder user = new StringBuilder();
+        for (int i = 0; i < context.size(); i++) {
+            user.append('[').append(i + 1).append("] ").append(context.get(i)).append("\n\n");
+        }
+        user.append("Frage: ").append(question);
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", properties.getModel());
+        body.put("stream", true);
+        ArrayNode messages = body.putArray("messages");
+        messages.addObject().put("role", "system").put("content", SYSTEM_PROMPT);
+        messages.addObject().put("role", "user").put("content", user.toString());
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Unable to serialise chat completion request", ex);
         }
-        tokenConsumer.accept("API key used: " + mask(properties.getApiKey()));
-        tokenConsumer.accept("Base URL: " + properties.getBaseUrl());
     }
 
-    private String mask(String apiKey) {
-        if (apiKey == null || apiKey.length() < 4) {
-            return "***";
+    private String parseDelta(String data) throws IOException {
+        JsonNode chunk = objectMapper.readTree(data);
+        JsonNode error = chunk.get("error");
+        if (error != null) {
+            throw new IllegalStateException("Chat completion failed: " + error.path("message").asText(error.toString()));
         }
-        return "***" + apiKey.substring(apiKey.length() - 4);
+        return chunk.path("choices").path(0).path("delta").path("content").asText("");
     }
 }
@@ -0,0 +1,47 @@
+package ch.so.arp.rag.chat;
+
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.so.arp.rag.ingest.EmbeddingCache;
+
+/**
+ * {@link EmbeddingClient} decorator backed by a {@link EmbeddingCache}.
+ * Texts are looked up verbatim, so a question only hits when exactly the same
+ * text has been embedded before, by the application or by the ingest command.
+ * Failures of the cache are logged and the delegate is used instead.
+ */
+class PersistentEmbeddingClient implements EmbeddingClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersistentEmbeddingClient.class);
+
+    private final EmbeddingClient delegate;
+    private final EmbeddingCache cache;
+
+    PersistentEmbeddingClient(EmbeddingClient delegate, EmbeddingCache cache) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.cache = Objects.requireNonNull(cache, "cache");
+    }
+
+    @Override
+    public float[] embed(String text) {
+        try {
+            float[] cached = cache.get(text);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (UncheckedIOException ex) {
+            LOGGER.warn("Could not read the embedding cache: {}", ex.getMessage());
+        }
+        float[] vector = delegate.embed(text);
+        try {
+            cache.put(text, vector);
+        } catch (UncheckedIOException | IllegalArgumentException ex) {
+            LOGGER.warn("Could not store the embedding in the cache: {}", ex.getMessage());
+        }
+        return vector;
+    }
+}
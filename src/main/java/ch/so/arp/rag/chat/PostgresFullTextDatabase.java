@@ -0,0 +1,64 @@
+package ch.so.arp.rag.chat;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * Full text leg of the hybrid retrieval. The question is normalised the same
+ * way the ingest script builds {@code arp_rag_vp.chunks.tsv} (lower case,
+ * unaccent, german configuration) so that the GIN index on {@code tsv} is
+ * used. Exact terms like SOBAU numbers and place names are found here even if
+ * the embedding does not capture them. Metadata filters are applied the same
+ * way as in {@link PostgresVectorDatabase}, and so is the cancellation.
+ */
+class PostgresFullTextDatabase implements VectorDatabase {
+
+    private static final String SEARCH_SQL = """
+            SELECT c.id, c.text, c.digest, ts_rank_cd(c.tsv, query) AS rank
+            FROM arp_rag_vp.chunks c,
+                 plainto_tsquery('german', public.unaccent(lower(:question))) AS query
+            WHERE c.tsv @@ query%s
+            ORDER BY rank DESC, c.id
+            LIMIT :limit
+            """;
+
+    private static final RowMapper<RetrievedChunk> CHUNK_MAPPER = (rs, rowNum) -> new RetrievedChunk(
+            rs.getLong("id"), rs.getString("text"), rs.getString("digest"), rs.getDouble("rank"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final RetrievalProperties properties;
+
+    PostgresFullTextDatabase(NamedParameterJdbcTemplate jdbcTemplate, RetrievalProperties properties) {
+        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "jdbcTemplate");
+        this.properties = Objects.requireNonNull(properties, "properties");
+    }
+
+    @Override
+    public List<String> findRelevantContext(String question) {
+        return findRelevantChunks(question, RetrievalOptions.DEFAULT).stream()
+                .map(RetrievedChunk::text)
+                .toList();
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+        return findRelevantChunks(question, options, CancellationToken.NONE);
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options,
+            CancellationToken cancellation) {
+        cancellation.throwIfCancelled();
+        int topK = properties.resolveTopK(options);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("question", question)
+                .addValue("limit", topK);
+        String conditions = RetrievalFilterSql.conditions(options.filter(), params);
+        return CancellableJdbc.bind(jdbcTemplate, cancellation)
+                .query(SEARCH_SQL.formatted(conditions), params, CHUNK_MAPPER);
+    }
+}
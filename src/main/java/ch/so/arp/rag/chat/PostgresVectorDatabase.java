@@ -1,34 +1,243 @@
 package ch.so.arp.rag.chat;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ch.so.arp.rag.ingest.HalfVector;
+import ch.so.arp.rag.ingest.VectorCodec;
+import ch.so.arp.rag.ingest.VectorColumns;
 
 /**
- * PostgreSQL backed {@link VectorDatabase} implementation. It expects a table
- * named {@code rag_context} that contains at least the columns {@code id},
- * {@code question} and {@code chunk}. The exact similarity search is not part of
- * this sample yet but the class showcases how the integration can be wired.
+ * PostgreSQL backed {@link VectorDatabase} implementation. The question is
+ * embedded and compared against {@code arp_rag_vp.chunks.embedding} using the
+ * cosine distance operator so that the ivfflat or hnsw
+ * {@code halfvec_cosine_ops} index is used. The number of probed lists, the
+ * hnsw search width and the iterative scan are set together in one
+ * {@code SELECT set_config(..., true)}, i.e. local to the transaction the
+ * query runs in. The question embedding is bound as a binary
+ * {@link HalfVector}.
+ * <p>
+ * Metadata filters are pushed into the {@code WHERE} clause. If the filter
+ * matches only a few chunks (see
+ * {@link RetrievalProperties#getExactSearchThreshold()}) the matching rows are
+ * ranked exactly, otherwise the index is scanned iteratively so that a
+ * selective filter does not leave the result short of {@code topK} rows.
+ * <p>
+ * With {@link RetrievalProperties#getShortDimensions()} or
+ * {@link RetrievalProperties#getBinaryCandidates()} set, the first stage
+ * searches an hnsw index instead: on {@code embedding_short}, the leading
+ * dimensions of the embedding, or on {@code binary_quantize(embedding)} by
+ * Hamming distance. Both read a fraction of the 6 KB per chunk. The candidates
+ * are then ranked exactly by their cosine distance to the question.
+ * <p>
+ * The statements are bound to the {@link CancellationToken} of the request, so
+ * a cancelled request aborts the running query.
+ * <p>
+ * {@link #checkDimensions(int)} compares the vector columns with the configured
+ * dimensions at startup.
  */
 class PostgresVectorDatabase implements VectorDatabase {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostgresVectorDatabase.class);
+
+    private static final String ANN_SQL = """
+            SELECT id, text, digest, distance
+            FROM (
+                SELECT c.id, c.text, c.digest, c.embedding <=> CAST(:embedding AS halfvec) AS distance
+                FROM arp_rag_vp.chunks c
+                WHERE TRUE%s
+                ORDER BY c.embedding <=> CAST(:embedding AS halfvec)
+                LIMIT :limit
+            ) hits
+            ORDER BY distance
+            """;
+
+    private static final String RERANK_SQL = """
+            SELECT id, text, digest, embedding <=> CAST(:embedding AS halfvec) AS distance
+            FROM (
+                SELECT c.id, c.text, c.digest, c.embedding
+                FROM arp_rag_vp.chunks c
+                WHERE TRUE%s
+                ORDER BY %s
+                LIMIT :candidates
+            ) candidates
+            ORDER BY distance
+            LIMIT :limit
+            """;
+
+    // first stages of RERANK_SQL, matching the hnsw indexes of initdb/01_init.sql and the ingest
+    private static final String BINARY_ORDER =
+            "binary_quantize(c.embedding)::bit(%d) <~> binary_quantize(CAST(:embedding AS halfvec))";
+    private static final String SHORT_ORDER = "c.embedding_short <=> CAST(:shortEmbedding AS halfvec)";
+
+    private static final String EXACT_SQL = """
+            WITH candidates AS MATERIALIZED (
+                SELECT c.id, c.text, c.digest, c.embedding
+                FROM arp_rag_vp.chunks c
+                WHERE c.embedding IS NOT NULL%s
+            )
+            SELECT id, text, digest, embedding <=> CAST(:embedding AS halfvec) AS distance
+            FROM candidates
+            ORDER BY distance
+            LIMIT :limit
+            """;
+
+    private static final String COUNT_SQL = """
+            SELECT count(*)
+            FROM (
+                SELECT 1
+                FROM arp_rag_vp.chunks c
+                WHERE TRUE%s
+                LIMIT :countLimit
+            ) matches
+            """;
+
+    private static final int MAX_EF_SEARCH = 1000;
+    private static final int HNSW_EF_SEARCH = 40;
+
+    private static final RowMapper<RetrievedChunk> CHUNK_MAPPER = (rs, rowNum) -> new RetrievedChunk(
+            rs.getLong("id"), rs.getString("text"), rs.getString("digest"), 1d - rs.getDouble("distance"));
+
     private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EmbeddingClient embeddingClient;
+    private final RetrievalProperties properties;
+
+    PostgresVectorDatabase(NamedParameterJdbcTemplate jdbcTemplate, EmbeddingClient embeddingClient,
+            RetrievalProperties properties) {
+        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "jdbcTemplate");
+        this.embeddingClient = Objects.requireNonNull(embeddingClient, "embeddingClient");
+        this.properties = Objects.requireNonNull(properties, "properties");
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getJdbcTemplate().getDataSource()));
+        this.transactionTemplate.setReadOnly(true);
+    }
 
-    PostgresVectorDatabase(NamedParameterJdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    /**
+     * Fails if {@code embedding} or, with the short stage enabled, {@code embedding_short} was created for
+     * other dimensions than configured, instead of failing every question. A database that cannot be queried
+     * yet is only logged.
+     *
+     * @throws IllegalStateException if the dimensions differ
+     */
+    void checkDimensions(int embeddingDimensions) {
+        try {
+            jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Void>) connection -> {
+                VectorColumns.check(connection, VectorColumns.EMBEDDING, embeddingDimensions,
+                        "rag.chat.openai.embedding-dimensions");
+                if (properties.getShortDimensions() > 0) {
+                    VectorColumns.check(connection, VectorColumns.EMBEDDING_SHORT, properties.getShortDimensions(),
+                            "rag.chat.retrieval.short-dimensions");
+                }
+                return null;
+            });
+        } catch (DataAccessException ex) {
+            LOGGER.warn("Vector dimensions not checked: {}", ex.getMessage());
+        }
     }
 
     @Override
     public List<String> findRelevantContext(String question) {
-        String sql = """
-                SELECT chunk
-                FROM rag_context
-                WHERE LOWER(question) LIKE LOWER(:pattern)
-                ORDER BY id
-                LIMIT 5
-                """;
-        Map<String, Object> params = Map.of("pattern", "%" + question + "%");
-        return jdbcTemplate.query(sql, params, (rs, rowNum) -> rs.getString("chunk"));
+        return findRelevantChunks(question, RetrievalOptions.DEFAULT).stream()
+                .map(RetrievedChunk::text)
+                .toList();
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+        return findRelevantChunks(question, options, CancellationToken.NONE);
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options,
+            CancellationToken cancellation) {
+        int topK = properties.resolveTopK(options);
+        int probes = properties.resolveProbes(options);
+        float[] embedding = embeddingClient.embed(question);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("embedding", new HalfVector(embedding))
+                .addValue("limit", topK);
+        boolean shortStage = properties.getShortDimensions() > 0;
+        if (shortStage) {
+            params.addValue("shortEmbedding",
+                    new HalfVector(VectorCodec.truncate(embedding, properties.getShortDimensions())));
+        }
+        String firstStage = shortStage ? SHORT_ORDER
+                : properties.getBinaryCandidates() > 0 ? BINARY_ORDER.formatted(embedding.length)
+                : null;
+        boolean rerank = firstStage != null;
+        int candidates = Math.max(shortStage ? properties.getShortCandidates() : properties.getBinaryCandidates(),
+                topK);
+        String conditions = RetrievalFilterSql.conditions(options.filter(), params);
+        cancellation.throwIfCancelled();
+        NamedParameterJdbcTemplate jdbc = CancellableJdbc.bind(jdbcTemplate, cancellation);
+        return transactionTemplate.execute(status -> {
+            jdbc.getJdbcTemplate().execute((ConnectionCallback<Void>) connection -> {
+                HalfVector.enableBinaryTransfer(connection);
+                return null;
+            });
+            // all settings in one round trip; which index serves the ANN query depends on --reindex
+            Map<String, String> settings = new LinkedHashMap<>();
+            if (!options.filter().isEmpty()) {
+                long matches = countMatches(jdbc, conditions, params);
+                if (matches == 0) {
+                    return List.of();
+                }
+                if (matches <= properties.getExactSearchThreshold()) {
+                    return jdbc.query(EXACT_SQL.formatted(conditions), params, CHUNK_MAPPER);
+                }
+                RetrievalProperties.IterativeScan iterativeScan = properties.getIterativeScan();
+                if (iterativeScan != RetrievalProperties.IterativeScan.OFF) {
+                    settings.put("hnsw.iterative_scan", iterativeScan.hnsw());
+                    if (!rerank) {
+                        settings.put("ivfflat.iterative_scan", iterativeScan.ivfflat());
+                    }
+                }
+            }
+            if (rerank) {
+                params.addValue("candidates", candidates);
+                settings.put("hnsw.ef_search", Integer.toString(Math.min(candidates, MAX_EF_SEARCH)));
+                setLocal(jdbc, settings);
+                return jdbc.query(RERANK_SQL.formatted(conditions, firstStage), params, CHUNK_MAPPER);
+            }
+            settings.put("ivfflat.probes", Integer.toString(probes));
+            // the hnsw default of 40 candidates would cut off larger topK values
+            settings.put("hnsw.ef_search", Integer.toString(Math.min(Math.max(topK, HNSW_EF_SEARCH), MAX_EF_SEARCH)));
+            setLocal(jdbc, settings);
+            return jdbc.query(ANN_SQL.formatted(conditions), params, CHUNK_MAPPER);
+        });
+    }
+
+    private long countMatches(NamedParameterJdbcTemplate jdbc, String conditions, MapSqlParameterSource params) {
+        params.addValue("countLimit", properties.getExactSearchThreshold() + 1);
+        Long count = jdbc.queryForObject(COUNT_SQL.formatted(conditions), params, Long.class);
+        return count != null ? count : 0L;
+    }
+
+    private static void setLocal(NamedParameterJdbcTemplate jdbc, Map<String, String> settings) {
+        StringJoiner sql = new StringJoiner(", ", "SELECT ", "");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        int i = 0;
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            sql.add("set_config(:name" + i + ", :value" + i + ", true)");
+            params.addValue("name" + i, setting.getKey()).addValue("value" + i, setting.getValue());
+            i++;
+        }
+        jdbc.query(sql.toString(), params, (RowCallbackHandler) rs -> {
+        });
     }
 }
@@ -0,0 +1,38 @@
+package ch.so.arp.rag.chat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges several ranked result lists with reciprocal rank fusion. Every chunk
+ * scores {@code 1 / (k + rank)} per list it appears in; the raw scores of the
+ * individual lists are ignored because cosine similarity and {@code ts_rank}
+ * are not comparable.
+ */
+final class ReciprocalRankFusion {
+
+    static final int DEFAULT_K = 60;
+
+    private ReciprocalRankFusion() {
+    }
+
+    static List<RetrievedChunk> fuse(List<List<RetrievedChunk>> rankings, int k, int limit) {
+        Map<Long, RetrievedChunk> chunks = new LinkedHashMap<>();
+        Map<Long, Double> scores = new LinkedHashMap<>();
+        for (List<RetrievedChunk> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                RetrievedChunk chunk = ranking.get(i);
+                chunks.putIfAbsent(chunk.id(), chunk);
+                scores.merge(chunk.id(), 1d / (k + i + 1), Double::sum);
+            }
+        }
+        List<RetrievedChunk> fused = new ArrayList<>(chunks.size());
+        chunks.forEach((id, chunk) -> fused.add(new RetrievedChunk(id, chunk.text(), chunk.digest(), scores.get(id))));
+        // List.sort is stable, so ties keep the order of first appearance.
+        fused.sort(Comparator.comparingDouble(RetrievedChunk::score).reversed());
+        return fused.size() > limit ? List.copyOf(fused.subList(0, limit)) : fused;
+    }
+}
@@ -0,0 +1,55 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties of the re-ranking stage, see
+ * {@link RerankingVectorDatabase}.
+ */
+@ConfigurationProperties(prefix = "rag.chat.rerank")
+public class RerankProperties {
+
+    /**
+     * Whether the retrieved chunks are re-ranked before they are sent to the
+     * model.
+     */
+    private boolean enabled;
+
+    /**
+     * Number of chunks retrieved for the re-ranking; the best {@code topK} of
+     * them are kept. Capped by {@code rag.chat.retrieval.max-top-k}.
+     */
+    private int candidates = 50;
+
+    /**
+     * Time the reranker gets per question. If it takes longer, the order of
+     * the retrieval is used.
+     */
+    private Duration timeout = Duration.ofMillis(200);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    public void setCandidates(int candidates) {
+        this.candidates = candidates;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+}
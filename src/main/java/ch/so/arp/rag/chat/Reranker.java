@@ -0,0 +1,22 @@
+package ch.so.arp.rag.chat;
+
+import java.util.List;
+
+/**
+ * Second stage of the retrieval: orders the candidates of the first stage by
+ * their relevance to the question. Implementations may be as cheap as a
+ * lexical score or as expensive as a scoring call to a language model;
+ * {@link RerankingVectorDatabase} bounds the time they get.
+ */
+public interface Reranker {
+
+    /**
+     * Order the candidates by relevance to the question.
+     *
+     * @param question the question that should be answered
+     * @param candidates the chunks of the first stage, best first
+     * @param cancellation token of the chat request
+     * @return the candidates, best first, with the score of this reranker
+     */
+    List<RetrievedChunk> rerank(String question, List<RetrievedChunk> candidates, CancellationToken cancellation);
+}
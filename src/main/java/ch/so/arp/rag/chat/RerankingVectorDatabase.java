@@ -0,0 +1,127 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * {@link VectorDatabase} adding a second stage to another one: it asks for
+ * {@link RerankProperties#getCandidates()} chunks, orders them with a
+ * {@link Reranker} and returns the best {@code topK}. The reranker runs on the
+ * given executor with a hard deadline and its own {@link CancellationToken},
+ * which is cancelled when the deadline passes. If it does not finish in time
+ * or fails, the order of the first stage is used, so re-ranking never delays or
+ * breaks an answer by more than its budget. Both outcomes are counted in
+ * {@code rag.rerank.questions}.
+ */
+class RerankingVectorDatabase implements VectorDatabase, MeterBinder, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RerankingVectorDatabase.class);
+
+    private final VectorDatabase delegate;
+    private final Reranker reranker;
+    private final Executor executor;
+    private final RetrievalProperties retrievalProperties;
+    private final RerankProperties properties;
+    private final AtomicLong reranked = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    RerankingVectorDatabase(VectorDatabase delegate, Reranker reranker, Executor executor,
+            RetrievalProperties retrievalProperties, RerankProperties properties) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.reranker = Objects.requireNonNull(reranker, "reranker");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.retrievalProperties = Objects.requireNonNull(retrievalProperties, "retrievalProperties");
+        this.properties = Objects.requireNonNull(properties, "properties");
+    }
+
+    @Override
+    public List<String> findRelevantContext(String question) {
+        return findRelevantChunks(question, RetrievalOptions.DEFAULT).stream()
+                .map(RetrievedChunk::text)
+                .toList();
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+        return findRelevantChunks(question, options, CancellationToken.NONE);
+    }
+
+    @Override
+    public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options,
+            CancellationToken cancellation) {
+        int topK = retrievalProperties.resolveTopK(options);
+        List<RetrievedChunk> candidates = delegate.findRelevantChunks(question,
+                options.withTopK(Math.max(topK, properties.getCandidates())), cancellation);
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+        cancellation.throwIfCancelled();
+        Duration timeout = properties.getTimeout();
+        // own token, so a scorer that missed its deadline stops instead of running on
+        CancellationToken scoring = new CancellationToken();
+        try (CancellationToken.Registration registration = cancellation.onCancel(scoring::cancel)) {
+            CompletableFuture<List<RetrievedChunk>> ranking = CompletableFuture.supplyAsync(
+                    () -> reranker.rerank(question, candidates, scoring), executor);
+            List<RetrievedChunk> ranked = ranking.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            reranked.incrementAndGet();
+            return limit(ranked, topK);
+        } catch (TimeoutException ex) {
+            scoring.cancel();
+            fallbacks.incrementAndGet();
+            LOGGER.debug("Re-ranking exceeded {} ms, keeping the retrieval order", timeout.toMillis());
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof CancellationException cancelled) {
+                throw cancelled;
+            }
+            fallbacks.incrementAndGet();
+            LOGGER.warn("Re-ranking failed, keeping the retrieval order: {}", ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            scoring.cancel();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while re-ranking");
+        }
+        return limit(candidates, topK);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rag.rerank.questions", reranked, AtomicLong::get)
+                .tag("result", "reranked")
+                .description("Questions whose chunks were re-ranked in time")
+                .register(registry);
+        FunctionCounter.builder("rag.rerank.questions", fallbacks, AtomicLong::get)
+                .tag("result", "fallback")
+                .description("Questions answered in retrieval order after a timeout or failure of the reranker")
+                .register(registry);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    long fallbacks() {
+        return fallbacks.get();
+    }
+
+    private static List<RetrievedChunk> limit(List<RetrievedChunk> chunks, int topK) {
+        return chunks.size() > topK ? List.copyOf(chunks.subList(0, topK)) : chunks;
+    }
+}
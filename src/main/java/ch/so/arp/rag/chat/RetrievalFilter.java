@@ -0,0 +1,39 @@
+package ch.so.arp.rag.chat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import jakarta.validation.constraints.Pattern;
+
+/**
+ * Structured restriction of the retrieval to a subset of the chunks. All
+ * criteria are optional and combined with {@code AND}; list criteria match if
+ * the chunk carries at least one of the given values.
+ *
+ * @param municipality municipality as derived from the file name, e.g. {@code Olten}
+ * @param planType either {@code ortsplanung} or {@code gestaltungsplan}
+ * @param topics topics inferred during ingest, e.g. {@code Hecken}
+ * @param sobauCodes SOBAU numbers referenced by the chunk
+ * @param docDateFrom lower bound (inclusive) of the document date
+ * @param docDateTo upper bound (inclusive) of the document date
+ */
+public record RetrievalFilter(
+        String municipality,
+        @Pattern(regexp = "ortsplanung|gestaltungsplan") String planType,
+        List<String> topics,
+        List<String> sobauCodes,
+        LocalDate docDateFrom,
+        LocalDate docDateTo) {
+
+    public static final RetrievalFilter NONE = new RetrievalFilter(null, null, null, null, null, null);
+
+    public RetrievalFilter {
+        topics = topics == null ? List.of() : List.copyOf(topics);
+        sobauCodes = sobauCodes == null ? List.of() : List.copyOf(sobauCodes);
+    }
+
+    public boolean isEmpty() {
+        return municipality == null && planType == null && topics.isEmpty() && sobauCodes.isEmpty()
+                && docDateFrom == null && docDateTo == null;
+    }
+}
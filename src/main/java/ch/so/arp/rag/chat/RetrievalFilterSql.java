@@ -0,0 +1,48 @@
+package ch.so.arp.rag.chat;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+/**
+ * Translates a {@link RetrievalFilter} into {@code AND} conditions on
+ * {@code arp_rag_vp.chunks} (aliased as {@code c}). The conditions are written
+ * so that the {@code (municipality, plan_type)} btree and the {@code topics}
+ * GIN index can be used by the planner.
+ */
+final class RetrievalFilterSql {
+
+    private RetrievalFilterSql() {
+    }
+
+    static String conditions(RetrievalFilter filter, MapSqlParameterSource params) {
+        StringBuilder sql = new StringBuilder();
+        if (filter.municipality() != null) {
+            sql.append(" AND c.municipality = :municipality");
+            params.addValue("municipality", filter.municipality());
+        }
+        if (filter.planType() != null) {
+            sql.append(" AND c.plan_type = :planType");
+            params.addValue("planType", filter.planType());
+        }
+        if (!filter.topics().isEmpty()) {
+            sql.append(" AND c.topics && CAST(:topics AS text[])");
+            params.addValue("topics", filter.topics().toArray(String[]::new));
+        }
+        if (!filter.sobauCodes().isEmpty()) {
+            sql.append(" AND c.sobau_codes && CAST(:sobauCodes AS text[])");
+            params.addValue("sobauCodes", filter.sobauCodes().toArray(String[]::new));
+        }
+        if (filter.docDateFrom() != null || filter.docDateTo() != null) {
+            sql.append(" AND EXISTS (SELECT 1 FROM arp_rag_vp.documents d WHERE d.id = c.document_id");
+            if (filter.docDateFrom() != null) {
+                sql.append(" AND d.doc_date >= :docDateFrom");
+                params.addValue("docDateFrom", filter.docDateFrom());
+            }
+            if (filter.docDateTo() != null) {
+                sql.append(" AND d.doc_date <= :docDateTo");
+                params.addValue("docDateTo", filter.docDateTo());
+            }
+            sql.append(")");
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,26 @@
+package ch.so.arp.rag.chat;
+
+/**
+ * Per request tuning of the retrieval step. Values that are {@code null} fall
+ * back to the defaults configured in {@link RetrievalProperties}.
+ *
+ * @param topK number of chunks that should be returned
+ * @param probes number of ivfflat lists that should be scanned
+ * @param filter metadata restriction applied before the ranking
+ */
+public record RetrievalOptions(Integer topK, Integer probes, RetrievalFilter filter) {
+
+    public static final RetrievalOptions DEFAULT = new RetrievalOptions(null, null, RetrievalFilter.NONE);
+
+    public RetrievalOptions {
+        filter = filter == null ? RetrievalFilter.NONE : filter;
+    }
+
+    public RetrievalOptions(Integer topK, Integer probes) {
+        this(topK, probes, RetrievalFilter.NONE);
+    }
+
+    RetrievalOptions withTopK(int topK) {
+        return new RetrievalOptions(topK, probes, filter);
+    }
+}
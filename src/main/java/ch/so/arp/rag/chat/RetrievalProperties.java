@@ -0,0 +1,264 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties controlling the similarity search against
+ * {@code arp_rag_vp.chunks}.
+ */
+@ConfigurationProperties(prefix = "rag.chat.retrieval")
+public class RetrievalProperties {
+
+    /**
+     * Retrieval strategy used when the mock vector store is disabled.
+     */
+    private Mode mode = Mode.VECTOR;
+
+    /**
+     * Number of chunks returned when the request does not specify a value.
+     */
+    private int topK = 5;
+
+    /**
+     * Upper bound for the number of chunks a single request may ask for.
+     */
+    private int maxTopK = 50;
+
+    /**
+     * Number of ivfflat lists scanned when the request does not specify a value.
+     */
+    private int probes = 10;
+
+    /**
+     * Upper bound for the number of ivfflat lists a single request may scan.
+     */
+    private int maxProbes = 200;
+
+    /**
+     * Number of candidates each leg of the hybrid retrieval contributes to the
+     * fusion.
+     */
+    private int hybridCandidates = 20;
+
+    /**
+     * Rank constant of the reciprocal rank fusion. Larger values flatten the
+     * influence of the top ranks.
+     */
+    private int rrfK = ReciprocalRankFusion.DEFAULT_K;
+
+    /**
+     * Filtered queries matching at most this many chunks are ranked exactly
+     * instead of through the ivfflat index.
+     */
+    private int exactSearchThreshold = 2000;
+
+    /**
+     * Iterative index scan for filtered queries that use the index
+     * ({@code off}, {@code relaxed_order} or {@code strict_order}, requires
+     * pgvector 0.8).
+     */
+    private IterativeScan iterativeScan = IterativeScan.RELAXED_ORDER;
+
+    /**
+     * Number of candidates taken from the hnsw index on the binary quantized
+     * embeddings and ranked exactly by cosine distance. Zero searches the
+     * ivfflat index on the embeddings directly.
+     */
+    private int binaryCandidates;
+
+    /**
+     * Number of leading embedding dimensions stored in
+     * {@code arp_rag_vp.chunks.embedding_short} by the ingest
+     * ({@code --short-dimensions}). If set, the vector search takes
+     * {@link #shortCandidates} from the hnsw index on that column and ranks
+     * them exactly; this takes precedence over {@link #binaryCandidates}. Zero
+     * disables the short vector.
+     */
+    private int shortDimensions;
+
+    /**
+     * Number of candidates taken from the hnsw index on the short vectors.
+     */
+    private int shortCandidates = 100;
+
+    /**
+     * Interval after which the {@code in_memory} index is rebuilt from the
+     * database. Zero keeps the index loaded at startup.
+     */
+    private Duration inMemoryRefresh = Duration.ZERO;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+
+    public int getMaxTopK() {
+        return maxTopK;
+    }
+
+    public void setMaxTopK(int maxTopK) {
+        this.maxTopK = maxTopK;
+    }
+
+    public int getProbes() {
+        return probes;
+    }
+
+    public void setProbes(int probes) {
+        this.probes = probes;
+    }
+
+    public int getMaxProbes() {
+        return maxProbes;
+    }
+
+    public void setMaxProbes(int maxProbes) {
+        this.maxProbes = maxProbes;
+    }
+
+    public int getHybridCandidates() {
+        return hybridCandidates;
+    }
+
+    public void setHybridCandidates(int hybridCandidates) {
+        this.hybridCandidates = hybridCandidates;
+    }
+
+    public int getRrfK() {
+        return rrfK;
+    }
+
+    public void setRrfK(int rrfK) {
+        this.rrfK = rrfK;
+    }
+
+    public int getExactSearchThreshold() {
+        return exactSearchThreshold;
+    }
+
+    public void setExactSearchThreshold(int exactSearchThreshold) {
+        this.exactSearchThreshold = exactSearchThreshold;
+    }
+
+    public IterativeScan getIterativeScan() {
+        return iterativeScan;
+    }
+
+    public void setIterativeScan(IterativeScan iterativeScan) {
+        this.iterativeScan = iterativeScan;
+    }
+
+    public int getBinaryCandidates() {
+        return binaryCandidates;
+    }
+
+    public void setBinaryCandidates(int binaryCandidates) {
+        this.binaryCandidates = binaryCandidates;
+    }
+
+    public int getShortDimensions() {
+        return shortDimensions;
+    }
+
+    public void setShortDimensions(int shortDimensions) {
+        this.shortDimensions = shortDimensions;
+    }
+
+    public int getShortCandidates() {
+        return shortCandidates;
+    }
+
+    public void setShortCandidates(int shortCandidates) {
+        this.shortCandidates = shortCandidates;
+    }
+
+    public Duration getInMemoryRefresh() {
+        return inMemoryRefresh;
+    }
+
+    public void setInMemoryRefresh(Duration inMemoryRefresh) {
+        this.inMemoryRefresh = inMemoryRefresh;
+    }
+
+    int resolveTopK(RetrievalOptions options) {
+        return clamp(options.topK(), topK, maxTopK);
+    }
+
+    int resolveProbes(RetrievalOptions options) {
+        return clamp(options.probes(), probes, maxProbes);
+    }
+
+    private static int clamp(Integer requested, int fallback, int max) {
+        int value = requested != null ? requested : fallback;
+        return Math.max(1, Math.min(value, max));
+    }
+
+    /**
+     * Available retrieval strategies.
+     */
+    public enum Mode {
+        /**
+         * Approximate nearest neighbour search on the embeddings only.
+         */
+        VECTOR,
+        /**
+         * Vector and full text search merged with reciprocal rank fusion.
+         */
+        HYBRID,
+        /**
+         * Exact search over an int8 copy of the embeddings held in the
+         * application, without a database round trip per question.
+         */
+        IN_MEMORY
+    }
+
+    /**
+     * Iterative scans of pgvector, continuing an index scan until enough rows
+     * pass the filter.
+     */
+    public enum IterativeScan {
+        /**
+         * Stop after one scan, a selective filter may leave fewer than
+         * {@code topK} rows.
+         */
+        OFF,
+        /**
+         * Continue the scan, results may be slightly out of order.
+         */
+        RELAXED_ORDER,
+        /**
+         * Continue the scan in exact distance order. Only hnsw supports it,
+         * ivfflat scans with {@code relaxed_order} then.
+         */
+        STRICT_ORDER;
+
+        /**
+         * @return value of {@code hnsw.iterative_scan}
+         */
+        String hnsw() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @return value of {@code ivfflat.iterative_scan}, which accepts only {@code off} and
+         *         {@code relaxed_order}
+         */
+        String ivfflat() {
+            return this == OFF ? "off" : "relaxed_order";
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ch.so.arp.rag.chat;
+
+/**
+ * A single chunk returned by a {@link VectorDatabase} lookup.
+ *
+ * @param id the primary key of the chunk in {@code arp_rag_vp.chunks}
+ * @param text the chunk text handed to the language model
+ * @param digest the content digest written by the ingest script, may be {@code null}
+ * @param score relevance of the chunk, higher is better
+ */
+public record RetrievedChunk(long id, String text, String digest, double score) {
+}
@@ -0,0 +1,169 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import ch.so.arp.rag.ingest.VectorCodec;
+
+/**
+ * Cache of generated answers that allows {@link ChatService} to skip the
+ * language model for near duplicate questions. An answer is reused if the new
+ * question retrieved exactly the same chunks and its embedding lies within
+ * {@code maxDistance} (cosine distance) of the question that produced the
+ * answer. A cached answer is dropped as soon as one of its chunks comes back
+ * with a different digest, i.e. the chunk has been re-ingested.
+ * <p>
+ * Answers are only cached for chunks that carry a digest; implementations
+ * without stable chunk identities never produce a hit.
+ */
+class SemanticAnswerCache implements MeterBinder {
+
+    private static final int MAX_ANSWERS_PER_CHUNK_SET = 8;
+
+    private final EmbeddingClient embeddingClient;
+    private final double maxDistance;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<List<Long>, List<Entry>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    SemanticAnswerCache(EmbeddingClient embeddingClient, double maxDistance, int maxSize, Duration ttl) {
+        this(embeddingClient, maxDistance, maxSize, ttl, Clock.systemUTC());
+    }
+
+    SemanticAnswerCache(EmbeddingClient embeddingClient, double maxDistance, int maxSize, Duration ttl,
+            Clock clock) {
+        this.embeddingClient = Objects.requireNonNull(embeddingClient, "embeddingClient");
+        this.maxDistance = maxDistance;
+        this.ttl = Objects.requireNonNull(ttl, "ttl");
+        this.clock = Objects.requireNonNull(clock, "clock");
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Long>, List<Entry>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Look up a previously generated answer.
+     *
+     * @param question the new question
+     * @param chunks the chunks retrieved for the new question
+     * @return the tokens of the cached answer, empty if there is none
+     */
+    Optional<List<String>> find(String question, List<RetrievedChunk> chunks) {
+        List<Long> key = key(chunks);
+        if (key == null) {
+            return Optional.empty();
+        }
+        float[] vector = embeddingClient.embed(question);
+        Instant now = clock.instant();
+        synchronized (entries) {
+            List<Entry> candidates = entries.get(key);
+            if (candidates != null) {
+                Iterator<Entry> iterator = candidates.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (!entry.expiresAt().isAfter(now) || !entry.digests().equals(digests(chunks))) {
+                        iterator.remove();
+                        invalidations.incrementAndGet();
+                    } else if (cosineDistance(vector, entry.question()) <= maxDistance) {
+                        hits.incrementAndGet();
+                        return Optional.of(entry.tokens());
+                    }
+                }
+                if (candidates.isEmpty()) {
+                    entries.remove(key);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * Remember a completely generated answer.
+     *
+     * @param question the question that was answered
+     * @param chunks the chunks the answer is based on
+     * @param tokens the streamed answer tokens
+     */
+    void store(String question, List<RetrievedChunk> chunks, List<String> tokens) {
+        List<Long> key = key(chunks);
+        if (key == null || tokens.isEmpty()) {
+            return;
+        }
+        Entry entry = new Entry(VectorCodec.encode(embeddingClient.embed(question)), digests(chunks),
+                List.copyOf(tokens), clock.instant().plus(ttl));
+        synchronized (entries) {
+            List<Entry> candidates = entries.computeIfAbsent(key, k -> new ArrayList<>());
+            if (candidates.size() >= MAX_ANSWERS_PER_CHUNK_SET) {
+                candidates.remove(0);
+            }
+            candidates.add(entry);
+        }
+    }
+
+    private static List<Long> key(List<RetrievedChunk> chunks) {
+        if (chunks.isEmpty() || chunks.stream().anyMatch(chunk -> chunk.digest() == null)) {
+            return null;
+        }
+        return chunks.stream().map(RetrievedChunk::id).sorted().toList();
+    }
+
+    private static Map<Long, String> digests(List<RetrievedChunk> chunks) {
+        Map<Long, String> digests = new LinkedHashMap<>();
+        chunks.forEach(chunk -> digests.put(chunk.id(), chunk.digest()));
+        return digests;
+    }
+
+    private static double cosineDistance(float[] vector, short[] cached) {
+        double dot = 0d;
+        double normA = 0d;
+        double normB = 0d;
+        for (int i = 0; i < vector.length; i++) {
+            float other = Float.float16ToFloat(cached[i]);
+            dot += vector[i] * other;
+            normA += vector[i] * vector[i];
+            normB += other * other;
+        }
+        if (normA == 0d || normB == 0d) {
+            return 1d;
+        }
+        return 1d - dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rag.answer.cache.gets", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .description("Answers replayed from the semantic answer cache")
+                .register(registry);
+        FunctionCounter.builder("rag.answer.cache.gets", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .description("Answers that had to be generated by the language model")
+                .register(registry);
+        FunctionCounter.builder("rag.answer.cache.invalidations", invalidations, AtomicLong::get)
+                .description("Cached answers dropped because they expired or a chunk was re-ingested")
+                .register(registry);
+    }
+
+    private record Entry(short[] question, Map<Long, String> digests, List<String> tokens, Instant expiresAt) {
+    }
+}
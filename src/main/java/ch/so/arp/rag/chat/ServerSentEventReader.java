@@ -0,0 +1,84 @@
+package ch.so.arp.rag.chat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental reader for a {@code text/event-stream} body. Bytes are consumed
+ * as soon as the underlying stream makes them available and every complete
+ * event is returned immediately, so the caller never waits for the whole
+ * response. Lines are decoded only once they are complete, which keeps multi
+ * byte characters split across network reads intact.
+ */
+final class ServerSentEventReader {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private int position;
+    private int limit;
+    private boolean skipLineFeed;
+
+    ServerSentEventReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next event.
+     *
+     * @return the (joined) {@code data} lines of the next event or {@code null}
+     *         once the stream is exhausted
+     * @throws IOException if reading from the stream fails
+     */
+    String next() throws IOException {
+        StringBuilder data = null;
+        String current;
+        while ((current = readLine()) != null) {
+            if (current.isEmpty()) {
+                if (data != null) {
+                    return data.toString();
+                }
+            } else if (current.startsWith("data:")) {
+                String value = current.startsWith("data: ") ? current.substring(6) : current.substring(5);
+                if (data == null) {
+                    data = new StringBuilder(value);
+                } else {
+                    data.append('\n').append(value);
+                }
+            }
+            // Comments and the event, id and retry fields are not used by the completions stream.
+        }
+        return data != null ? data.toString() : null;
+    }
+
+    private String readLine() throws IOException {
+        line.reset();
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return line.size() > 0 ? line.toString(StandardCharsets.UTF_8) : null;
+                }
+            }
+            byte b = buffer[position++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (b == '\n') {
+                    continue;
+                }
+            }
+            if (b == '\n') {
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            if (b == '\r') {
+                skipLineFeed = true;
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            line.write(b);
+        }
+    }
+}
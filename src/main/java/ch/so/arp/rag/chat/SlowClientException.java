@@ -0,0 +1,12 @@
+package ch.so.arp.rag.chat;
+
+/**
+ * Signals that a chat stream was aborted because its client did not read the
+ * response fast enough.
+ */
+class SlowClientException extends RuntimeException {
+
+    SlowClientException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,129 @@
+package ch.so.arp.rag.chat;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties controlling how generated tokens are written to the
+ * server sent event stream.
+ */
+@ConfigurationProperties(prefix = "rag.chat.streaming")
+public class StreamingProperties {
+
+    /**
+     * Whether tokens should be coalesced into larger SSE frames. When disabled
+     * every token is sent and flushed on its own.
+     */
+    private boolean coalescing = true;
+
+    /**
+     * Number of buffered bytes that triggers a flush.
+     */
+    private int maxBytes = 256;
+
+    /**
+     * Maximum time a token may wait in the buffer before it is flushed.
+     */
+    private Duration maxLatency = Duration.ofMillis(20);
+
+    /**
+     * Whether a token ending a sentence triggers a flush.
+     */
+    private boolean flushOnSentenceEnd = true;
+
+    /**
+     * Maximum number of bytes buffered or in flight per stream. A client that
+     * reads slower than the model generates is handled by the
+     * {@link #getSlowClientPolicy() slow client policy} once this is reached.
+     */
+    private int maxPendingBytes = 64 * 1024;
+
+    /**
+     * What happens to a stream whose client does not keep up.
+     */
+    private SlowClientPolicy slowClientPolicy = SlowClientPolicy.BLOCK;
+
+    /**
+     * Time the producer waits for a slow client with
+     * {@link SlowClientPolicy#BLOCK} before the stream is aborted.
+     */
+    private Duration slowClientTimeout = Duration.ofSeconds(10);
+
+    static StreamingProperties passThrough() {
+        StreamingProperties properties = new StreamingProperties();
+        properties.setCoalescing(false);
+        return properties;
+    }
+
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public Duration getMaxLatency() {
+        return maxLatency;
+    }
+
+    public void setMaxLatency(Duration maxLatency) {
+        this.maxLatency = maxLatency;
+    }
+
+    public boolean isFlushOnSentenceEnd() {
+        return flushOnSentenceEnd;
+    }
+
+    public void setFlushOnSentenceEnd(boolean flushOnSentenceEnd) {
+        this.flushOnSentenceEnd = flushOnSentenceEnd;
+    }
+
+    public int getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public void setMaxPendingBytes(int maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public SlowClientPolicy getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    public void setSlowClientPolicy(SlowClientPolicy slowClientPolicy) {
+        this.slowClientPolicy = slowClientPolicy;
+    }
+
+    public Duration getSlowClientTimeout() {
+        return slowClientTimeout;
+    }
+
+    public void setSlowClientTimeout(Duration slowClientTimeout) {
+        this.slowClientTimeout = slowClientTimeout;
+    }
+
+    /**
+     * Handling of clients that read slower than tokens are produced.
+     */
+    public enum SlowClientPolicy {
+        /**
+         * Block the producer until the client caught up, at most for the slow
+         * client timeout.
+         */
+        BLOCK,
+        /**
+         * Abort the stream immediately.
+         */
+        DISCONNECT
+    }
+}
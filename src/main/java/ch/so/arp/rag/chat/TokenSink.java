@@ -0,0 +1,21 @@
+package ch.so.arp.rag.chat;
+
+/**
+ * Destination of the tokens of a single chat response.
+ */
+interface TokenSink {
+
+    /**
+     * Hand over the next token. Implementations may throw an unchecked
+     * exception to abort the generation, e.g. when the client is gone.
+     *
+     * @param token the generated token
+     */
+    void accept(String token);
+
+    /**
+     * Write all tokens that are still buffered. Called once the answer is
+     * complete and before the emitter is completed.
+     */
+    void close();
+}
@@ -1,5 +1,6 @@
 package ch.so.arp.rag.chat;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -15,4 +16,38 @@ public interface VectorDatabase {
      * @return a list of context snippets
      */
     List<String> findRelevantContext(String question);
+
+    /**
+     * Find the most relevant chunks for the question honouring the per request
+     * options. Implementations without a notion of chunk identity fall back to
+     * {@link #findRelevantContext(String)} and number the snippets by position.
+     *
+     * @param question the question that should be answered
+     * @param options per request retrieval options
+     * @return the chunks ordered by relevance
+     */
+    default List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+        List<String> context = findRelevantContext(question);
+        List<RetrievedChunk> chunks = new ArrayList<>(context.size());
+        for (int i = 0; i < context.size(); i++) {
+            chunks.add(new RetrievedChunk(i, context.get(i), null, 0d));
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the most relevant chunks for the question and abort the lookup when
+     * the request gets cancelled. Implementations that cannot interrupt their
+     * work only check the token before they start.
+     *
+     * @param question the question that should be answered
+     * @param options per request retrieval options
+     * @param cancellation token of the chat request
+     * @return the chunks ordered by relevance
+     */
+    default List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options,
+            CancellationToken cancellation) {
+        cancellation.throwIfCancelled();
+        return findRelevantChunks(question, options);
+    }
 }
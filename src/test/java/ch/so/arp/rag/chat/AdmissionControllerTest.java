@@ -0,0 +1,69 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionControllerTest {
+
+    @Test
+    void limitsConcurrentRequestsPerClient() {
+        AdmissionController admission = new AdmissionController(10, 2, 10, Duration.ofMillis(10));
+
+        admission.admit("a");
+        AdmissionController.Permit permit = admission.admit("a");
+
+        assertThatThrownBy(() -> admission.admit("a")).isInstanceOf(AdmissionRejectedException.class);
+        assertThat(admission.admit("b")).isNotNull();
+
+        permit.close();
+        permit.close();
+        assertThat(admission.admit("a")).isNotNull();
+        assertThat(admission.activeRequests()).isEqualTo(3);
+    }
+
+    @Test
+    void rejectsWhenNoSlotFreesUpBeforeDeadline() {
+        AdmissionController admission = new AdmissionController(1, 1, 10, Duration.ofMillis(50));
+        admission.admit("a");
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> admission.admit("b")).isInstanceOf(AdmissionRejectedException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+        assertThat(admission.queuedRequests()).isZero();
+        assertThat(admission.activeRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsImmediatelyWhenQueueIsFull() {
+        AdmissionController admission = new AdmissionController(1, 1, 0, Duration.ofSeconds(10));
+        admission.admit("a");
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> admission.admit("b")).isInstanceOf(AdmissionRejectedException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void admitsQueuedRequestOnceSlotIsReleased() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 1, 1, Duration.ofSeconds(5));
+        AdmissionController.Permit permit = admission.admit("a");
+
+        CompletableFuture<AdmissionController.Permit> queued = CompletableFuture.supplyAsync(
+                () -> admission.admit("b"));
+        while (admission.queuedRequests() == 0) {
+            Thread.onSpinWait();
+        }
+        permit.close();
+
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(admission.queuedRequests()).isZero();
+    }
+}
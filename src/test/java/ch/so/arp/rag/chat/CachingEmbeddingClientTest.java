@@ -0,0 +1,124 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CachingEmbeddingClientTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final EmbeddingClient delegate = text -> {
+        calls.incrementAndGet();
+        return new float[] { 0.125f, -0.5f, text.length() };
+    };
+
+    @Test
+    void normalisesCaseAccentsAndWhitespace() {
+        assertThat(CachingEmbeddingClient.normalize("  Was gilt für\n Fruchtfolgeflächen? "))
+                .isEqualTo("was gilt fur fruchtfolgeflachen?");
+    }
+
+    @Test
+    void servesNearlyIdenticalQuestionsFromCache() {
+        CachingEmbeddingClient client = new CachingEmbeddingClient(delegate, 10, Duration.ofMinutes(5));
+
+        float[] first = client.embed("Was gilt für Hecken?");
+        float[] second = client.embed("was gilt fur  hecken?");
+
+        assertThat(calls).hasValue(1);
+        assertThat(second).containsExactly(first);
+    }
+
+    @Test
+    void storesVectorsWithHalfPrecision() {
+        CachingEmbeddingClient client = new CachingEmbeddingClient(text -> new float[] { 0.0123456f }, 10,
+                Duration.ofMinutes(5));
+
+        client.embed("Lärm");
+        float[] cached = client.embed("Lärm");
+
+        assertThat(cached[0]).isCloseTo(0.0123456f, Offset.offset(1e-5f));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() {
+        CachingEmbeddingClient client = new CachingEmbeddingClient(delegate, 2, Duration.ofMinutes(5));
+
+        client.embed("a");
+        client.embed("b");
+        client.embed("a");
+        client.embed("c");
+        client.embed("a");
+        client.embed("b");
+
+        assertThat(calls).hasValue(4);
+        assertThat(client.size()).isEqualTo(2);
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        CachingEmbeddingClient client = new CachingEmbeddingClient(delegate, 10, Duration.ofMinutes(5), clock);
+
+        client.embed("Waldabstand");
+        clock.advance(Duration.ofMinutes(6));
+        client.embed("Waldabstand");
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void exposesHitAndMissCounters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingEmbeddingClient client = new CachingEmbeddingClient(delegate, 10, Duration.ofMinutes(5));
+        client.bindTo(registry);
+
+        client.embed("Biber");
+        client.embed("Biber");
+        client.embed("Biber");
+
+        assertThat(registry.get("rag.embedding.cache.gets").tag("result", "hit").functionCounter().count())
+                .isEqualTo(2d);
+        assertThat(registry.get("rag.embedding.cache.gets").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1d);
+        assertThat(registry.get("rag.embedding.cache.hit.ratio").gauge().value()).isEqualTo(2d / 3);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
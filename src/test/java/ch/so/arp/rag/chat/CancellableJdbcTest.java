@@ -0,0 +1,82 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+class CancellableJdbcTest {
+
+    private static final String SQL = "SELECT id FROM arp_rag_vp.chunks";
+
+    private final DataSource dataSource = mock(DataSource.class);
+    private final Connection connection = mock(Connection.class);
+    private final PreparedStatement statement = mock(PreparedStatement.class);
+    private final ResultSet resultSet = mock(ResultSet.class);
+    private final CancellationToken cancellation = new CancellationToken();
+
+    @BeforeEach
+    void mockDriver() throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+    }
+
+    @Test
+    void cancelsRunningStatement() throws SQLException {
+        when(statement.executeQuery()).thenAnswer(invocation -> {
+            cancellation.cancel();
+            return resultSet;
+        });
+
+        query();
+
+        verify(statement).cancel();
+    }
+
+    @Test
+    void doesNotCancelFinishedStatement() throws SQLException {
+        query();
+        cancellation.cancel();
+
+        verify(statement, never()).cancel();
+    }
+
+    @Test
+    void doesNotCancelFailedStatement() throws SQLException {
+        when(statement.executeQuery()).thenThrow(new SQLException("relation does not exist", "42P01"));
+
+        assertThatThrownBy(this::query).isInstanceOf(DataAccessException.class);
+        cancellation.cancel();
+
+        verify(statement, never()).cancel();
+    }
+
+    @Test
+    void returnsTemplateForTokenThatIsNeverCancelled() {
+        NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+
+        assertThat(CancellableJdbc.bind(jdbcTemplate, CancellationToken.NONE)).isSameAs(jdbcTemplate);
+    }
+
+    private void query() {
+        CancellableJdbc.bind(new NamedParameterJdbcTemplate(dataSource), cancellation)
+                .queryForList(SQL, Map.of(), Long.class);
+    }
+}
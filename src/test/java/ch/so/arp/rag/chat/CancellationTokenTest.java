@@ -0,0 +1,57 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class CancellationTokenTest {
+
+    @Test
+    void runsRegisteredCallbacksOnce() {
+        CancellationToken cancellation = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        cancellation.onCancel(calls::incrementAndGet);
+
+        cancellation.cancel();
+        cancellation.cancel();
+
+        assertThat(calls).hasValue(1);
+        assertThat(cancellation.isCancelled()).isTrue();
+        assertThatThrownBy(cancellation::throwIfCancelled).isInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    void skipsClosedRegistrations() {
+        CancellationToken cancellation = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        try (CancellationToken.Registration registration = cancellation.onCancel(calls::incrementAndGet)) {
+            assertThat(calls).hasValue(0);
+        }
+
+        cancellation.cancel();
+
+        assertThat(calls).hasValue(0);
+    }
+
+    @Test
+    void runsLateRegistrationImmediately() {
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+        AtomicInteger calls = new AtomicInteger();
+
+        cancellation.onCancel(calls::incrementAndGet);
+
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void noneIsNeverCancelled() {
+        CancellationToken.NONE.cancel();
+
+        assertThat(CancellationToken.NONE.isCancelled()).isFalse();
+    }
+}
@@ -2,15 +2,22 @@ package ch.so.arp.rag.chat;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.sql.DataSource;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
+import ch.so.arp.rag.ingest.EmbeddingCache;
+
 class ChatConfigurationTest {
 
     private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
@@ -47,6 +54,73 @@ class ChatConfigurationTest {
                 });
     }
 
+    @Test
+    void createsHybridDatabaseWhenConfigured() {
+        contextRunner
+                .withPropertyValues(
+                        "rag.chat.mock-vector-store=false",
+                        "rag.chat.retrieval.mode=hybrid")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(VectorDatabase.class);
+                    assertThat(context).getBean(VectorDatabase.class).isInstanceOf(HybridVectorDatabase.class);
+                });
+    }
+
+    @Test
+    void closesRetrievalExecutorsWithContext() {
+        AtomicReference<ExecutorService> retrievalExecutor = new AtomicReference<>();
+        AtomicReference<ExecutorService> rerankExecutor = new AtomicReference<>();
+        contextRunner
+                .withPropertyValues(
+                        "rag.chat.mock-vector-store=false",
+                        "rag.chat.retrieval.mode=hybrid",
+                        "rag.chat.rerank.enabled=true")
+                .run(context -> {
+                    assertThat(context).getBean(VectorDatabase.class).isInstanceOf(RerankingVectorDatabase.class);
+                    retrievalExecutor.set(context.getBean("retrievalExecutor", ExecutorService.class));
+                    rerankExecutor.set(context.getBean("rerankExecutor", ExecutorService.class));
+                });
+
+        assertThat(retrievalExecutor.get().isShutdown()).isTrue();
+        assertThat(rerankExecutor.get().isShutdown()).isTrue();
+    }
+
+    @Test
+    void bindsIterativeScanAsEnum() {
+        contextRunner
+                .withPropertyValues("rag.chat.retrieval.iterative-scan=strict_order")
+                .run(context -> {
+                    RetrievalProperties.IterativeScan scan = context.getBean(RetrievalProperties.class)
+                            .getIterativeScan();
+                    assertThat(scan).isEqualTo(RetrievalProperties.IterativeScan.STRICT_ORDER);
+                    assertThat(scan.hnsw()).isEqualTo("strict_order");
+                    assertThat(scan.ivfflat()).isEqualTo("relaxed_order");
+                });
+        contextRunner
+                .withPropertyValues("rag.chat.retrieval.iterative-scan=off")
+                .run(context -> assertThat(context.getBean(RetrievalProperties.class).getIterativeScan())
+                        .isEqualTo(RetrievalProperties.IterativeScan.OFF));
+        contextRunner
+                .withPropertyValues("rag.chat.retrieval.iterative-scan=exact")
+                .run(context -> assertThat(context).hasFailed());
+    }
+
+    @Test
+    void opensDiskEmbeddingCacheOnlyForOpenAi(@TempDir Path directory) {
+        contextRunner
+                .withPropertyValues("rag.chat.embedding-cache.directory=" + directory)
+                .run(context -> assertThat(context).doesNotHaveBean(EmbeddingCache.class));
+        contextRunner
+                .withPropertyValues(
+                        "rag.chat.mock-openai=false",
+                        "spring.ai.openai.api-key=test-key",
+                        "rag.chat.embedding-cache.directory=" + directory)
+                .run(context -> {
+                    assertThat(context).hasSingleBean(EmbeddingCache.class);
+                    assertThat(directory.resolve("text-embedding-3-large-3072.idx")).exists();
+                });
+    }
+
     @Configuration(proxyBeanMethods = false)
     static class InfrastructureConfiguration {
 
@@ -5,14 +5,25 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 class ChatControllerTest {
@@ -23,12 +34,12 @@ class ChatControllerTest {
         RecordingSseEmitter emitter = new RecordingSseEmitter();
         AtomicReference<ChatService.StreamingResponseHandler> handlerReference = new AtomicReference<>();
         doAnswer(invocation -> {
-            handlerReference.set(invocation.getArgument(1));
-            return null;
-        }).when(chatService).streamAnswer(eq("How are you?"), any());
+            handlerReference.set(invocation.getArgument(2));
+            return new CancellationToken();
+        }).when(chatService).streamAnswer(eq("How are you?"), any(), any());
 
         ChatController controller = new ChatController(chatService, () -> emitter);
-        SseEmitter returnedEmitter = controller.chat(new ChatRequest("How are you?"));
+        SseEmitter returnedEmitter = controller.chat(new ChatRequest("How are you?"), new MockHttpServletRequest());
 
         assertThat(returnedEmitter).isSameAs(emitter);
         ChatService.StreamingResponseHandler handler = handlerReference.get();
@@ -40,18 +51,47 @@ class ChatControllerTest {
         assertThat(emitter.isCompleted()).isTrue();
     }
 
+    @Test
+    void rejectsRetrievalOptionsOutOfRange() throws Exception {
+        ChatService chatService = mock(ChatService.class);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new ChatController(chatService, SseEmitter::new)).build();
+
+        for (String body : List.of("{\"question\":\"Hecken?\",\"topK\":0}",
+                "{\"question\":\"Hecken?\",\"probes\":-1}", "{\"question\":\" \"}")) {
+            mvc.perform(post("/api/chat")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .content(body))
+                    .andExpect(status().isBadRequest());
+        }
+        verify(chatService, never()).streamAnswer(any(), any(), any());
+    }
+
+    @Test
+    void rejectsInvalidFilter() throws Exception {
+        ChatService chatService = mock(ChatService.class);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new ChatController(chatService, SseEmitter::new)).build();
+
+        mvc.perform(post("/api/chat")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .content("{\"question\":\"Hecken?\",\"filter\":{\"planType\":\"zonenplan\"}}"))
+                .andExpect(status().isBadRequest());
+        verify(chatService, never()).streamAnswer(any(), any(), any());
+    }
+
     @Test
     void reportsErrorsFromStreamingHandler() {
         ChatService chatService = mock(ChatService.class);
         RecordingSseEmitter emitter = new RecordingSseEmitter();
         AtomicReference<ChatService.StreamingResponseHandler> handlerReference = new AtomicReference<>();
         doAnswer(invocation -> {
-            handlerReference.set(invocation.getArgument(1));
-            return null;
-        }).when(chatService).streamAnswer(eq("broken"), any());
+            handlerReference.set(invocation.getArgument(2));
+            return new CancellationToken();
+        }).when(chatService).streamAnswer(eq("broken"), any(), any());
 
         ChatController controller = new ChatController(chatService, () -> emitter);
-        controller.chat(new ChatRequest("broken"));
+        controller.chat(new ChatRequest("broken"), new MockHttpServletRequest());
 
         RuntimeException failure = new RuntimeException("boom");
         handlerReference.get().onError(failure);
@@ -60,11 +100,124 @@ class ChatControllerTest {
         assertThat(emitter.isCompleted()).isFalse();
     }
 
+    @Test
+    void coalescesTokensWhenConfigured() {
+        ChatService chatService = mock(ChatService.class);
+        RecordingSseEmitter emitter = new RecordingSseEmitter();
+        AtomicReference<ChatService.StreamingResponseHandler> handlerReference = new AtomicReference<>();
+        doAnswer(invocation -> {
+            handlerReference.set(invocation.getArgument(2));
+            return new CancellationToken();
+        }).when(chatService).streamAnswer(eq("Hecken?"), any(), any());
+        StreamingProperties properties = new StreamingProperties();
+        properties.setMaxLatency(Duration.ofHours(1));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            ChatController controller = new ChatController(chatService, () -> emitter, properties, scheduler);
+            controller.chat(new ChatRequest("Hecken?"), new MockHttpServletRequest());
+            ChatService.StreamingResponseHandler handler = handlerReference.get();
+            handler.onToken("Hecken");
+            handler.onToken(" sind");
+            handler.onToken(" geschützt");
+            handler.onComplete();
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        assertThat(emitter.getEvents()).containsExactly("Hecken sind geschützt");
+        assertThat(emitter.isCompleted()).isTrue();
+    }
+
+    @Test
+    void cancelsResponseWhenEmitterCompletes() {
+        ChatService chatService = mock(ChatService.class);
+        RecordingSseEmitter emitter = new RecordingSseEmitter();
+        CancellationToken cancellation = new CancellationToken();
+        doAnswer(invocation -> cancellation).when(chatService).streamAnswer(eq("Bauzonen?"), any(), any());
+
+        ChatController controller = new ChatController(chatService, () -> emitter);
+        controller.chat(new ChatRequest("Bauzonen?"), new MockHttpServletRequest());
+
+        assertThat(cancellation.isCancelled()).isFalse();
+        emitter.getCompletionCallback().run();
+        assertThat(cancellation.isCancelled()).isTrue();
+    }
+
+    @Test
+    void rejectsRequestsBeyondClientLimitWithErrorEvent() {
+        ChatService chatService = mock(ChatService.class);
+        doAnswer(invocation -> new CancellationToken()).when(chatService).streamAnswer(any(), any(), any());
+        AdmissionController admission = new AdmissionController(10, 1, 10, Duration.ofMillis(10));
+        StreamingProperties streaming = StreamingProperties.passThrough();
+        RecordingSseEmitter first = new RecordingSseEmitter();
+        RecordingSseEmitter second = new RecordingSseEmitter();
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+        servletRequest.addHeader("X-Client-Key", "gemeinde-a");
+        MockHttpServletRequest rotated = new MockHttpServletRequest();
+        rotated.addHeader("X-Client-Key", "gemeinde-b");
+
+        new ChatController(chatService, () -> first, streaming, null, admission, new AdmissionProperties())
+                .chat(new ChatRequest("Erste Frage"), servletRequest);
+        // without a configured header the key is the remote address, whatever the client sends
+        new ChatController(chatService, () -> second, streaming, null, admission, new AdmissionProperties())
+                .chat(new ChatRequest("Zweite Frage"), rotated);
+
+        verify(chatService, never()).streamAnswer(eq("Zweite Frage"), any(), any());
+        assertThat(second.getErrorEvents()).hasSize(1);
+        assertThat(second.isCompleted()).isTrue();
+        assertThat(first.getErrorEvents()).isEmpty();
+    }
+
+    @Test
+    void keysClientsByConfiguredHeader() {
+        ChatService chatService = mock(ChatService.class);
+        doAnswer(invocation -> new CancellationToken()).when(chatService).streamAnswer(any(), any(), any());
+        AdmissionController admission = new AdmissionController(10, 1, 10, Duration.ofMillis(10));
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setClientKeyHeader("X-Client-Key");
+        RecordingSseEmitter second = new RecordingSseEmitter();
+
+        for (String key : List.of("gemeinde-a", "gemeinde-b")) {
+            MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+            servletRequest.addHeader("X-Client-Key", key);
+            new ChatController(chatService, key.endsWith("a") ? RecordingSseEmitter::new : () -> second,
+                    StreamingProperties.passThrough(), null, admission, properties)
+                    .chat(new ChatRequest("Frage " + key), servletRequest);
+        }
+
+        assertThat(second.getErrorEvents()).isEmpty();
+        assertThat(admission.activeRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void keepsAdmissionSlotUntilWorkerHasEnded() {
+        ChatService chatService = mock(ChatService.class);
+        AtomicReference<ChatService.StreamingResponseHandler> handlerReference = new AtomicReference<>();
+        doAnswer(invocation -> {
+            handlerReference.set(invocation.getArgument(2));
+            return new CancellationToken();
+        }).when(chatService).streamAnswer(any(), any(), any());
+        AdmissionController admission = new AdmissionController(1, 1, 0, Duration.ofMillis(10));
+        RecordingSseEmitter emitter = new RecordingSseEmitter();
+
+        new ChatController(chatService, () -> emitter, StreamingProperties.passThrough(), null, admission,
+                new AdmissionProperties()).chat(new ChatRequest("Gewässerraum?"), new MockHttpServletRequest());
+        // the client disconnects, the worker is still embedding the question
+        emitter.getCompletionCallback().run();
+
+        assertThat(admission.activeRequests()).isEqualTo(1);
+        handlerReference.get().onFinished();
+        assertThat(admission.activeRequests()).isZero();
+    }
+
     private static final class RecordingSseEmitter extends SseEmitter {
 
         private final List<String> events = new CopyOnWriteArrayList<>();
         private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        private final List<SseEventBuilder> errorEvents = new CopyOnWriteArrayList<>();
         private volatile boolean completed;
+        private volatile Runnable completionCallback;
 
         private RecordingSseEmitter() {
             super(0L);
@@ -75,6 +228,11 @@ class ChatControllerTest {
             events.add(String.valueOf(object));
         }
 
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            errorEvents.add(builder);
+        }
+
         @Override
         public void complete() {
             completed = true;
@@ -87,10 +245,24 @@ class ChatControllerTest {
             super.completeWithError(ex);
         }
 
+        @Override
+        public synchronized void onCompletion(Runnable callback) {
+            completionCallback = callback;
+            super.onCompletion(callback);
+        }
+
+        Runnable getCompletionCallback() {
+            return completionCallback;
+        }
+
         List<String> getEvents() {
             return new ArrayList<>(events);
         }
 
+        List<SseEventBuilder> getErrorEvents() {
+            return new ArrayList<>(errorEvents);
+        }
+
         List<Throwable> getErrors() {
             return new ArrayList<>(errors);
         }
@@ -2,10 +2,15 @@ package ch.so.arp.rag.chat;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
 
@@ -80,4 +85,161 @@ class ChatServiceTest {
         assertThat(completed).isFalse();
         assertThat(errored).isTrue();
     }
+
+    @Test
+    void forwardsRetrievalOptionsToVectorDatabase() {
+        AtomicReference<RetrievalOptions> received = new AtomicReference<>();
+        List<String> seenContext = new ArrayList<>();
+        LlmClient llmClient = (question, context, consumer) -> seenContext.addAll(context);
+        VectorDatabase vectorDatabase = new VectorDatabase() {
+            @Override
+            public List<String> findRelevantContext(String question) {
+                throw new AssertionError("options must be honoured");
+            }
+
+            @Override
+            public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+                received.set(options);
+                return List.of(new RetrievedChunk(42L, "chunk-42", "digest-42", 0.9d));
+            }
+        };
+        ChatService chatService = new ChatService(llmClient, vectorDatabase, Runnable::run);
+        RetrievalOptions options = new RetrievalOptions(8, 50);
+
+        chatService.streamAnswer("What is RAG?", options, new ChatService.StreamingResponseHandler() {
+            @Override
+            public void onToken(String token) {
+                // ignored
+            }
+
+            @Override
+            public void onComplete() {
+                // ignored
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+        });
+
+        assertThat(received.get()).isEqualTo(options);
+        assertThat(seenContext).containsExactly("chunk-42");
+    }
+
+    @Test
+    void replaysCachedAnswerWithoutCallingLlm() {
+        AtomicInteger generations = new AtomicInteger();
+        LlmClient llmClient = (question, context, consumer) -> {
+            generations.incrementAndGet();
+            consumer.accept("generated-1");
+            consumer.accept("generated-2");
+        };
+        VectorDatabase vectorDatabase = new VectorDatabase() {
+            @Override
+            public List<String> findRelevantContext(String question) {
+                return List.of("ctx");
+            }
+
+            @Override
+            public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+                return List.of(new RetrievedChunk(7L, "ctx", "digest-7", 0.8d));
+            }
+        };
+        SemanticAnswerCache answerCache = new SemanticAnswerCache(new MockEmbeddingClient(), 0.05, 10,
+                Duration.ofHours(1));
+        ChatService chatService = new ChatService(llmClient, vectorDatabase, Runnable::run, answerCache);
+
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        chatService.streamAnswer("Was gilt für Hecken?", collectingHandler(first));
+        chatService.streamAnswer("Was gilt für Hecken?", collectingHandler(second));
+
+        assertThat(generations).hasValue(1);
+        assertThat(second).containsExactlyElementsOf(first).containsExactly("generated-1", "generated-2");
+    }
+
+    private static ChatService.StreamingResponseHandler collectingHandler(List<String> tokens) {
+        return new ChatService.StreamingResponseHandler() {
+            @Override
+            public void onToken(String token) {
+                tokens.add(token);
+            }
+
+            @Override
+            public void onComplete() {
+                // ignored
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+        };
+    }
+
+    @Test
+    void stopsStreamingWithoutCallbacksWhenCancelled() throws InterruptedException {
+        CountDownLatch firstToken = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger produced = new AtomicInteger();
+        LlmClient llmClient = (question, context, consumer) -> {
+            for (int i = 0; i < 1_000; i++) {
+                consumer.accept("token-" + i);
+                produced.incrementAndGet();
+                firstToken.countDown();
+                sleep(Duration.ofMillis(5));
+            }
+        };
+        VectorDatabase vectorDatabase = question -> List.of("ctx");
+        Executor executor = command -> Thread.ofVirtual().start(() -> {
+            try {
+                command.run();
+            } finally {
+                finished.countDown();
+            }
+        });
+        ChatService chatService = new ChatService(llmClient, vectorDatabase, executor);
+        AtomicBoolean completed = new AtomicBoolean(false);
+        AtomicBoolean errored = new AtomicBoolean(false);
+        AtomicBoolean ended = new AtomicBoolean(false);
+
+        CancellationToken cancellation = chatService.streamAnswer("Abbrechen?",
+                new ChatService.StreamingResponseHandler() {
+                    @Override
+                    public void onToken(String token) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        completed.set(true);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        errored.set(true);
+                    }
+
+                    @Override
+                    public void onFinished() {
+                        ended.set(true);
+                    }
+                });
+        assertThat(firstToken.await(5, TimeUnit.SECONDS)).isTrue();
+        cancellation.cancel();
+
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(produced.get()).isLessThan(1_000);
+        assertThat(completed).isFalse();
+        assertThat(errored).isFalse();
+        assertThat(ended).isTrue();
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
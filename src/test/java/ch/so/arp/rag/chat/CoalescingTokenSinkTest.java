@@ -0,0 +1,175 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class CoalescingTokenSinkTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void coalescesTokensUntilByteThreshold() {
+        RecordingEmitter emitter = new RecordingEmitter(null);
+        StreamingProperties properties = properties();
+        properties.setMaxBytes(10);
+        properties.setMaxLatency(Duration.ofHours(1));
+        CoalescingTokenSink sink = new CoalescingTokenSink(emitter, properties, scheduler);
+
+        sink.accept("Fruchtfolge");
+        sink.accept("flä");
+        sink.accept("chen");
+        sink.close();
+
+        assertThat(String.join("", emitter.frames)).isEqualTo("Fruchtfolgeflächen");
+        assertThat(emitter.frames).hasSizeLessThan(3);
+    }
+
+    @Test
+    void flushesOnSentenceEnd() throws InterruptedException {
+        RecordingEmitter emitter = new RecordingEmitter(null);
+        StreamingProperties properties = properties();
+        properties.setMaxLatency(Duration.ofHours(1));
+        CoalescingTokenSink sink = new CoalescingTokenSink(emitter, properties, scheduler);
+
+        sink.accept("Hecken");
+        sink.accept(" sind geschützt.");
+
+        assertThat(emitter.awaitFrames(1)).isTrue();
+        assertThat(emitter.frames).containsExactly("Hecken sind geschützt.");
+    }
+
+    @Test
+    void flushesAfterMaxLatency() throws InterruptedException {
+        RecordingEmitter emitter = new RecordingEmitter(null);
+        StreamingProperties properties = properties();
+        properties.setMaxLatency(Duration.ofMillis(20));
+        CoalescingTokenSink sink = new CoalescingTokenSink(emitter, properties, scheduler);
+
+        sink.accept("Gewässer");
+        sink.accept("raum");
+
+        assertThat(emitter.awaitFrames(1)).isTrue();
+        assertThat(emitter.frames).containsExactly("Gewässerraum");
+    }
+
+    @Test
+    void disconnectsSlowClients() {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter emitter = new RecordingEmitter(release);
+        StreamingProperties properties = properties();
+        properties.setMaxBytes(4);
+        properties.setMaxPendingBytes(16);
+        properties.setSlowClientPolicy(StreamingProperties.SlowClientPolicy.DISCONNECT);
+        CoalescingTokenSink sink = new CoalescingTokenSink(emitter, properties, scheduler);
+
+        try {
+            assertThatThrownBy(() -> {
+                for (int i = 0; i < 100; i++) {
+                    sink.accept("token");
+                }
+            }).isInstanceOf(SlowClientException.class);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void blocksProducerUntilSlowClientCaughtUp() {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter emitter = new RecordingEmitter(release);
+        StreamingProperties properties = properties();
+        properties.setMaxBytes(4);
+        properties.setMaxPendingBytes(16);
+        properties.setSlowClientTimeout(Duration.ofSeconds(5));
+        CoalescingTokenSink sink = new CoalescingTokenSink(emitter, properties, scheduler);
+        scheduler.schedule(release::countDown, 100, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            sink.accept("token");
+        }
+        sink.close();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(90));
+        assertThat(String.join("", emitter.frames)).isEqualTo("token".repeat(10));
+    }
+
+    @Test
+    void reportsClientErrorsToProducer() {
+        SseEmitter emitter = new SseEmitter(0L) {
+            @Override
+            public void send(Object object) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        CoalescingTokenSink sink = new CoalescingTokenSink(emitter, properties(), scheduler);
+
+        sink.accept("token.");
+
+        assertThatThrownBy(sink::close).hasRootCauseMessage("Broken pipe");
+    }
+
+    @Test
+    void detectsSentenceEnds() {
+        assertThat(CoalescingTokenSink.endsSentence("geschützt. ")).isTrue();
+        assertThat(CoalescingTokenSink.endsSentence("Absatz\n")).isTrue();
+        assertThat(CoalescingTokenSink.endsSentence("Nr. 5")).isFalse();
+        assertThat(CoalescingTokenSink.utf8Length("Lärm")).isEqualTo(5);
+    }
+
+    private static StreamingProperties properties() {
+        StreamingProperties properties = new StreamingProperties();
+        properties.setMaxBytes(1024);
+        return properties;
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final List<String> frames = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+
+        private RecordingEmitter(CountDownLatch release) {
+            super(0L);
+            this.release = release;
+        }
+
+        @Override
+        public void send(Object object) throws IOException {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                }
+            }
+            frames.add(String.valueOf(object));
+        }
+
+        boolean awaitFrames(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (frames.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            return frames.size() >= count;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class HybridVectorDatabaseTest {
+
+    @Test
+    void runsBothLegsConcurrentlyAndFusesResults() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        VectorDatabase vectorSearch = new LegStub(bothStarted, List.of(chunk(1), chunk(2)));
+        VectorDatabase fullTextSearch = new LegStub(bothStarted, List.of(chunk(2), chunk(3)));
+        HybridVectorDatabase database = new HybridVectorDatabase(vectorSearch, fullTextSearch,
+                Executors.newVirtualThreadPerTaskExecutor(), new RetrievalProperties());
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks("SOBAU 82'326", new RetrievalOptions(2, null));
+
+        assertThat(chunks).extracting(RetrievedChunk::id).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void requestsMoreCandidatesThanTopKFromEachLeg() {
+        AtomicReference<RetrievalOptions> received = new AtomicReference<>();
+        VectorDatabase vectorSearch = new VectorDatabase() {
+            @Override
+            public List<String> findRelevantContext(String question) {
+                return List.of();
+            }
+
+            @Override
+            public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+                received.set(options);
+                return List.of();
+            }
+        };
+        RetrievalProperties properties = new RetrievalProperties();
+        properties.setHybridCandidates(30);
+        HybridVectorDatabase database = new HybridVectorDatabase(vectorSearch, question -> List.of(),
+                Runnable::run, properties);
+
+        database.findRelevantChunks("Hecken", new RetrievalOptions(3, 40));
+
+        assertThat(received.get()).isEqualTo(new RetrievalOptions(30, 40));
+    }
+
+    @Test
+    void propagatesFailuresOfOneLeg() {
+        VectorDatabase failing = question -> {
+            throw new IllegalStateException("boom");
+        };
+        HybridVectorDatabase database = new HybridVectorDatabase(failing, question -> List.of("ok"),
+                Executors.newVirtualThreadPerTaskExecutor(), new RetrievalProperties());
+
+        assertThatThrownBy(() -> database.findRelevantChunks("Hecken", RetrievalOptions.DEFAULT))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+    }
+
+    @Test
+    void cancelsOtherLegWhenOneFails() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        VectorDatabase failing = question -> {
+            throw new IllegalStateException("boom");
+        };
+        HybridVectorDatabase database = new HybridVectorDatabase(failing, new BlockingLeg(cancelled),
+                Executors.newVirtualThreadPerTaskExecutor(), new RetrievalProperties());
+
+        assertThatThrownBy(() -> database.findRelevantChunks("Hecken", RetrievalOptions.DEFAULT,
+                new CancellationToken()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+        assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void cancelsLegsWithRequest() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(2);
+        HybridVectorDatabase database = new HybridVectorDatabase(new BlockingLeg(cancelled),
+                new BlockingLeg(cancelled), Executors.newVirtualThreadPerTaskExecutor(), new RetrievalProperties());
+        CancellationToken cancellation = new CancellationToken();
+        Thread request = Thread.ofVirtual().start(() -> {
+            try {
+                database.findRelevantChunks("Hecken", RetrievalOptions.DEFAULT, cancellation);
+            } catch (RuntimeException expected) {
+                // the legs give up once they are cancelled
+            }
+        });
+
+        cancellation.cancel();
+
+        assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        request.join(5000);
+        assertThat(request.isAlive()).isFalse();
+    }
+
+    private static RetrievedChunk chunk(long id) {
+        return new RetrievedChunk(id, "chunk-" + id, "digest-" + id, 0d);
+    }
+
+    /**
+     * Leg that only answers once the other leg has started as well, which
+     * would never happen if the legs were executed one after the other.
+     */
+    private record LegStub(CountDownLatch bothStarted, List<RetrievedChunk> result) implements VectorDatabase {
+
+        @Override
+        public List<String> findRelevantContext(String question) {
+            return List.of();
+        }
+
+        @Override
+        public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+            bothStarted.countDown();
+            try {
+                if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("legs did not run concurrently");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Leg that waits until its token is cancelled, like a statement that is
+     * only stopped by {@link CancellableJdbc}.
+     */
+    private record BlockingLeg(CountDownLatch cancelled) implements VectorDatabase {
+
+        @Override
+        public List<String> findRelevantContext(String question) {
+            return List.of();
+        }
+
+        @Override
+        public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options,
+                CancellationToken cancellation) {
+            CountDownLatch stopped = new CountDownLatch(1);
+            try (CancellationToken.Registration registration = cancellation.onCancel(stopped::countDown)) {
+                if (!stopped.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("leg was not cancelled");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+            cancelled.countDown();
+            throw new IllegalStateException("cancelled");
+        }
+    }
+}
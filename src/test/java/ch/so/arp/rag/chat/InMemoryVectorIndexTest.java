@@ -0,0 +1,114 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class InMemoryVectorIndexTest {
+
+    private static final int DIMENSIONS = 256;
+
+    private final MockEmbeddingClient embeddingClient = new MockEmbeddingClient(DIMENSIONS);
+
+    @Test
+    void ranksByCosineSimilarity() {
+        InMemoryVectorIndex index = index(200);
+        float[] query = embeddingClient.embed("Chunk 42");
+
+        List<RetrievedChunk> chunks = index.search(query, 5, RetrievalFilter.NONE);
+
+        assertThat(chunks).hasSize(5);
+        assertThat(chunks.get(0).id()).isEqualTo(42L);
+        assertThat(chunks.get(0).text()).isEqualTo("Chunk 42");
+        assertThat(chunks.get(0).score()).isCloseTo(1d, Offset.offset(0.01));
+        assertThat(chunks).extracting(RetrievedChunk::score).isSortedAccordingTo((a, b) -> Double.compare(b, a));
+        for (RetrievedChunk chunk : chunks) {
+            float[] vector = embeddingClient.embed(chunk.text());
+            assertThat(chunk.score()).isCloseTo(cosine(query, vector), Offset.offset(0.01));
+        }
+    }
+
+    @Test
+    void appliesMetadataFilters() {
+        InMemoryVectorIndex index = index(200);
+        float[] query = embeddingClient.embed("Chunk 42");
+
+        List<RetrievedChunk> olten = index.search(query, 50,
+                new RetrievalFilter("Olten", null, List.of(), List.of(), null, null));
+        List<RetrievedChunk> topics = index.search(query, 50,
+                new RetrievalFilter(null, "gestaltungsplan", List.of("Hecken", "Biber"), List.of(), null, null));
+        List<RetrievedChunk> dates = index.search(query, 50, new RetrievalFilter(null, null, List.of(), List.of(),
+                LocalDate.of(2024, 1, 10), LocalDate.of(2024, 1, 19)));
+        List<RetrievedChunk> none = index.search(query, 5,
+                new RetrievalFilter("Solothurn", null, List.of(), List.of(), null, null));
+
+        assertThat(olten).hasSize(50).allMatch(chunk -> chunk.id() % 2 == 0);
+        assertThat(olten.get(0).id()).isEqualTo(42L);
+        assertThat(topics).isNotEmpty()
+                .allMatch(chunk -> chunk.id() % 2 == 1 && (chunk.id() % 3 == 0 || chunk.id() % 5 == 0));
+        assertThat(dates).extracting(RetrievedChunk::id)
+                .allMatch(id -> id % 7 != 0 && id % 30 >= 9 && id % 30 <= 18);
+        assertThat(none).isEmpty();
+    }
+
+    @Test
+    void returnsFewerChunksThanTopKForSmallIndexes() {
+        assertThat(index(3).search(embeddingClient.embed("Chunk 1"), 5, RetrievalFilter.NONE)).hasSize(3);
+        assertThat(InMemoryVectorIndex.EMPTY.search(new float[DIMENSIONS], 5, RetrievalFilter.NONE)).isEmpty();
+    }
+
+    @Test
+    void rejectsQueriesWithOtherDimensions() {
+        InMemoryVectorIndex index = index(3);
+
+        assertThatThrownBy(() -> index.search(new float[DIMENSIONS + 1], 5, RetrievalFilter.NONE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void vectorisedDotProductMatchesScalarLoop() {
+        Random random = new Random(3);
+        for (int length : new int[] { 1, 7, 64, 100, 3072 }) {
+            byte[] row = new byte[length + 5];
+            byte[] query = new byte[length];
+            random.nextBytes(row);
+            random.nextBytes(query);
+
+            assertThat(Int8Dot.dot(row, 5, query, length)).isEqualTo(Int8Dot.scalar(row, 5, query, length, 0));
+        }
+    }
+
+    /**
+     * Even rows are from Olten, odd rows design plans; topics by divisibility, document dates cycle
+     * through January 2024 and every seventh document has none.
+     */
+    private InMemoryVectorIndex index(int size) {
+        InMemoryVectorIndex.Builder builder = new InMemoryVectorIndex.Builder();
+        for (int i = 0; i < size; i++) {
+            String text = "Chunk " + i;
+            List<String> topics = i % 3 == 0 ? List.of("Hecken") : i % 5 == 0 ? List.of("Biber") : List.of();
+            builder.add(i, text, "digest-" + i, embeddingClient.embed(text), i % 2 == 0 ? "Olten" : "Balsthal",
+                    i % 2 == 0 ? "ortsplanung" : "gestaltungsplan", topics, List.of(),
+                    i % 7 == 0 ? null : LocalDate.of(2024, 1, 1).plusDays(i % 30));
+        }
+        return builder.build();
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double na = 0;
+        double nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+}
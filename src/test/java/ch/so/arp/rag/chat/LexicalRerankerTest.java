@@ -0,0 +1,33 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LexicalRerankerTest {
+
+    @Test
+    void movesChunksSharingTermsWithTheQuestionUp() {
+        List<RetrievedChunk> candidates = List.of(
+                chunk(1, "Der Waldabstand beträgt in der Regel 20 m."),
+                chunk(2, "Hecken und Feldgehölze sind geschützt."),
+                chunk(3, "Für Fruchtfolgeflächen gilt ein Kompensationsgebot."));
+
+        List<RetrievedChunk> ranked = new LexicalReranker(60).rerank("Was gilt für die Fruchtfolgefläche?",
+                candidates, CancellationToken.NONE);
+
+        assertThat(ranked).extracting(RetrievedChunk::id).containsExactly(3L, 1L, 2L);
+    }
+
+    @Test
+    void normalizesAndStemsTerms() {
+        assertThat(LexicalReranker.terms("Die Überbauungen, der Überbauung!"))
+                .containsExactly("uberbau", "uberbau");
+    }
+
+    private static RetrievedChunk chunk(long id, String text) {
+        return new RetrievedChunk(id, text, "digest-" + id, 0d);
+    }
+}
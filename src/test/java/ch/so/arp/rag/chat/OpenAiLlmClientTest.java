@@ -0,0 +1,92 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+class OpenAiLlmClientTest {
+
+    private static final String RECORDING = "/openai/chat-completion-stream.txt";
+
+    @Test
+    void forwardsDeltasOfRecordedStream() {
+        try (SseStubServer server = SseStubServer.replaying(RECORDING, Duration.ZERO)) {
+            List<String> tokens = new CopyOnWriteArrayList<>();
+
+            client(server).streamChat("Was gilt für FFF?", List.of("Auszug A"), tokens::add);
+
+            assertThat(tokens).containsExactly("Fruchtfolge", "flächen", " sind", " zu kompensieren [1].");
+        }
+    }
+
+    @Test
+    void forwardsFirstTokenBeforeStreamEnds() {
+        try (SseStubServer server = SseStubServer.replaying(RECORDING, Duration.ofMillis(100))) {
+            List<Long> tokenNanos = new CopyOnWriteArrayList<>();
+
+            client(server).streamChat("Was gilt für FFF?", List.of(), token -> tokenNanos.add(System.nanoTime()));
+
+            List<Long> sent = server.eventSentNanos();
+            assertThat(tokenNanos).hasSize(4);
+            assertThat(tokenNanos.get(0)).isLessThan(sent.get(sent.size() - 1));
+        }
+    }
+
+    @Test
+    void sendsStreamingRequestWithNumberedContext() {
+        try (SseStubServer server = SseStubServer.replaying(RECORDING, Duration.ZERO)) {
+            client(server).streamChat("Was gilt für FFF?", List.of("Auszug A", "Auszug B"), token -> {
+            });
+
+            assertThat(server.requestBodies()).singleElement().satisfies(body -> assertThat(body)
+                    .contains("\"model\":\"gpt-4o-mini\"")
+                    .contains("\"stream\":true")
+                    .contains("[1] Auszug A")
+                    .contains("[2] Auszug B")
+                    .contains("Frage: Was gilt für FFF?"));
+        }
+    }
+
+    @Test
+    void abortsStreamWhenCancelled() {
+        try (SseStubServer server = SseStubServer.replaying(RECORDING, Duration.ofSeconds(1))) {
+            List<String> tokens = new CopyOnWriteArrayList<>();
+            CancellationToken cancellation = new CancellationToken();
+            long start = System.nanoTime();
+
+            assertThatThrownBy(() -> client(server).streamChat("Was gilt für FFF?", List.of(), token -> {
+                tokens.add(token);
+                cancellation.cancel();
+            }, cancellation)).isInstanceOf(CancellationException.class);
+
+            assertThat(tokens).containsExactly("Fruchtfolge");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(4));
+        }
+    }
+
+    @Test
+    void reportsHttpErrors() {
+        try (SseStubServer server = SseStubServer.failing(401, "{\"error\":{\"message\":\"invalid key\"}}")) {
+            OpenAiLlmClient client = client(server);
+
+            assertThatThrownBy(() -> client.streamChat("Frage", List.of(), token -> {
+            }))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("HTTP 401")
+                    .hasMessageContaining("invalid key");
+        }
+    }
+
+    private static OpenAiLlmClient client(SseStubServer server) {
+        OpenAiClientProperties properties = new OpenAiClientProperties();
+        properties.setApiKey("test-key");
+        properties.setBaseUrl(server.baseUrl());
+        return new OpenAiLlmClient(properties);
+    }
+}
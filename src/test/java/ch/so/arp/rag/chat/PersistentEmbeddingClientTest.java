@@ -0,0 +1,48 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ch.so.arp.rag.ingest.EmbeddingCache;
+
+class PersistentEmbeddingClientTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final EmbeddingClient delegate = text -> {
+        calls.incrementAndGet();
+        return new float[] { 0.5f, text.length() };
+    };
+
+    @Test
+    void servesEmbeddingsComputedBeforeARestart() throws IOException {
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 2)) {
+            new PersistentEmbeddingClient(delegate, cache).embed("Was gilt für Hecken?");
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(directory, "model", 2)) {
+            float[] vector = new PersistentEmbeddingClient(delegate, cache).embed("Was gilt für Hecken?");
+
+            assertThat(vector).containsExactly(0.5f, 20f);
+            assertThat(calls).hasValue(1);
+        }
+    }
+
+    @Test
+    void fallsBackToDelegateWhenCacheFails() throws IOException {
+        EmbeddingCache cache = EmbeddingCache.open(directory, "model", 2);
+        cache.close();
+
+        float[] vector = new PersistentEmbeddingClient(delegate, cache).embed("Biber");
+
+        assertThat(vector).containsExactly(0.5f, 5f);
+        assertThat(calls).hasValue(1);
+    }
+}
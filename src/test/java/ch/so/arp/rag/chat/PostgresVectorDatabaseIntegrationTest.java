@@ -0,0 +1,171 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import ch.so.arp.rag.ingest.VectorCodec;
+
+/**
+ * Runs against the pgvector instance started by {@code docker compose up}. The
+ * test is skipped unless {@code RAG_IT_DB_URL} points to that database, e.g.
+ * {@code jdbc:postgresql://localhost:54323/arp_rag}.
+ */
+@EnabledIfEnvironmentVariable(named = "RAG_IT_DB_URL", matches = ".+")
+class PostgresVectorDatabaseIntegrationTest {
+
+    private static final List<String> TEXTS = List.of(
+            "Fruchtfolgeflächen dürfen nur kompensiert beansprucht werden.",
+            "Der Gewässerraum ist gemäss kantonaler Vorgabe auszuscheiden.",
+            "Die Hecken sind im Gestaltungsplan als geschützt zu bezeichnen.");
+
+    private final MockEmbeddingClient embeddingClient = new MockEmbeddingClient();
+    private DriverManagerDataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private UUID documentId;
+
+    @BeforeEach
+    void insertChunks() {
+        dataSource = new DriverManagerDataSource();
+        dataSource.setDriverClassName("org.postgresql.Driver");
+        dataSource.setUrl(System.getenv("RAG_IT_DB_URL"));
+        dataSource.setUsername(System.getenv().getOrDefault("RAG_IT_DB_USERNAME", "gretl"));
+        dataSource.setPassword(System.getenv().getOrDefault("RAG_IT_DB_PASSWORD", "gretl"));
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+
+        documentId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO arp_rag_vp.documents (id, filename, plan_type, municipality)
+                VALUES (:id, 'integration-test.pdf', 'gestaltungsplan', 'Integrationstest')
+                """, Map.of("id", documentId));
+        for (String text : TEXTS) {
+            jdbcTemplate.update("""
+                    INSERT INTO arp_rag_vp.chunks
+                      (document_id, text, tsv, embedding, municipality, plan_type, topics, digest)
+                    VALUES (:documentId, :text, to_tsvector('german', public.unaccent(lower(:text))),
+                            CAST(:embedding AS halfvec), 'Integrationstest', 'gestaltungsplan',
+                            CAST(:topics AS text[]), :digest)
+                    """, Map.of(
+                    "documentId", documentId,
+                    "text", text,
+                    "topics", new String[] { "Topic" + TEXTS.indexOf(text) },
+                    "embedding", VectorCodec.toLiteral(embeddingClient.embed(text)),
+                    "digest", documentId + "-" + TEXTS.indexOf(text)));
+        }
+    }
+
+    @AfterEach
+    void deleteChunks() {
+        jdbcTemplate.update("DELETE FROM arp_rag_vp.documents WHERE id = :id", Map.of("id", documentId));
+    }
+
+    @Test
+    void returnsNearestChunkFirst() {
+        PostgresVectorDatabase database = new PostgresVectorDatabase(jdbcTemplate, embeddingClient,
+                new RetrievalProperties());
+
+        // Probing every list turns the ivfflat scan into an exact search, independent of the centroids.
+        List<RetrievedChunk> chunks = database.findRelevantChunks(TEXTS.get(1), new RetrievalOptions(2, 200));
+
+        assertThat(chunks).hasSize(2);
+        assertThat(chunks.get(0).text()).isEqualTo(TEXTS.get(1));
+        assertThat(chunks.get(0).digest()).isEqualTo(documentId + "-1");
+        assertThat(chunks.get(0).score()).isCloseTo(1d, Offset.offset(1e-3));
+        assertThat(chunks.get(0).score()).isGreaterThan(chunks.get(1).score());
+    }
+
+    @Test
+    void ranksBinaryCandidatesByExactDistance() {
+        RetrievalProperties properties = new RetrievalProperties();
+        properties.setBinaryCandidates(20);
+        // skip the exact search of small filtered sets, so the hnsw index is used
+        properties.setExactSearchThreshold(0);
+        PostgresVectorDatabase database = new PostgresVectorDatabase(jdbcTemplate, embeddingClient, properties);
+        RetrievalFilter filter = new RetrievalFilter("Integrationstest", null, null, null, null, null);
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks(TEXTS.get(2), new RetrievalOptions(3, null, filter));
+
+        assertThat(chunks).hasSize(3);
+        assertThat(chunks.get(0).text()).isEqualTo(TEXTS.get(2));
+        assertThat(chunks.get(0).score()).isCloseTo(1d, Offset.offset(1e-3));
+        assertThat(chunks).extracting(RetrievedChunk::score).isSortedAccordingTo((a, b) -> Double.compare(b, a));
+    }
+
+    @Test
+    void loadsBinaryEmbeddingsIntoMemory() {
+        InMemoryVectorDatabase database = new InMemoryVectorDatabase(dataSource, embeddingClient,
+                new RetrievalProperties());
+        database.reload();
+        RetrievalFilter filter = new RetrievalFilter("Integrationstest", null, null, null, null, null);
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks(TEXTS.get(0), new RetrievalOptions(3, null, filter));
+
+        assertThat(chunks).hasSize(3);
+        assertThat(chunks.get(0).text()).isEqualTo(TEXTS.get(0));
+        assertThat(chunks.get(0).score()).isCloseTo(1d, Offset.offset(1e-2));
+    }
+
+    @Test
+    void rejectsOtherEmbeddingDimensions() {
+        PostgresVectorDatabase database = new PostgresVectorDatabase(jdbcTemplate, embeddingClient,
+                new RetrievalProperties());
+
+        database.checkDimensions(embeddingClient.embed(TEXTS.get(0)).length);
+        assertThatThrownBy(() -> database.checkDimensions(1024))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("rag.chat.openai.embedding-dimensions is 1024");
+    }
+
+    @Test
+    void clampsTopKToConfiguredMaximum() {
+        RetrievalProperties properties = new RetrievalProperties();
+        properties.setMaxTopK(1);
+        PostgresVectorDatabase database = new PostgresVectorDatabase(jdbcTemplate, embeddingClient, properties);
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks(TEXTS.get(0), new RetrievalOptions(10, 200));
+
+        assertThat(chunks).hasSize(1);
+    }
+
+    @Test
+    void fullTextSearchFindsChunksByTerm() {
+        PostgresFullTextDatabase database = new PostgresFullTextDatabase(jdbcTemplate, new RetrievalProperties());
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks("Gewässerraum Vorgabe", RetrievalOptions.DEFAULT);
+
+        assertThat(chunks).extracting(RetrievedChunk::digest).contains(documentId + "-1");
+    }
+
+    @Test
+    void restrictsRankingToFilteredChunks() {
+        PostgresVectorDatabase database = new PostgresVectorDatabase(jdbcTemplate, embeddingClient,
+                new RetrievalProperties());
+        RetrievalFilter filter = new RetrievalFilter("Integrationstest", "gestaltungsplan", List.of("Topic2"),
+                null, null, null);
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks(TEXTS.get(0),
+                new RetrievalOptions(5, null, filter));
+
+        assertThat(chunks).extracting(RetrievedChunk::text).containsExactly(TEXTS.get(2));
+    }
+
+    @Test
+    void returnsNothingWhenFilterMatchesNoChunk() {
+        PostgresVectorDatabase database = new PostgresVectorDatabase(jdbcTemplate, embeddingClient,
+                new RetrievalProperties());
+        RetrievalFilter filter = new RetrievalFilter("Integrationstest", "ortsplanung", null, null, null, null);
+
+        assertThat(database.findRelevantChunks(TEXTS.get(0), new RetrievalOptions(5, null, filter))).isEmpty();
+    }
+}
@@ -0,0 +1,35 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ReciprocalRankFusionTest {
+
+    @Test
+    void ranksChunksFoundByBothListsFirst() {
+        List<RetrievedChunk> vector = List.of(chunk(1), chunk(2), chunk(3));
+        List<RetrievedChunk> fullText = List.of(chunk(4), chunk(3), chunk(5));
+
+        List<RetrievedChunk> fused = ReciprocalRankFusion.fuse(List.of(vector, fullText), 60, 3);
+
+        assertThat(fused).extracting(RetrievedChunk::id).containsExactly(3L, 1L, 4L);
+        assertThat(fused.get(0).score()).isEqualTo(1d / 63 + 1d / 62);
+    }
+
+    @Test
+    void ignoresRawScoresOfTheLegs() {
+        List<RetrievedChunk> vector = List.of(new RetrievedChunk(1, "a", null, 0.1d));
+        List<RetrievedChunk> fullText = List.of(new RetrievedChunk(2, "b", null, 99d));
+
+        List<RetrievedChunk> fused = ReciprocalRankFusion.fuse(List.of(vector, fullText), 60, 5);
+
+        assertThat(fused).extracting(RetrievedChunk::id).containsExactly(1L, 2L);
+    }
+
+    private static RetrievedChunk chunk(long id) {
+        return new RetrievedChunk(id, "chunk-" + id, "digest-" + id, 0d);
+    }
+}
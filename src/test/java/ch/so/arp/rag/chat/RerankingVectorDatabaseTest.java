@@ -0,0 +1,104 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class RerankingVectorDatabaseTest {
+
+    private static final List<RetrievedChunk> CANDIDATES = List.of(chunk(1, "Hecken"),
+            chunk(2, "Baulinien entlang von Kantonsstrassen"), chunk(3, "SOBAU 82'326"));
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void releaseReranker() {
+        release.countDown();
+    }
+
+    @Test
+    void ordersCandidatesAndKeepsTopK() {
+        AtomicReference<RetrievalOptions> received = new AtomicReference<>();
+        RerankingVectorDatabase database = database(options -> {
+            received.set(options);
+            return CANDIDATES;
+        }, (question, candidates, cancellation) -> candidates.reversed(), Duration.ofSeconds(5));
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks("SOBAU", new RetrievalOptions(2, 40));
+
+        assertThat(received.get()).isEqualTo(new RetrievalOptions(10, 40));
+        assertThat(chunks).extracting(RetrievedChunk::id).containsExactly(3L, 2L);
+        assertThat(database.fallbacks()).isZero();
+    }
+
+    @Test
+    void cancelsRerankerThatIsTooSlow() throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+        RerankingVectorDatabase database = database(options -> CANDIDATES, (question, candidates, cancellation) -> {
+            try {
+                while (!release.await(5, TimeUnit.MILLISECONDS)) {
+                    if (cancellation.isCancelled()) {
+                        stopped.countDown();
+                        cancellation.throwIfCancelled();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return candidates.reversed();
+        }, Duration.ofMillis(50));
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks("SOBAU", new RetrievalOptions(2, null));
+
+        assertThat(chunks).extracting(RetrievedChunk::id).containsExactly(1L, 2L);
+        assertThat(database.fallbacks()).isEqualTo(1);
+        assertThat(stopped.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void keepsRetrievalOrderWhenRerankerFails() {
+        RerankingVectorDatabase database = database(options -> CANDIDATES, (question, candidates, cancellation) -> {
+            throw new IllegalStateException("boom");
+        }, Duration.ofSeconds(5));
+
+        List<RetrievedChunk> chunks = database.findRelevantChunks("SOBAU", new RetrievalOptions(2, null));
+
+        assertThat(chunks).extracting(RetrievedChunk::id).containsExactly(1L, 2L);
+        assertThat(database.fallbacks()).isEqualTo(1);
+    }
+
+    private static RerankingVectorDatabase database(Retrieval retrieval, Reranker reranker, Duration timeout) {
+        VectorDatabase delegate = new VectorDatabase() {
+            @Override
+            public List<String> findRelevantContext(String question) {
+                return List.of();
+            }
+
+            @Override
+            public List<RetrievedChunk> findRelevantChunks(String question, RetrievalOptions options) {
+                return retrieval.find(options);
+            }
+        };
+        RerankProperties properties = new RerankProperties();
+        properties.setCandidates(10);
+        properties.setTimeout(timeout);
+        return new RerankingVectorDatabase(delegate, reranker, Executors.newVirtualThreadPerTaskExecutor(),
+                new RetrievalProperties(), properties);
+    }
+
+    private static RetrievedChunk chunk(long id, String text) {
+        return new RetrievedChunk(id, text, "digest-" + id, 0d);
+    }
+
+    private interface Retrieval {
+        List<RetrievedChunk> find(RetrievalOptions options);
+    }
+}
@@ -0,0 +1,50 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+class RetrievalFilterSqlTest {
+
+    @Test
+    void emptyFilterAddsNoConditions() {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        assertThat(RetrievalFilterSql.conditions(RetrievalFilter.NONE, params)).isEmpty();
+        assertThat(params.getParameterNames()).isEmpty();
+    }
+
+    @Test
+    void translatesAllCriteria() {
+        RetrievalFilter filter = new RetrievalFilter("Olten", "gestaltungsplan", List.of("Hecken", "Lärm"),
+                List.of("82326"), LocalDate.of(2020, 1, 1), LocalDate.of(2024, 12, 31));
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        String sql = RetrievalFilterSql.conditions(filter, params);
+
+        assertThat(sql)
+                .contains("c.municipality = :municipality")
+                .contains("c.plan_type = :planType")
+                .contains("c.topics && CAST(:topics AS text[])")
+                .contains("c.sobau_codes && CAST(:sobauCodes AS text[])")
+                .contains("d.doc_date >= :docDateFrom")
+                .contains("d.doc_date <= :docDateTo");
+        assertThat(params.getValue("municipality")).isEqualTo("Olten");
+        assertThat((String[]) params.getValue("topics")).containsExactly("Hecken", "Lärm");
+        assertThat(params.getValue("docDateTo")).isEqualTo(LocalDate.of(2024, 12, 31));
+    }
+
+    @Test
+    void onlyJoinsDocumentsForDateCriteria() {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        String sql = RetrievalFilterSql.conditions(
+                new RetrievalFilter("Olten", null, null, null, null, null), params);
+
+        assertThat(sql).isEqualTo(" AND c.municipality = :municipality");
+    }
+}
@@ -0,0 +1,68 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SemanticAnswerCacheTest {
+
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "Was gilt für Fruchtfolgeflächen?", new float[] { 1f, 0f, 0f },
+            "Was gilt fuer Fruchtfolgeflaechen?", new float[] { 0.99f, 0.1f, 0f },
+            "Wie breit ist der Gewässerraum?", new float[] { 0f, 1f, 0f });
+
+    private final EmbeddingClient embeddingClient = VECTORS::get;
+    private final SemanticAnswerCache cache = new SemanticAnswerCache(embeddingClient, 0.05, 10,
+            Duration.ofHours(1));
+
+    @Test
+    void replaysAnswerForNearDuplicateQuestionWithSameChunks() {
+        cache.store("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, "a"), chunk(2, "b")),
+                List.of("FFF ", "sind geschützt."));
+
+        assertThat(cache.find("Was gilt fuer Fruchtfolgeflaechen?", List.of(chunk(2, "b"), chunk(1, "a"))))
+                .contains(List.of("FFF ", "sind geschützt."));
+    }
+
+    @Test
+    void missesForDistantQuestion() {
+        cache.store("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, "a")), List.of("answer"));
+
+        assertThat(cache.find("Wie breit ist der Gewässerraum?", List.of(chunk(1, "a")))).isEmpty();
+    }
+
+    @Test
+    void missesForDifferentChunks() {
+        cache.store("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, "a")), List.of("answer"));
+
+        assertThat(cache.find("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, "a"), chunk(3, "c")))).isEmpty();
+    }
+
+    @Test
+    void invalidatesAnswerWhenChunkDigestChanged() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        cache.store("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, "a")), List.of("answer"));
+
+        assertThat(cache.find("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, "re-ingested")))).isEmpty();
+        assertThat(cache.find("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, "a")))).isEmpty();
+        assertThat(registry.get("rag.answer.cache.invalidations").functionCounter().count()).isEqualTo(1d);
+    }
+
+    @Test
+    void ignoresChunksWithoutDigest() {
+        cache.store("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, null)), List.of("answer"));
+
+        assertThat(cache.find("Was gilt für Fruchtfolgeflächen?", List.of(chunk(1, null)))).isEmpty();
+    }
+
+    private static RetrievedChunk chunk(long id, String digest) {
+        return new RetrievedChunk(id, "chunk-" + id, digest, 0.5d);
+    }
+}
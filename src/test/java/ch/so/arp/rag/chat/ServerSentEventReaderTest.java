@@ -0,0 +1,46 @@
+package ch.so.arp.rag.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ServerSentEventReaderTest {
+
+    @Test
+    void readsDataOfConsecutiveEvents() throws IOException {
+        ServerSentEventReader reader = reader(
+                ": keep-alive\n\ndata: first\n\nevent: x\ndata:second\r\n\r\ndata: [DONE]\n\n");
+
+        assertThat(reader.next()).isEqualTo("first");
+        assertThat(reader.next()).isEqualTo("second");
+        assertThat(reader.next()).isEqualTo("[DONE]");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void joinsMultiLineData() throws IOException {
+        assertThat(reader("data: a\ndata: b\n\n").next()).isEqualTo("a\nb");
+    }
+
+    @Test
+    void keepsMultiByteCharactersSplitAcrossReads() throws IOException {
+        byte[] bytes = "data: Gewässer\n\n".getBytes(StandardCharsets.UTF_8);
+        InputStream oneByteAtATime = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        assertThat(new ServerSentEventReader(oneByteAtATime).next()).isEqualTo("Gewässer");
+    }
+
+    private static ServerSentEventReader reader(String content) {
+        return new ServerSentEventReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,111 @@
+package ch.so.arp.rag.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server replaying a recorded {@code text/event-stream} response of
+ * the chat completions endpoint. Each event is flushed separately after the
+ * configured delay so that tests can observe incremental delivery.
+ */
+final class SseStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private final List<Long> eventSentNanos = new CopyOnWriteArrayList<>();
+
+    private SseStubServer(HttpServer server) {
+        this.server = server;
+    }
+
+    static SseStubServer replaying(String resource, Duration interEventDelay) {
+        return start(200, readEvents(resource), interEventDelay);
+    }
+
+    static SseStubServer failing(int status, String body) {
+        return start(status, List.of(body), Duration.ZERO);
+    }
+
+    private static SseStubServer start(int status, List<String> events, Duration interEventDelay) {
+        try {
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            SseStubServer stub = new SseStubServer(httpServer);
+            httpServer.createContext("/v1/chat/completions", exchange -> {
+                stub.requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                exchange.getResponseHeaders().add("Content-Type",
+                        status == 200 ? "text/event-stream" : "application/json");
+                exchange.sendResponseHeaders(status, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    for (String event : events) {
+                        sleep(interEventDelay);
+                        out.write(event.getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        stub.eventSentNanos.add(System.nanoTime());
+                    }
+                }
+            });
+            httpServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            httpServer.start();
+            return stub;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    List<String> requestBodies() {
+        return List.copyOf(requestBodies);
+    }
+
+    List<Long> eventSentNanos() {
+        return List.copyOf(eventSentNanos);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static List<String> readEvents(String resource) {
+        try (InputStream in = SseStubServer.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing recording " + resource);
+            }
+            String recording = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            List<String> events = new ArrayList<>();
+            for (String event : recording.split("(?<=\n\n)")) {
+                if (!event.isBlank()) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void sleep(Duration delay) {
+        if (delay.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}